@@ -0,0 +1,130 @@
+package io.github.thebusybiscuit.sensibletoolbox.api.filters;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times checking items against a full (nine item) router module filter, by material
+ * and by item meta, against a mix of items about half of which are filtered.
+ * {@link #scanList()} walks the filter list calling {@code isSimilar()} on each entry,
+ * as filters did before being compiled into lookups.
+ * <p>
+ * Comparing item stacks asks the server's item factory about their meta, so a stand-in
+ * server is installed whose factory gives every item no meta at all. On a real server,
+ * each {@code isSimilar()} call costs much more than here, while the hashed lookup still
+ * makes a single comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilterBenchmark {
+
+    private static final Material[] FILTERED = { Material.STONE, Material.COBBLESTONE, Material.DIRT, Material.SAND, Material.GRAVEL, Material.OAK_LOG, Material.IRON_INGOT, Material.GOLD_INGOT, Material.DIAMOND };
+    private static final Material[] OTHERS = { Material.GLASS, Material.COAL, Material.REDSTONE, Material.WHEAT, Material.BONE, Material.STRING, Material.FEATHER, Material.CLAY_BALL, Material.FLINT };
+
+    private final List<ItemStack> filterItems = new ArrayList<>();
+    private final ItemStack[] stacks = new ItemStack[FILTERED.length + OTHERS.length];
+    private Filter materialFilter;
+    private Filter metaFilter;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(createServer());
+        }
+
+        for (Material material : FILTERED) {
+            filterItems.add(new ItemStack(material));
+        }
+
+        for (int i = 0; i < FILTERED.length; i++) {
+            stacks[i * 2] = new ItemStack(FILTERED[i], 16);
+            stacks[i * 2 + 1] = new ItemStack(OTHERS[i], 16);
+        }
+
+        materialFilter = Filter.fromItemList(true, filterItems, FilterType.MATERIAL);
+        metaFilter = Filter.fromItemList(true, filterItems, FilterType.ITEM_META);
+    }
+
+    @Benchmark
+    public boolean byMaterial() {
+        return materialFilter.shouldPass(nextStack());
+    }
+
+    @Benchmark
+    public boolean byItemMeta() {
+        return metaFilter.shouldPass(nextStack());
+    }
+
+    @Benchmark
+    public boolean scanList() {
+        ItemStack stack = nextStack();
+
+        for (ItemStack f : filterItems) {
+            if (f.isSimilar(stack)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private ItemStack nextStack() {
+        next = (next + 1) % stacks.length;
+        return stacks[next];
+    }
+
+    private static Server createServer() {
+        ItemFactory factory = (ItemFactory) Proxy.newProxyInstance(ItemFactory.class.getClassLoader(), new Class<?>[] { ItemFactory.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "equals":
+                    // ItemFactory.equals(ItemMeta, ItemMeta); there's never any meta here
+                    return args.length == 2 ? args[0] == args[1] : proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return null;
+            }
+        });
+
+        return (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getItemFactory":
+                    return factory;
+                case "getLogger":
+                    return Logger.getLogger(FilterBenchmark.class.getName());
+                case "getName":
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "benchmark";
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return null;
+            }
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.block.Block;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times building energy nets of various sizes in an in-memory world (see
+ * {@link FakeNetWorld}). Each net is a line of cables with a machine at the start and
+ * one beside every sixteenth cable. {@link #build()} scans the whole net from its first
+ * cable; {@link #breakAndReplace()} breaks the middle cable, which rebuilds both halves,
+ * and puts it back, which merges them again. Block lookups on a real server cost more
+ * than these, so the timings are a lower bound. Run with the {@code benchmark} profile
+ * (see pom.xml).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyNetBuildBenchmark {
+
+    private static final int MACHINE_SPACING = 16;
+
+    // scans stop at STBEnergyNet.MAX_BLOCKS_IN_CABLE blocks, machines included
+    @Param({ "64", "256", "448" })
+    private int cableCount;
+
+    private FakeNetWorld world;
+    private Block start;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        world = new FakeNetWorld();
+        world.placeMachine(-1, 0, 0, true);
+
+        for (int x = 0; x < cableCount; x++) {
+            world.placeCable(x, 0, 0);
+
+            if (x % MACHINE_SPACING == MACHINE_SPACING - 1) {
+                world.placeMachine(x, 0, 1, false);
+            }
+        }
+
+        start = world.getBlockAt(0, 0, 0);
+    }
+
+    @Benchmark
+    public int build() {
+        return STBEnergyNet.buildNet(start, world.getManager()).getCableCount();
+    }
+
+    @Benchmark
+    public int breakAndReplace() {
+        world.breakCable(cableCount / 2, 0, 0);
+        world.placeCable(cableCount / 2, 0, 0);
+        return world.getManager().getNetCount();
+    }
+}
@@ -0,0 +1,88 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times a single energy net tick for nets of various sizes. Each operation also lets
+ * the machines use and generate some energy, as they would between net ticks, so that
+ * the net never settles into having nothing to do; {@link #machinesOnly()} times that
+ * part alone. Run with the {@code benchmark} profile (see pom.xml); allocations per
+ * operation are reported by the gc profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyTransferBenchmark {
+
+    private static final long TICK_RATE = 10;
+
+    @Param({ "1000", "10000", "50000" })
+    private int machineCount;
+
+    private final List<FakeMachine> sources = new ArrayList<>();
+    private final List<FakeMachine> sinks = new ArrayList<>();
+    private final double[] ledger = new double[2];
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Random random = new Random(machineCount);
+        sources.clear();
+        sinks.clear();
+
+        for (FakeMachine machine : FakeMachine.randomMachines(random, machineCount)) {
+            (random.nextBoolean() ? sources : sinks).add(machine);
+        }
+    }
+
+    @Benchmark
+    public double tick() {
+        runMachines();
+        double supply = EnergyTransfer.getSupply(sources, TICK_RATE);
+        double demand = EnergyTransfer.getDemand(sinks, TICK_RATE);
+        return EnergyTransfer.transfer(sources, sinks, supply, demand, TICK_RATE, null);
+    }
+
+    @Benchmark
+    public boolean tickCheckingConservation() {
+        runMachines();
+        double supply = EnergyTransfer.getSupply(sources, TICK_RATE);
+        double demand = EnergyTransfer.getDemand(sinks, TICK_RATE);
+        EnergyTransfer.transfer(sources, sinks, supply, demand, TICK_RATE, ledger);
+        return EnergyNetStats.isConserved(ledger[0], ledger[1]);
+    }
+
+    @Benchmark
+    public double machinesOnly() {
+        runMachines();
+        return sources.get(0).getCharge();
+    }
+
+    private void runMachines() {
+        for (FakeMachine source : sources) {
+            source.setCharge(Math.min(source.getMaxCharge(), source.getCharge() + source.getChargeRate() * TICK_RATE / 2.0));
+        }
+
+        for (FakeMachine sink : sinks) {
+            sink.setCharge(Math.max(0, sink.getCharge() - sink.getChargeRate() * TICK_RATE / 2.0));
+        }
+    }
+}
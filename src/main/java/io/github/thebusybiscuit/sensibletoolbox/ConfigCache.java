@@ -21,6 +21,7 @@ public class ConfigCache {
     private boolean noisyMachines;
     private int particleLevel;
     private boolean creativeEnderAccess;
+    private boolean routerNetworkPlanner;
 
     public ConfigCache(@Nonnull SensibleToolboxPlugin plugin) {
         this.plugin = plugin;
@@ -44,6 +45,7 @@ public class ConfigCache {
         noisyMachines = plugin.getConfig().getBoolean("noisy_machines");
         particleLevel = plugin.getConfig().getInt("particle_effects");
         creativeEnderAccess = plugin.getConfig().getBoolean("creative_ender_access");
+        routerNetworkPlanner = plugin.getConfig().getBoolean("router_network_planner");
     }
 
     @Nonnull
@@ -87,4 +89,12 @@ public class ConfigCache {
     public void setCreativeEnderAccess(boolean creativeEnderAccess) {
         this.creativeEnderAccess = creativeEnderAccess;
     }
+
+    public boolean isRouterNetworkPlanner() {
+        return routerNetworkPlanner;
+    }
+
+    void setRouterNetworkPlanner(boolean routerNetworkPlanner) {
+        this.routerNetworkPlanner = routerNetworkPlanner;
+    }
 }
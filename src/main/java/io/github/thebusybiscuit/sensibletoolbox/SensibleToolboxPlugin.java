@@ -12,6 +12,7 @@ import javax.annotation.ParametersAreNonnullByDefault;
 import io.github.thebusybiscuit.sensibletoolbox.helpers.Validate;
 import org.bstats.bukkit.Metrics;
 import org.bukkit.Server;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -65,8 +66,11 @@ import io.github.thebusybiscuit.sensibletoolbox.blocks.machines.Sawmill;
 import io.github.thebusybiscuit.sensibletoolbox.blocks.machines.Smelter;
 import io.github.thebusybiscuit.sensibletoolbox.blocks.machines.TenKBatteryBox;
 import io.github.thebusybiscuit.sensibletoolbox.blocks.router.ItemRouter;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.DroppedItemIndex;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.RouterLinkRegistry;
 import io.github.thebusybiscuit.sensibletoolbox.commands.ChargeCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.DebugCommand;
+import io.github.thebusybiscuit.sensibletoolbox.commands.EnergyNetCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.ExamineCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.FriendCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.GetcfgCommand;
@@ -79,7 +83,10 @@ import io.github.thebusybiscuit.sensibletoolbox.commands.ShowCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.SoundCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.UnfriendCommand;
 import io.github.thebusybiscuit.sensibletoolbox.commands.ValidateCommand;
+import io.github.thebusybiscuit.sensibletoolbox.core.DropAggregator;
 import io.github.thebusybiscuit.sensibletoolbox.core.IDTracker;
+import io.github.thebusybiscuit.sensibletoolbox.core.InventoryChangeTracker;
+import io.github.thebusybiscuit.sensibletoolbox.core.ProtectionCache;
 import io.github.thebusybiscuit.sensibletoolbox.core.STBFriendManager;
 import io.github.thebusybiscuit.sensibletoolbox.core.STBItemRegistry;
 import io.github.thebusybiscuit.sensibletoolbox.core.enderstorage.EnderStorageManager;
@@ -126,6 +133,7 @@ import io.github.thebusybiscuit.sensibletoolbox.items.energycells.TenKEnergyCell
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.AdvancedSenderModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.BlankModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.BreakerModule;
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.BufferModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.DistributorModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.DropperModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.HyperSenderModule;
@@ -145,10 +153,16 @@ import io.github.thebusybiscuit.sensibletoolbox.items.upgrades.RegulatorUpgrade;
 import io.github.thebusybiscuit.sensibletoolbox.items.upgrades.SpeedUpgrade;
 import io.github.thebusybiscuit.sensibletoolbox.items.upgrades.ThoroughnessUpgrade;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.AnvilListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.DroppedItemEntitiesListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.DroppedItemListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.ElevatorListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.FurnaceListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.GeneralListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.InventoryChangeListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.LegacyDroppedItemListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.MobListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.ProtectionCacheListener;
+import io.github.thebusybiscuit.sensibletoolbox.listeners.RouterLinkListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.SoundMufflerListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.TrashCanListener;
 import io.github.thebusybiscuit.sensibletoolbox.listeners.WorldListener;
@@ -183,6 +197,11 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
     private STBItemRegistry itemRegistry;
     private STBFriendManager friendManager;
     private EnergyNetManager enetManager;
+    private final RouterLinkRegistry routerLinkRegistry = new RouterLinkRegistry();
+    private final DroppedItemIndex droppedItemIndex = new DroppedItemIndex();
+    private final InventoryChangeTracker inventoryChangeTracker = new InventoryChangeTracker();
+    private final DropAggregator dropAggregator = new DropAggregator();
+    private final ProtectionCache protectionCache = new ProtectionCache();
     private ConfigCache configCache;
     private IDTracker<SCURelayConnection> scuRelayIDTracker;
     private ProtectionManager protectionManager;
@@ -203,6 +222,7 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         configManager = new ConfigurationManager(this, this);
         configCache = new ConfigCache(this);
         configCache.processConfig();
+        protectionCache.setTTL(getConfig().getInt("protection_cache_ttl"));
 
         MiscUtil.setColoredConsole(getConfig().getBoolean("colored_console"));
 
@@ -224,6 +244,7 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         STBInventoryGUI.buildStockTextures();
 
         itemRegistry = new STBItemRegistry(this, "item_data");
+        itemRegistry.getStateCache().setMaxSize(getConfig().getInt("item_decode_cache_size"));
         registerItems();
 
         friendManager = new STBFriendManager(this);
@@ -232,6 +253,13 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         registerEventListeners();
         registerCommands();
 
+        for (World world : getServer().getWorlds()) {
+            droppedItemIndex.indexWorld(world);
+        }
+
+        // must happen before any machines get registered
+        enetManager.restoreSnapshot();
+
         try {
             LocationManager.getManager().load();
         } catch (Exception e) {
@@ -254,6 +282,10 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         });
 
         getServer().getScheduler().runTaskTimer(this, LocationManager.getManager()::tick, 1L, 1L);
+        getServer().getScheduler().runTaskTimer(this, droppedItemIndex::tick, 1L, 1L);
+        getServer().getScheduler().runTaskTimer(this, dropAggregator::flush, 1L, 1L);
+        getServer().getScheduler().runTaskTimer(this, protectionCache::expire, 200L, 200L);
+        getServer().getScheduler().runTaskTimer(this, inventoryChangeTracker::expireWatches, InventoryChangeTracker.EXPIRY_TICKS, InventoryChangeTracker.EXPIRY_TICKS);
         getServer().getScheduler().runTaskTimer(this, getEnderStorageManager()::tick, 1L, 300L);
         getServer().getScheduler().runTaskTimer(this, friendManager::save, 60L, 300L);
 
@@ -342,7 +374,13 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         LocationManager.getManager().save();
         LocationManager.getManager().shutdown();
 
+        enetManager.saveSnapshot();
+
         friendManager.save();
+        scuRelayIDTracker.shutdown();
+
+        // don't lose anything dropped during this tick
+        dropAggregator.flush();
 
         getServer().getScheduler().cancelTasks(this);
 
@@ -394,6 +432,7 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         itemRegistry.registerItem(new BreakerModule(), this, configPrefix, permissionNode);
         itemRegistry.registerItem(new StackModule(), this, configPrefix, permissionNode);
         itemRegistry.registerItem(new SpeedModule(), this, configPrefix, permissionNode);
+        itemRegistry.registerItem(new BufferModule(), this, configPrefix, permissionNode);
         itemRegistry.registerItem(new TenKEnergyCell(), this, configPrefix, permissionNode);
         itemRegistry.registerItem(new FiftyKEnergyCell(), this, configPrefix, permissionNode);
         itemRegistry.registerItem(new TenKBatteryBox(), this, configPrefix, permissionNode);
@@ -460,6 +499,17 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         pm.registerEvents(new TrashCanListener(this), this);
         pm.registerEvents(new ElevatorListener(this), this);
         pm.registerEvents(new AnvilListener(this), this);
+        pm.registerEvents(new RouterLinkListener(this), this);
+        pm.registerEvents(new DroppedItemListener(this), this);
+
+        if (minecraftVersion.isAtLeast(MinecraftVersion.MINECRAFT_1_17)) {
+            pm.registerEvents(new DroppedItemEntitiesListener(this), this);
+        } else {
+            pm.registerEvents(new LegacyDroppedItemListener(this), this);
+        }
+
+        pm.registerEvents(new InventoryChangeListener(this), this);
+        pm.registerEvents(new ProtectionCacheListener(this), this);
 
         if (isProtocolLibEnabled()) {
             soundMufflerListener = new SoundMufflerListener(this);
@@ -515,6 +565,7 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         commandManager.registerCommand(new FriendCommand());
         commandManager.registerCommand(new UnfriendCommand());
         commandManager.registerCommand(new ValidateCommand());
+        commandManager.registerCommand(new EnergyNetCommand());
     }
 
     /**
@@ -547,6 +598,10 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
             Validate.isTrue((Integer) newVal > 0, "save_interval must be > 0");
         } else if (key.equals("energy.tick_rate")) {
             Validate.isTrue((Integer) newVal > 0, "energy.tick_rate must be > 0");
+        } else if (key.equals("protection_cache_ttl")) {
+            Validate.isTrue((Integer) newVal >= 0, "protection_cache_ttl must be >= 0");
+        } else if (key.equals("item_decode_cache_size")) {
+            Validate.isTrue((Integer) newVal >= 0, "item_decode_cache_size must be >= 0");
         } else if (key.startsWith("gui.texture.")) {
             STBUtil.parseMaterialSpec(newVal.toString());
         } else if (key.equals("default_access")) {
@@ -593,6 +648,12 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
             getConfigCache().setNoisyMachines((Boolean) newVal);
         } else if (key.equals("creative_ender_access")) {
             getConfigCache().setCreativeEnderAccess((Boolean) newVal);
+        } else if (key.equals("router_network_planner")) {
+            getConfigCache().setRouterNetworkPlanner((Boolean) newVal);
+        } else if (key.equals("protection_cache_ttl")) {
+            protectionCache.setTTL((Integer) newVal);
+        } else if (key.equals("item_decode_cache_size")) {
+            itemRegistry.getStateCache().setMaxSize((Integer) newVal);
         }
     }
 
@@ -625,6 +686,31 @@ public class SensibleToolboxPlugin extends JavaPlugin implements ConfigurationLi
         return enetManager;
     }
 
+    @Nonnull
+    public RouterLinkRegistry getRouterLinkRegistry() {
+        return routerLinkRegistry;
+    }
+
+    @Nonnull
+    public DroppedItemIndex getDroppedItemIndex() {
+        return droppedItemIndex;
+    }
+
+    @Nonnull
+    public InventoryChangeTracker getInventoryChangeTracker() {
+        return inventoryChangeTracker;
+    }
+
+    @Nonnull
+    public DropAggregator getDropAggregator() {
+        return dropAggregator;
+    }
+
+    @Nonnull
+    public ProtectionCache getProtectionCache() {
+        return protectionCache;
+    }
+
     public ConfigCache getConfigCache() {
         return configCache;
     }
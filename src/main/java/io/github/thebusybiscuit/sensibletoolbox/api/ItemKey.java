@@ -0,0 +1,142 @@
+package io.github.thebusybiscuit.sensibletoolbox.api;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import io.github.thebusybiscuit.sensibletoolbox.helpers.Validate;
+
+/**
+ * Identifies a kind of item, ignoring the amount; two item stacks have the same key
+ * exactly when they are {@link ItemStack#isSimilar(ItemStack) similar}.
+ * <p>
+ * Keys are interned: {@link #of(ItemStack)} always returns the same key object for
+ * similar items (for as long as anything still holds that key), so keys can be
+ * compared with {@code ==}. This makes it cheap to check whether two lots of items
+ * will stack, without looking at item meta each time.
+ * <p>
+ * Keys must only be created on the main server thread.
+ *
+ * @see STBInventoryHolder
+ */
+public final class ItemKey {
+
+    private static final Map<ItemKey, WeakReference<ItemKey>> interned = new WeakHashMap<>();
+
+    private final ItemStack prototype;
+    private final int hash;
+
+    private ItemKey(@Nonnull ItemStack stack) {
+        prototype = stack.clone();
+        prototype.setAmount(1);
+        hash = prototype.hashCode();
+    }
+
+    /**
+     * Get the key for the given items.
+     *
+     * @param stack
+     *            the items
+     * @return the key for the items; the same key is returned for any similar items
+     */
+    @Nonnull
+    public static ItemKey of(@Nonnull ItemStack stack) {
+        Validate.notNull(stack, "Cannot get the key for a null item");
+        ItemKey probe = new ItemKey(stack);
+        WeakReference<ItemKey> ref = interned.get(probe);
+        ItemKey key = ref == null ? null : ref.get();
+
+        if (key == null) {
+            interned.put(probe, new WeakReference<>(probe));
+            key = probe;
+        }
+
+        return key;
+    }
+
+    /**
+     * Get the key for the given items, which may be null.
+     *
+     * @param stack
+     *            the items, may be null
+     * @return the key for the items, or null if the stack is null or empty
+     */
+    @Nullable
+    public static ItemKey ofNullable(@Nullable ItemStack stack) {
+        return stack == null || stack.getType() == Material.AIR || stack.getAmount() <= 0 ? null : of(stack);
+    }
+
+    /**
+     * Check if the given items have this key.
+     *
+     * @param stack
+     *            the items to check, may be null
+     * @return true if the items are similar to this key's items
+     */
+    public boolean matches(@Nullable ItemStack stack) {
+        return stack != null && prototype.isSimilar(stack);
+    }
+
+    @Nonnull
+    public Material getType() {
+        return prototype.getType();
+    }
+
+    public int getMaxStackSize() {
+        return prototype.getMaxStackSize();
+    }
+
+    /**
+     * Get a read-only view of the items this key identifies, with an amount of one.
+     * The returned stack is shared, and must not be modified; use
+     * {@link #toItemStack(int)} to get a stack which can be modified.
+     *
+     * @return the key's item stack
+     */
+    @Nonnull
+    public ItemStack getPrototype() {
+        return prototype;
+    }
+
+    /**
+     * Create a new item stack of this key's items.
+     *
+     * @param amount
+     *            the number of items
+     * @return a new item stack
+     */
+    @Nonnull
+    public ItemStack toItemStack(int amount) {
+        ItemStack stack = prototype.clone();
+        stack.setAmount(amount);
+        return stack;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof ItemKey)) {
+            return false;
+        }
+
+        ItemKey other = (ItemKey) o;
+        return hash == other.hash && prototype.isSimilar(other.prototype);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ItemKey[" + prototype + "]";
+    }
+}
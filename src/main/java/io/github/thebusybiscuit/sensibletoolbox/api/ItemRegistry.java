@@ -1,5 +1,7 @@
 package io.github.thebusybiscuit.sensibletoolbox.api;
 
+import javax.annotation.Nullable;
+
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
@@ -134,6 +136,22 @@ public interface ItemRegistry {
      */
     BaseSTBItem getItemById(String id, ConfigurationSection conf);
 
+    /**
+     * Get the STB item type ID of the given item stack. STB's own registry only looks at
+     * the item's type, and doesn't decode the rest of its data, so this is much cheaper
+     * than {@link #fromItemStack(ItemStack)} when only the type is needed. The default
+     * implementation decodes the whole item.
+     *
+     * @param stack
+     *            the item stack, may be null
+     * @return the item's type ID, or null if the item stack is not an STB item
+     */
+    @Nullable
+    default String getItemTypeId(@Nullable ItemStack stack) {
+        BaseSTBItem item = stack == null ? null : fromItemStack(stack);
+        return item == null ? null : item.getItemTypeID();
+    }
+
     /**
      * Check if the given item stack is an STB item.
      *
@@ -7,8 +7,24 @@ import org.bukkit.inventory.ItemStack;
 
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 /**
  * Represents an STB block which can hold an inventory of items.
+ * <p>
+ * Besides {@link #insertItems(ItemStack, BlockFace, boolean, UUID)} and
+ * {@link #extractItems(BlockFace, ItemStack, int, UUID)}, which work with item stacks,
+ * items may be moved by {@link ItemKey} and amount: a transfer can be checked first with
+ * one of the {@code simulate} methods, which never change anything, and then carried
+ * out with the matching {@code commit} method. Holders should implement these so that
+ * topping up or drawing down a stack of items works on their contents directly, rather
+ * than copying item stacks about; the default implementations fall back to the item
+ * stack methods, and never copy the holder's whole inventory.
+ * <p>
+ * Callers which already have the key for their items should use the key methods. Going
+ * through {@link #insertItems(ItemStack, BlockFace, boolean, UUID)} means finding the key
+ * for the stack, which copies it unless the holder has a matching key to hand (STB's own
+ * holders keep the last one they were given).
  * 
  * @author desht
  */
@@ -78,4 +94,122 @@ public interface STBInventoryHolder extends InventoryHolder {
      *            the source inventory to update items from
      */
     void updateOutputItems(UUID uuid, Inventory inventory);
+
+    /**
+     * Work out how many of the given items could be inserted on the given side,
+     * without changing anything. A following call to
+     * {@link #commitInsert(ItemKey, int, BlockFace, boolean, UUID)} with the same
+     * arguments will insert this many, as long as nothing else has changed in between.
+     * <p>
+     * The default implementation can't check without inserting, and so reports that
+     * nothing would fit; {@link #commitInsert(ItemKey, int, BlockFace, boolean, UUID)}
+     * always works, whether or not this is implemented.
+     *
+     * @param key
+     *            the items to insert
+     * @param amount
+     *            the number of items to insert
+     * @param face
+     *            the side to insert into; BlockFace.SELF may be used if insertion is manual
+     * @param sorting
+     *            if true, only insert if inventory is empty or already contains the item
+     * @param uuid
+     *            ID of the player who is doing the inserting (may be null)
+     * @return the number of items which would be inserted
+     */
+    default int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, @Nullable UUID uuid) {
+        return 0;
+    }
+
+    /**
+     * Insert up to the given number of items on the given side. Either the returned
+     * number of items is inserted, or (if 0 is returned) nothing changes.
+     *
+     * @param key
+     *            the items to insert
+     * @param amount
+     *            the number of items to insert
+     * @param face
+     *            the side to insert into; BlockFace.SELF may be used if insertion is manual
+     * @param sorting
+     *            if true, only insert if inventory is empty or already contains the item
+     * @param uuid
+     *            ID of the player who is doing the inserting (may be null)
+     * @return the number of items actually inserted
+     */
+    default int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, @Nullable UUID uuid) {
+        return amount <= 0 ? 0 : insertItems(key.toItemStack(amount), face, sorting, uuid);
+    }
+
+    /**
+     * Get the key of the items which would be extracted next from the given side, if no
+     * particular items are asked for.
+     * <p>
+     * The default implementation can't tell without extracting, and so returns null;
+     * callers which get null should use {@link #extractItems(BlockFace, ItemStack, int, UUID)}
+     * with no receiver instead.
+     *
+     * @param face
+     *            the side to extract from; BlockFace.SELF may be used if extraction is manual
+     * @param uuid
+     *            ID of the player who is doing the extracting (may be null)
+     * @return the key of the items available, or null if there is nothing to extract (or
+     *         the holder can't tell)
+     */
+    @Nullable
+    default ItemKey getExtractableKey(BlockFace face, @Nullable UUID uuid) {
+        return null;
+    }
+
+    /**
+     * Work out how many of the given items could be extracted from the given side,
+     * without changing anything.
+     * <p>
+     * The default implementation can't check without extracting, and so reports that
+     * nothing is available; {@link #commitExtract(ItemKey, int, BlockFace, UUID)} always
+     * works, whether or not this is implemented.
+     *
+     * @param key
+     *            the items to extract
+     * @param amount
+     *            the number of items wanted
+     * @param face
+     *            the side to extract from; BlockFace.SELF may be used if extraction is manual
+     * @param uuid
+     *            ID of the player who is doing the extracting (may be null)
+     * @return the number of items which would be extracted
+     */
+    default int simulateExtract(ItemKey key, int amount, BlockFace face, @Nullable UUID uuid) {
+        return 0;
+    }
+
+    /**
+     * Extract up to the given number of items from the given side. Either the returned
+     * number of items is extracted, or (if 0 is returned) nothing changes. The caller is
+     * responsible for putting the extracted items somewhere.
+     *
+     * @param key
+     *            the items to extract
+     * @param amount
+     *            the number of items wanted
+     * @param face
+     *            the side to extract from; BlockFace.SELF may be used if extraction is manual
+     * @param uuid
+     *            ID of the player who is doing the extracting (may be null)
+     * @return the number of items actually extracted
+     */
+    default int commitExtract(ItemKey key, int amount, BlockFace face, @Nullable UUID uuid) {
+        if (amount <= 0) {
+            return 0;
+        }
+
+        // an empty receiver makes sure only these items come out, while leaving room for
+        // a whole stack of them (just one, for unstackable items)
+        ItemStack receiver = new ItemStack(key.getPrototype());
+        receiver.setAmount(0);
+
+        // holders either return a new stack, or add to the receiver and return that
+        ItemStack extracted = extractItems(face, receiver, amount, uuid);
+        return extracted == null ? 0 : extracted.getAmount();
+    }
 }
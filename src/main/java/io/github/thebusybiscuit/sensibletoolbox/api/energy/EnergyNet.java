@@ -1,13 +1,39 @@
 package io.github.thebusybiscuit.sensibletoolbox.api.energy;
 
+import javax.annotation.Nonnull;
+
 /**
  * Represents an energy net; a collection of chargeable blocks connected by
  * cabling.
+ * <p>
+ * Methods added since the first version of this interface have default
+ * implementations, so that existing implementations keep working: these
+ * re-evaluate the whole net where a single machine has changed, report the
+ * current flow in place of a recent average, and never notify listeners.
  */
 public interface EnergyNet {
 
+    /**
+     * Re-evaluate every machine on this energy net to determine which ones
+     * supply energy and which ones consume it.
+     */
     void findSourcesAndSinks();
 
+    /**
+     * Re-evaluate whether the given machine supplies or consumes energy on
+     * this net. This should be called whenever a machine's energy direction
+     * changes, e.g. a battery box has one of its faces reconfigured. Machines
+     * which are not attached to this net are ignored.
+     * <p>
+     * The default implementation re-evaluates every machine on the net.
+     *
+     * @param machine
+     *            the machine whose energy direction has changed
+     */
+    default void updateMachine(@Nonnull ChargeableBlock machine) {
+        findSourcesAndSinks();
+    }
+
     /**
      * Get the energy net ID for this energy net.
      *
@@ -51,4 +77,69 @@ public interface EnergyNet {
      * @return the supply
      */
     double getSupply();
+
+    /**
+     * Get the average energy supply per tick over the recent history of
+     * this net. The default implementation keeps no history, and returns the
+     * instantaneous supply.
+     *
+     * @return the average supply
+     */
+    default double getAverageSupply() {
+        return getSupply();
+    }
+
+    /**
+     * Get the average energy demand per tick over the recent history of
+     * this net. The default implementation keeps no history, and returns the
+     * instantaneous demand.
+     *
+     * @return the average demand
+     */
+    default double getAverageDemand() {
+        return getDemand();
+    }
+
+    /**
+     * Get the average energy per tick actually delivered to sinks over the
+     * recent history of this net. The default implementation keeps no history,
+     * and returns what the instantaneous supply can deliver of the demand.
+     *
+     * @return the average delivered energy
+     */
+    default double getAverageDelivered() {
+        return Math.min(getSupply(), getDemand());
+    }
+
+    /**
+     * Get the average demand per tick which could not be met over the recent
+     * history of this net. The default implementation keeps no history, and
+     * returns the instantaneous shortfall.
+     *
+     * @return the average shortfall
+     */
+    default double getAverageShortfall() {
+        return Math.max(0, getDemand() - getSupply());
+    }
+
+    /**
+     * Subscribe to periodic flow statistics for this net. The default
+     * implementation never sends any, and ignores the listener.
+     *
+     * @param listener
+     *            the listener to add
+     */
+    default void addListener(@Nonnull EnergyNetListener listener) {
+        // no statistics are sent
+    }
+
+    /**
+     * Unsubscribe from this net's flow statistics.
+     *
+     * @param listener
+     *            the listener to remove
+     */
+    default void removeListener(@Nonnull EnergyNetListener listener) {
+        // no statistics are sent
+    }
 }
@@ -0,0 +1,35 @@
+package io.github.thebusybiscuit.sensibletoolbox.api.energy;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Receives periodic flow statistics from an {@link EnergyNet} it has been
+ * subscribed to with {@link EnergyNet#addListener(EnergyNetListener)}. This
+ * avoids the need to look up and poll an energy net every tick.
+ * <p>
+ * Listeners are always called from the main thread.
+ */
+@FunctionalInterface
+public interface EnergyNetListener {
+
+    /**
+     * Called every few energy net ticks with up-to-date statistics. The averages
+     * reported by {@link EnergyNet#getAverageSupply()} and friends are valid for
+     * the duration of this call.
+     *
+     * @param net
+     *            the energy net which has been ticked
+     */
+    void onEnergyNetUpdate(@Nonnull EnergyNet net);
+
+    /**
+     * Called when the energy net is removed, e.g. because cabling was broken or
+     * merged with another net. The listener is unsubscribed automatically and
+     * should look for a new net if it still needs updates. The default
+     * implementation does nothing.
+     *
+     * @param net
+     *            the energy net which has been removed
+     */
+    default void onEnergyNetRemoved(@Nonnull EnergyNet net) {}
+}
@@ -1,17 +1,27 @@
 package io.github.thebusybiscuit.sensibletoolbox.api.filters;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.helpers.Validate;
+import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
 /**
  * A class which can filter items based on several criteria: whitelist/blacklist,
  * filter by material, by block data or by item metadata.
+ * <p>
+ * The filtered items are compiled into hashed lookups (a set of materials, and a set
+ * of {@link ItemKey}s for item meta filtering) the first time the filter is used after
+ * being changed, so that checking an item doesn't involve scanning the whole list.
  * 
  * @author desht
  * @author TheBusyBiscuit
@@ -21,6 +31,13 @@ public class Filter implements Cloneable {
     private final List<ItemStack> filteredItems = new ArrayList<>();
     private FilterType filterType;
     private boolean whiteList;
+    // moved on by every change to the filter
+    private int version;
+
+    // compiled form of filteredItems; rebuilt lazily after any change
+    private boolean compiled;
+    private final Set<Material> materials = EnumSet.noneOf(Material.class);
+    private final Set<ItemKey> keys = new HashSet<>();
 
     /**
      * Default filter which blocks nothing.
@@ -76,13 +93,16 @@ public class Filter implements Cloneable {
     }
 
     /**
-     * Add an item to this filter.
+     * Add an item to this filter. A copy of the item is stored, so later changes
+     * to the given stack do not affect the filter.
      *
      * @param stack
      *            the item to add
      */
     public void addItem(@Nonnull ItemStack stack) {
-        filteredItems.add(stack);
+        filteredItems.add(stack.clone());
+        compiled = false;
+        version++;
     }
 
     /**
@@ -101,36 +121,46 @@ public class Filter implements Cloneable {
             return !whiteList;
         }
 
+        if (!compiled) {
+            compile();
+        }
+
         switch (filterType) {
             case MATERIAL:
-                for (ItemStack f : filteredItems) {
-                    if (f.getType() == stack.getType()) {
-                        return whiteList;
-                    }
-                }
-
-                return !whiteList;
+                return materials.contains(stack.getType()) == whiteList;
             case ITEM_META:
-                for (ItemStack f : filteredItems) {
-                    if (f.isSimilar(stack)) {
-                        return whiteList;
-                    }
-                }
-
-                return !whiteList;
+                return matchesMeta(stack) == whiteList;
             default:
                 return !whiteList;
         }
     }
 
+    private void compile() {
+        materials.clear();
+        keys.clear();
+
+        for (ItemStack f : filteredItems) {
+            materials.add(f.getType());
+            keys.add(ItemKey.of(f));
+        }
+
+        compiled = true;
+    }
+
+    private boolean matchesMeta(@Nonnull ItemStack stack) {
+        // most items are rejected on their material alone, without making a key
+        return materials.contains(stack.getType()) && keys.contains(ItemKey.of(stack));
+    }
+
     /**
-     * Get a list of the items filtered by this filter.
+     * Get a list of the items filtered by this filter. Use {@link #addItem(ItemStack)}
+     * and {@link #clear()} to change it.
      *
-     * @return a list of item stacks
+     * @return an unmodifiable list of item stacks
      */
     @Nonnull
     public List<ItemStack> getFilterList() {
-        return filteredItems;
+        return Collections.unmodifiableList(filteredItems);
     }
 
     /**
@@ -147,6 +177,8 @@ public class Filter implements Cloneable {
      */
     public void clear() {
         filteredItems.clear();
+        compiled = false;
+        version++;
     }
 
     @Override
@@ -177,6 +209,7 @@ public class Filter implements Cloneable {
      */
     public void setWhiteList(boolean whiteList) {
         this.whiteList = whiteList;
+        version++;
     }
 
     /**
@@ -199,5 +232,17 @@ public class Filter implements Cloneable {
     public void setFilterType(@Nonnull FilterType filterType) {
         Validate.notNull(filterType, "FilterType cannot be null!");
         this.filterType = filterType;
+        version++;
+    }
+
+    /**
+     * Get this filter's version: a number which changes whenever the filter's items,
+     * whitelisting or filter type are changed. Anything which remembers a result of
+     * filtering can use this to tell when the result may no longer hold.
+     *
+     * @return the filter's current version
+     */
+    public int getVersion() {
+        return version;
     }
 }
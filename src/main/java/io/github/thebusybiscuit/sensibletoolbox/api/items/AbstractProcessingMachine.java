@@ -7,11 +7,10 @@ import org.bukkit.Tag;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.entity.Item;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.util.Vector;
 
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.InventoryGUI;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.ProgressMeter;
 import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
@@ -220,8 +219,7 @@ public abstract class AbstractProcessingMachine extends BaseSTBMachine {
 
         if (!target.getType().isSolid() || Tag.WALL_SIGNS.isTagged(target.getType())) {
             // no (solid) block there - just drop the item
-            Item i = loc.getWorld().dropItem(loc.add(0.5, 0.5, 0.5), item);
-            i.setVelocity(new Vector(0, 0, 0));
+            SensibleToolbox.getPluginInstance().getDropAggregator().drop(loc, item);
             return true;
         } else {
             BaseSTBBlock stb = LocationManager.getManager().get(loc);
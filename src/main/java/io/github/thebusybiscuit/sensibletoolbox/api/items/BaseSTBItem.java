@@ -84,6 +84,39 @@ public abstract class BaseSTBItem implements Comparable<BaseSTBItem>, InventoryG
         enchants = stack.getEnchantments();
     }
 
+    /**
+     * Update the charge of the item stack the player is holding, which must represent
+     * this item. Falls back to a full update with
+     * {@link #updateHeldItemStack(Player, EquipmentSlot)} if the stack can't be updated in place.
+     *
+     * @param player
+     *            the player
+     * @param hand
+     *            the hand holding this item
+     */
+    @ParametersAreNonnullByDefault
+    protected void updateHeldItemCharge(Player player, EquipmentSlot hand) {
+        PlayerInventory inv = player.getInventory();
+
+        if (hand == EquipmentSlot.HAND) {
+            ItemStack item = inv.getItemInMainHand();
+
+            if (updateCharge(item)) {
+                inv.setItemInMainHand(item);
+                return;
+            }
+        } else if (hand == EquipmentSlot.OFF_HAND) {
+            ItemStack item = inv.getItemInOffHand();
+
+            if (updateCharge(item)) {
+                inv.setItemInOffHand(item);
+                return;
+            }
+        }
+
+        updateHeldItemStack(player, hand);
+    }
+
     @ParametersAreNonnullByDefault
     protected void updateHeldItemStack(Player player, EquipmentSlot hand) {
         PlayerInventory inv = player.getInventory();
@@ -336,6 +369,10 @@ public abstract class BaseSTBItem implements Comparable<BaseSTBItem>, InventoryG
         conf.set("*TYPE", getItemTypeID());
         PersistentDataAPI.setString(im, SensibleToolboxPlugin.getInstance().getItemRegistry().getKey(), conf.saveToString());
 
+        if (this instanceof Chargeable) {
+            PersistentDataAPI.setDouble(im, SensibleToolboxPlugin.getInstance().getItemRegistry().getChargeKey(), ((Chargeable) this).getCharge());
+        }
+
         res.setItemMeta(im);
 
         if (SensibleToolboxPlugin.getInstance().isGlowingEnabled()) {
@@ -351,6 +388,46 @@ public abstract class BaseSTBItem implements Comparable<BaseSTBItem>, InventoryG
         return res;
     }
 
+    /**
+     * Update the charge held in an item stack which was previously created from this
+     * item with {@link #toItemStack(int)}, without re-encoding the rest of the item's
+     * state. Only the stored charge, the durability bar and the lore are modified.
+     * This is much cheaper than calling {@link #toItemStack(int)} again, and should be
+     * preferred when only the charge of a {@link Chargeable} item has changed.
+     *
+     * @param stack
+     *            the item stack to update
+     * @return true if the stack was updated; false if this item isn't chargeable, the
+     *         stack is a different type of item, or the stack was not created with a
+     *         separate charge field, in which case {@link #toItemStack(int)} must be used
+     *         instead
+     */
+    public boolean updateCharge(@Nonnull ItemStack stack) {
+        if (!(this instanceof Chargeable) || stack.getType() != getMaterial() || !stack.hasItemMeta()) {
+            return false;
+        }
+
+        STBItemRegistry registry = SensibleToolboxPlugin.getInstance().getItemRegistry();
+        NamespacedKey chargeKey = registry.getChargeKey();
+        ItemMeta im = stack.getItemMeta();
+
+        if (!PersistentDataAPI.hasDouble(im, chargeKey) || !getItemTypeID().equals(registry.getItemTypeId(stack))) {
+            // another chargeable item of the same material mustn't be given this item's charge
+            return false;
+        }
+
+        Chargeable ch = (Chargeable) this;
+        PersistentDataAPI.setDouble(im, chargeKey, ch.getCharge());
+        im.setLore(buildLore());
+        stack.setItemMeta(im);
+
+        if (stack.getType().getMaxDurability() > 0) {
+            STBUtil.levelToDurability(stack, (int) ch.getCharge(), ch.getMaxCharge());
+        }
+
+        return true;
+    }
+
     private List<String> buildLore() {
         String[] lore = getLore();
         String[] lore2 = getExtraLore();
@@ -28,6 +28,7 @@ import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeDirection;
@@ -76,6 +77,8 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
     private final Map<BlockFace, EnergyNet> energyNets = new EnumMap<>(BlockFace.class);
     private int regulatorAmount;
     private int thoroughnessAmount;
+    // the key of the items last inserted through insertItems()
+    private ItemKey lastInsertKey;
     private String chargeLabel;
     // a 0..7 value representing charge boundaries
     private int charge8;
@@ -286,7 +289,17 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
      *            the new charge direction
      */
     public final void setChargeDirection(ChargeDirection chargeDirection) {
+        if (this.chargeDirection == chargeDirection) {
+            return;
+        }
+
         this.chargeDirection = chargeDirection;
+
+        // a machine's energy direction may depend on its charge direction
+        for (EnergyNet net : getAttachedEnergyNets()) {
+            net.updateMachine(this);
+        }
+
         update(false);
     }
 
@@ -722,39 +735,68 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
 
     @Override
     public int insertItems(ItemStack toInsert, BlockFace side, boolean sorting, UUID uuid) {
+        // items tend to arrive a stack of the same kind at a time; skip the key lookup for those
+        if (lastInsertKey == null || !lastInsertKey.matches(toInsert)) {
+            lastInsertKey = ItemKey.of(toInsert);
+        }
+
+        return commitInsert(lastInsertKey, toInsert.getAmount(), side, sorting, uuid);
+    }
+
+    private int findInsertSlot(ItemKey key, BlockFace side, boolean sorting, UUID uuid) {
         if (!hasAccessRights(uuid)) {
-            return 0;
+            return -1;
         }
 
         if (sorting) {
             // machines don't take items from sorters
+            return -1;
+        }
+
+        int slot = findAvailableInputSlot(key.getPrototype(), side);
+        return slot >= 0 && acceptsItemType(key.getPrototype()) ? slot : -1;
+    }
+
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace side, boolean sorting, UUID uuid) {
+        int slot = findInsertSlot(key, side, sorting, uuid);
+
+        if (slot < 0) {
             return 0;
         }
 
-        int slot = findAvailableInputSlot(toInsert, side);
-        int nInserted = 0;
+        ItemStack inMachine = getInventoryItem(slot);
+        return inMachine == null ? amount : Math.max(0, Math.min(amount, inMachine.getType().getMaxStackSize() - inMachine.getAmount()));
+    }
+
+    @Override
+    public int commitInsert(ItemKey key, int amount, BlockFace side, boolean sorting, UUID uuid) {
+        int slot = amount <= 0 ? -1 : findInsertSlot(key, side, sorting, uuid);
 
-        if (slot >= 0 && acceptsItemType(toInsert)) {
-            ItemStack inMachine = getInventoryItem(slot);
+        if (slot < 0) {
+            return 0;
+        }
 
-            if (inMachine == null) {
-                nInserted = toInsert.getAmount();
-                setInventoryItem(slot, toInsert);
-            } else {
-                nInserted = Math.min(toInsert.getAmount(), inMachine.getType().getMaxStackSize() - inMachine.getAmount());
+        ItemStack inMachine = getInventoryItem(slot);
+        int nInserted;
 
-                if (nInserted > 0) {
-                    inMachine.setAmount(inMachine.getAmount() + nInserted);
-                    setInventoryItem(slot, inMachine);
-                }
-            }
+        if (inMachine == null) {
+            nInserted = amount;
+            setInventoryItem(slot, key.toItemStack(amount));
+        } else {
+            nInserted = Math.min(amount, inMachine.getType().getMaxStackSize() - inMachine.getAmount());
 
-            if (Debugger.getInstance().getLevel() > 1) {
-                Debugger.getInstance().debug(2, "inserted " + nInserted + " out of " + STBUtil.describeItemStack(toInsert) + " into " + this);
+            if (nInserted > 0) {
+                inMachine.setAmount(inMachine.getAmount() + nInserted);
+                setInventoryItem(slot, inMachine);
             }
         }
 
-        return nInserted;
+        if (Debugger.getInstance().getLevel() > 1) {
+            Debugger.getInstance().debug(2, "inserted " + nInserted + " out of " + amount + " " + key.getType() + " into " + this);
+        }
+
+        return Math.max(0, nInserted);
     }
 
     @Override
@@ -763,6 +805,28 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
             return null;
         }
 
+        ItemKey key = receiver == null ? getExtractableKey(face, uuid) : ItemKey.of(receiver);
+
+        if (key == null) {
+            return null;
+        } else if (receiver != null) {
+            amount = Math.min(amount, receiver.getType().getMaxStackSize() - receiver.getAmount());
+        }
+
+        int nExtracted = commitExtract(key, amount, face, uuid);
+
+        if (nExtracted <= 0) {
+            return null;
+        }
+
+        if (receiver != null) {
+            receiver.setAmount(receiver.getAmount() + nExtracted);
+        }
+
+        return key.toItemStack(nExtracted);
+    }
+
+    private int findExtractSlot(@Nullable ItemKey key) {
         int[] slots = getOutputSlots();
         int max = slots == null ? getInventory().getSize() : slots.length;
 
@@ -770,37 +834,58 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
             int slot = slots == null ? i : slots[i];
             ItemStack stack = getInventoryItem(slot);
 
-            if (stack != null && (receiver == null || stack.isSimilar(receiver))) {
-                int toTake = Math.min(amount, stack.getAmount());
+            if (stack != null && (key == null || key.matches(stack))) {
+                return slot;
+            }
+        }
 
-                if (receiver != null) {
-                    toTake = Math.min(toTake, receiver.getType().getMaxStackSize() - receiver.getAmount());
-                }
+        return -1;
+    }
 
-                if (toTake > 0) {
-                    ItemStack result = stack.clone();
-                    result.setAmount(toTake);
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
+            return null;
+        }
 
-                    if (receiver != null) {
-                        receiver.setAmount(receiver.getAmount() + toTake);
-                    }
+        int slot = findExtractSlot(null);
+        return slot < 0 ? null : ItemKey.of(getInventoryItem(slot));
+    }
 
-                    stack.setAmount(stack.getAmount() - toTake);
-                    setInventoryItem(slot, stack);
-                    setJammed(false);
-                    update(false);
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
+            return 0;
+        }
 
-                    if (Debugger.getInstance().getLevel() > 1) {
-                        Debugger.getInstance().debug(2, "extracted " + STBUtil.describeItemStack(result) + " from " + this);
-                    }
+        int slot = findExtractSlot(key);
+        return slot < 0 ? 0 : Math.max(0, Math.min(amount, getInventoryItem(slot).getAmount()));
+    }
 
-                    return result;
-                }
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid) || amount <= 0) {
+            return 0;
+        }
 
-            }
+        int slot = findExtractSlot(key);
+
+        if (slot < 0) {
+            return 0;
+        }
+
+        ItemStack stack = getInventoryItem(slot);
+        int toTake = Math.min(amount, stack.getAmount());
+        stack.setAmount(stack.getAmount() - toTake);
+        setInventoryItem(slot, stack);
+        setJammed(false);
+        update(false);
+
+        if (Debugger.getInstance().getLevel() > 1) {
+            Debugger.getInstance().debug(2, "extracted " + toTake + " " + key.getType() + " from " + this);
         }
 
-        return null;
+        return toTake;
     }
 
     @Override
@@ -1076,7 +1161,13 @@ public abstract class BaseSTBMachine extends BaseSTBBlock implements ChargeableB
 
             if (!getInventory().getViewers().isEmpty()) {
                 if (transferred > 0.0) {
-                    setInventoryItem(getEnergyCellSlot(), installedCell.toItemStack());
+                    ItemStack cellStack = getInventoryItem(getEnergyCellSlot());
+
+                    if (cellStack == null || !installedCell.updateCharge(cellStack)) {
+                        cellStack = installedCell.toItemStack();
+                    }
+
+                    setInventoryItem(getEnergyCellSlot(), cellStack);
                 }
 
                 if (chargeMeterId >= 0) {
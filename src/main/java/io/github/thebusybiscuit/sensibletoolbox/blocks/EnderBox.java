@@ -17,6 +17,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.enderstorage.EnderStorage;
 import io.github.thebusybiscuit.sensibletoolbox.api.enderstorage.EnderStorageHolder;
@@ -149,6 +150,31 @@ public class EnderBox extends BaseSTBBlock implements EnderTunable, STBInventory
         }
     }
 
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).simulateInsert(key, amount, face, sorting, uuid) : 0;
+    }
+
+    @Override
+    public int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).commitInsert(key, amount, face, sorting, uuid) : 0;
+    }
+
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).getExtractableKey(face, uuid) : null;
+    }
+
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).simulateExtract(key, amount, face, uuid) : 0;
+    }
+
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).commitExtract(key, amount, face, uuid) : 0;
+    }
+
     @Override
     public Inventory showOutputItems(UUID uuid) {
         return hasAccessRights(uuid) ? getInventoryHolderFor(uuid).showOutputItems(uuid) : null;
@@ -16,6 +16,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
@@ -98,6 +99,31 @@ public class TrashCan extends BaseSTBBlock implements STBInventoryHolder {
         return null;
     }
 
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        return amount;
+    }
+
+    @Override
+    public int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        return amount;
+    }
+
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        return null;
+    }
+
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        return 0;
+    }
+
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        return 0;
+    }
+
     @Override
     public Inventory showOutputItems(UUID uuid) {
         // a trash can always appears to have an empty inventory
@@ -9,7 +9,6 @@ import org.bukkit.DyeColor;
 import org.bukkit.Effect;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
@@ -30,6 +29,7 @@ import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.CyclerGadget;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBItem;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBMachine;
+import io.github.thebusybiscuit.sensibletoolbox.core.ProtectionCache;
 import io.github.thebusybiscuit.sensibletoolbox.items.LandMarker;
 import io.github.thebusybiscuit.sensibletoolbox.items.components.IntegratedCircuit;
 import io.github.thebusybiscuit.sensibletoolbox.items.components.ToughMachineFrame;
@@ -261,11 +261,11 @@ public class AutoBuilder extends BaseSTBMachine {
             Block b = getLocation().getWorld().getBlockAt(buildX, buildY, buildZ);
             double scuNeeded = 0.0;
             boolean advanceBuildPos = true;
-            OfflinePlayer owner = Bukkit.getOfflinePlayer(getOwner());
+            ProtectionCache protection = SensibleToolbox.getPluginInstance().getProtectionCache();
 
             switch (getBuildMode()) {
                 case CLEAR:
-                    if (!SensibleToolbox.getProtectionManager().hasPermission(owner, b, Interaction.BREAK_BLOCK)) {
+                    if (!protection.hasPermission(getOwner(), b, Interaction.BREAK_BLOCK)) {
                         setStatus(BuilderStatus.NO_PERMISSION);
                         return;
                     }
@@ -291,7 +291,7 @@ public class AutoBuilder extends BaseSTBMachine {
                 case FILL:
                 case WALLS:
                 case FRAME:
-                    if (!SensibleToolbox.getProtectionManager().hasPermission(owner, b, Interaction.PLACE_BLOCK)) {
+                    if (!protection.hasPermission(getOwner(), b, Interaction.PLACE_BLOCK)) {
                         setStatus(BuilderStatus.NO_PERMISSION);
                         return;
                     }
@@ -27,6 +27,7 @@ import org.bukkit.inventory.ShapedRecipe;
 
 import io.github.thebusybiscuit.sensibletoolbox.api.LightMeterHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.RedstoneBehaviour;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeDirection;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.GUIUtil;
@@ -133,8 +134,8 @@ public class BasicSolarCell extends BaseSTBMachine implements LightMeterHolder {
     }
 
     @Override
-    public int insertItems(ItemStack toInsert, BlockFace side, boolean sorting, UUID uuid) {
-        int n = super.insertItems(toInsert, side, sorting, uuid);
+    public int commitInsert(ItemKey key, int amount, BlockFace side, boolean sorting, UUID uuid) {
+        int n = super.commitInsert(key, amount, side, sorting, uuid);
 
         if (n > 0) {
             rescanPVCell();
@@ -144,12 +145,14 @@ public class BasicSolarCell extends BaseSTBMachine implements LightMeterHolder {
     }
 
     @Override
-    public ItemStack extractItems(BlockFace face, ItemStack receiver, int amount, UUID uuid) {
-        ItemStack stack = super.extractItems(face, receiver, amount, uuid);
-        if (stack != null) {
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        int n = super.commitExtract(key, amount, face, uuid);
+
+        if (n > 0) {
             rescanPVCell();
         }
-        return stack;
+
+        return n;
     }
 
     @Override
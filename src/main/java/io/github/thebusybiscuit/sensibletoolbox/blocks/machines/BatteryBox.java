@@ -131,7 +131,7 @@ public abstract class BatteryBox extends BaseSTBMachine {
         energyFlow.put(face, flow);
 
         for (EnergyNet net : getAttachedEnergyNets()) {
-            net.findSourcesAndSinks();
+            net.updateMachine(this);
         }
 
         update(false);
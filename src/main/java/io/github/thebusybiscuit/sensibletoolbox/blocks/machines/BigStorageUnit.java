@@ -27,6 +27,7 @@ import org.bukkit.inventory.ShapedRecipe;
 import org.bukkit.metadata.FixedMetadataValue;
 
 import io.github.bakedlibs.dough.items.ItemUtils;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.GUIUtil;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.InventoryGUI;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.ToggleButton;
@@ -35,6 +36,7 @@ import io.github.thebusybiscuit.sensibletoolbox.utils.BukkitSerialization;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 
 import me.desht.dhutils.Debugger;
+import me.desht.dhutils.text.LogUtils;
 
 public class BigStorageUnit extends AbstractProcessingMachine {
 
@@ -43,12 +45,18 @@ public class BigStorageUnit extends AbstractProcessingMachine {
     private static final String STB_LAST_BSU_INSERT = "STB_Last_BSU_Insert";
     private static final long DOUBLE_CLICK_TIME = 250L;
     private ItemStack stored;
+    // the key of the stored items, and the stored stack it was worked out for
+    private ItemKey storedKey;
+    private ItemStack keyedStored;
     private int storageAmount;
     private int outputAmount;
     private int maxCapacity;
     private final String[] signLabel = new String[4];
     private int oldTotalAmount = -1;
     private boolean locked;
+    // saved contents which couldn't be read, kept so they aren't lost when the unit is saved again
+    private String unreadableStored;
+    private int unreadableAmount;
 
     public BigStorageUnit() {
         super();
@@ -61,13 +69,19 @@ public class BigStorageUnit extends AbstractProcessingMachine {
         super(conf);
 
         try {
-            Inventory inv = BukkitSerialization.fromBase64(conf.getString("stored"));
-            setStoredItemType(inv.getItem(0));
+            ItemStack[] items = BukkitSerialization.decodeItems(conf.getString("stored"));
+            setStoredItemType(items.length > 0 ? items[0] : null);
+            setStorageAmount(conf.getInt("amount"));
         } catch (IOException e) {
-            e.printStackTrace();
+            // don't let the stored amount turn into whatever gets inserted next; the unit
+            // takes no items until its contents can be read again
+            LogUtils.warning(this + ": can't restore stored item type, unit disabled: " + e.getMessage());
+            unreadableStored = conf.getString("stored");
+            unreadableAmount = conf.getInt("amount");
+            setStoredItemType(null);
+            setStorageAmount(0);
         }
 
-        setStorageAmount(conf.getInt("amount"));
         locked = conf.getBoolean("locked", false);
         oldTotalAmount = getStorageAmount();
     }
@@ -75,10 +89,15 @@ public class BigStorageUnit extends AbstractProcessingMachine {
     @Override
     public YamlConfiguration freeze() {
         YamlConfiguration conf = super.freeze();
-        Inventory inv = Bukkit.createInventory(null, 9);
-        inv.setItem(0, stored);
-        conf.set("stored", BukkitSerialization.toBase64(inv, 1));
-        conf.set("amount", storageAmount);
+
+        if (unreadableStored != null) {
+            conf.set("stored", unreadableStored);
+            conf.set("amount", unreadableAmount);
+        } else {
+            conf.set("stored", BukkitSerialization.encodeItems(stored));
+            conf.set("amount", storageAmount);
+        }
+
         conf.set("locked", locked);
         return conf;
     }
@@ -274,7 +293,7 @@ public class BigStorageUnit extends AbstractProcessingMachine {
         int inputSlot = getInputSlots()[0];
         ItemStack stackIn = getInventoryItem(inputSlot);
 
-        if (stackIn != null && (stored == null || stackIn.isSimilar(stored) && !isFull())) {
+        if (stackIn != null && unreadableStored == null && (stored == null || stackIn.isSimilar(stored) && !isFull())) {
             double chargeNeeded = getChargePerOperation(stackIn.getAmount());
 
             if (getCharge() >= chargeNeeded) {
@@ -443,6 +462,11 @@ public class BigStorageUnit extends AbstractProcessingMachine {
     }
 
     private int rightClickInsert(@Nonnull Player player, int slot, @Nonnull ItemStack stack) {
+        if (unreadableStored != null) {
+            STBUtil.complain(player, getItemName() + "'s contents couldn't be loaded; it won't accept items.");
+            return 0;
+        }
+
         int toInsert = Math.min(stack.getAmount(), maxCapacity - getStorageAmount());
 
         if (toInsert == 0) {
@@ -506,7 +530,7 @@ public class BigStorageUnit extends AbstractProcessingMachine {
 
     @Override
     public boolean acceptsItemType(ItemStack stack) {
-        return stored == null || stored.isSimilar(stack);
+        return unreadableStored == null && (stored == null || stored.isSimilar(stack));
     }
 
     @Override
@@ -520,91 +544,107 @@ public class BigStorageUnit extends AbstractProcessingMachine {
         return getInventoryItem(getOutputSlots()[0]);
     }
 
-    @Override
-    public int insertItems(ItemStack item, BlockFace face, boolean sorting, UUID uuid) {
-        if (!hasAccessRights(uuid)) {
-            return 0;
-        }
+    // insertItems() and extractItems() are inherited, and work through these
 
-        double chargeNeeded = getChargePerOperation(item.getAmount());
-
-        if (!isRedstoneActive() || getCharge() < chargeNeeded) {
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        if (!hasAccessRights(uuid) || !isRedstoneActive() || getCharge() < getChargePerOperation(amount) || unreadableStored != null) {
             return 0;
         } else if (stored == null) {
-            setStoredItemType(item);
-            setStorageAmount(item.getAmount());
-            setCharge(getCharge() - chargeNeeded);
-            return item.getAmount();
-        } else if (item.isSimilar(stored)) {
-            int toInsert = Math.min(item.getAmount(), maxCapacity - getStorageAmount());
-            setStorageAmount(getStorageAmount() + toInsert);
-            setCharge(getCharge() - chargeNeeded);
-            return toInsert;
+            return amount;
+        } else if (key.matches(stored)) {
+            return Math.max(0, Math.min(amount, maxCapacity - getStorageAmount()));
         } else {
             return 0;
         }
     }
 
     @Override
-    public ItemStack extractItems(BlockFace face, ItemStack receiver, int amount, UUID uuid) {
-        if (!hasAccessRights(uuid)) {
-            return null;
+    public int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        int nInserted = simulateInsert(key, amount, face, sorting, uuid);
+
+        if (nInserted > 0) {
+            if (stored == null) {
+                setStoredItemType(key.getPrototype());
+            }
+
+            setStorageAmount(getStorageAmount() + nInserted);
+            setCharge(getCharge() - getChargePerOperation(amount));
         }
 
-        double chargeNeeded = getChargePerOperation(amount);
+        return nInserted;
+    }
 
-        if (!isRedstoneActive() || getStorageAmount() == 0 && getOutputAmount() == 0 || getCharge() < chargeNeeded) {
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
+            return null;
+        } else if (getStorageAmount() > 0) {
+            return getStoredKey();
+        } else if (getOutputAmount() > 0) {
+            return ItemKey.ofNullable(getOutputItem());
+        } else {
             return null;
         }
+    }
 
-        if (receiver != null) {
-            amount = Math.min(amount, receiver.getMaxStackSize() - receiver.getAmount());
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid) || !isRedstoneActive() || getTotalAmount() == 0 || getCharge() < getChargePerOperation(amount)) {
+            return 0;
+        }
 
-            if (getStorageAmount() > 0 && !receiver.isSimilar(getStoredItemType())) {
-                return null;
-            }
+        amount = Math.min(amount, key.getMaxStackSize());
 
-            if (amount > getStorageAmount() && getOutputAmount() > 0 && !receiver.isSimilar(getOutputItem())) {
-                return null;
-            }
+        if (getStorageAmount() > 0 && getStoredKey() != key) {
+            return 0;
+        } else if (amount > getStorageAmount() && getOutputAmount() > 0 && !key.matches(getOutputItem())) {
+            return 0;
+        } else {
+            return Math.min(amount, getTotalAmount());
+        }
+    }
+
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        int nExtracted = simulateExtract(key, amount, face, uuid);
+
+        if (nExtracted <= 0) {
+            return 0;
         }
 
-        int fromStorage = Math.min(getStorageAmount(), amount);
+        int fromStorage = Math.min(getStorageAmount(), nExtracted);
 
         if (fromStorage > 0) {
-            amount -= fromStorage;
             setStorageAmount(getStorageAmount() - fromStorage);
         }
 
-        int fromOutput = 0;
+        int fromOutput = nExtracted - fromStorage;
 
-        if (amount > 0) {
-            fromOutput = Math.min(getOutputAmount(), amount);
-
-            if (fromOutput > 0) {
-                setOutputAmount(getOutputAmount() - fromOutput);
-                ItemStack output = getOutputItem();
-                output.setAmount(getOutputAmount());
-                setOutputItem(output.getAmount() > 0 ? output : null);
-            }
+        if (fromOutput > 0) {
+            setOutputAmount(getOutputAmount() - fromOutput);
+            ItemStack output = getOutputItem();
+            output.setAmount(getOutputAmount());
+            setOutputItem(output.getAmount() > 0 ? output : null);
         }
 
-        ItemStack tmpStored = getStoredItemType();
-
         if (getTotalAmount() == 0) {
+            // an empty unit takes any items (unless it's locked)
             setStoredItemType(null);
         }
 
-        setCharge(getCharge() - chargeNeeded);
+        setCharge(getCharge() - getChargePerOperation(amount));
+        return nExtracted;
+    }
 
-        if (receiver == null) {
-            ItemStack returned = tmpStored.clone();
-            returned.setAmount(fromStorage + fromOutput);
-            return returned;
-        } else {
-            receiver.setAmount(receiver.getAmount() + fromStorage + fromOutput);
-            return receiver;
+    @Nullable
+    private ItemKey getStoredKey() {
+        if (stored != keyedStored) {
+            storedKey = ItemKey.ofNullable(stored);
+            keyedStored = stored;
         }
+
+        return storedKey;
     }
 
     @Override
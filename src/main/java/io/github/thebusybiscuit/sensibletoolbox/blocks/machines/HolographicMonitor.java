@@ -3,7 +3,6 @@ package io.github.thebusybiscuit.sensibletoolbox.blocks.machines;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
@@ -12,13 +11,12 @@ import com.gmail.filoghost.holographicdisplays.api.Hologram;
 import com.gmail.filoghost.holographicdisplays.api.HologramsAPI;
 
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
-import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
-import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 
 public class HolographicMonitor extends BaseSTBBlock {
 
+    private final NetGainWatcher watcher = new NetGainWatcher(this);
     private Hologram hologram;
 
     public HolographicMonitor() {}
@@ -65,23 +63,26 @@ public class HolographicMonitor extends BaseSTBBlock {
         if (hologram == null) {
             return;
         }
-        this.hologram.clearLines();
 
-        for (BlockFace f : STBUtil.getMainHorizontalFaces()) {
-            EnergyNet net = SensibleToolbox.getEnergyNet(getRelativeLocation(f).getBlock());
-            if (net != null) {
-                double stat = net.getSupply() - net.getDemand();
-                String prefix;
+        watcher.refresh();
 
-                if (stat > 0) {
-                    prefix = ChatColor.DARK_GREEN + "" + ChatColor.BOLD + "+";
-                } else {
-                    prefix = ChatColor.DARK_RED + "" + ChatColor.BOLD + "-";
-                }
+        if (!watcher.checkChanged()) {
+            return;
+        }
 
-                this.hologram.appendTextLine(prefix + " " + ChatColor.GRAY + STBUtil.getCompactDouble(Double.valueOf(String.valueOf(stat).replace("-", ""))) + " SCU/t");
-                break;
+        this.hologram.clearLines();
+
+        if (watcher.hasNet()) {
+            double stat = watcher.getNetGain();
+            String prefix;
+
+            if (stat > 0) {
+                prefix = ChatColor.DARK_GREEN + "" + ChatColor.BOLD + "+";
+            } else {
+                prefix = ChatColor.DARK_RED + "" + ChatColor.BOLD + "-";
             }
+
+            this.hologram.appendTextLine(prefix + " " + ChatColor.GRAY + STBUtil.getCompactDouble(Math.abs(stat)) + " SCU/t");
         }
     }
 
@@ -97,6 +98,7 @@ public class HolographicMonitor extends BaseSTBBlock {
     public void onBlockUnregistered(Location location) {
         super.onBlockUnregistered(location);
 
+        watcher.close();
         this.hologram.delete();
     }
 }
@@ -0,0 +1,115 @@
+package io.github.thebusybiscuit.sensibletoolbox.blocks.machines;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.block.BlockFace;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNetListener;
+import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
+import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+
+/**
+ * Tracks the net energy gain of the energy net next to a monitor block. Figures are
+ * pushed by the energy net, so the monitor only needs to find the net when it isn't
+ * already subscribed to one.
+ *
+ * @see PowerMonitor
+ * @see HolographicMonitor
+ */
+class NetGainWatcher implements EnergyNetListener {
+
+    private final BaseSTBBlock monitor;
+    private EnergyNet net;
+    private BlockFace netFace;
+    private double netGain;
+    private boolean changed = true;
+
+    NetGainWatcher(@Nonnull BaseSTBBlock monitor) {
+        this.monitor = monitor;
+    }
+
+    /**
+     * Make sure we're subscribed to the energy net which is attached to the monitor,
+     * if there is one. This only involves a lookup for the face we're already
+     * attached on, unless the cable there has gone away.
+     */
+    void refresh() {
+        if (monitor.getLocation() == null) {
+            return;
+        }
+
+        if (net != null && SensibleToolbox.getEnergyNet(monitor.getRelativeLocation(netFace).getBlock()) == net) {
+            return;
+        }
+
+        setNet(null, null);
+
+        for (BlockFace f : STBUtil.getMainHorizontalFaces()) {
+            EnergyNet found = SensibleToolbox.getEnergyNet(monitor.getRelativeLocation(f).getBlock());
+
+            if (found != null) {
+                setNet(found, f);
+                break;
+            }
+        }
+    }
+
+    private void setNet(@Nullable EnergyNet newNet, @Nullable BlockFace face) {
+        if (net != null) {
+            net.removeListener(this);
+        }
+
+        net = newNet;
+        netFace = face;
+        netGain = newNet == null ? 0 : newNet.getAverageSupply() - newNet.getAverageDemand();
+        changed = true;
+
+        if (newNet != null) {
+            newNet.addListener(this);
+        }
+    }
+
+    void close() {
+        setNet(null, null);
+    }
+
+    boolean hasNet() {
+        return net != null;
+    }
+
+    double getNetGain() {
+        return netGain;
+    }
+
+    /**
+     * Check whether the net gain (or the attached net) has changed since the last call.
+     *
+     * @return true if the monitor's display needs updating
+     */
+    boolean checkChanged() {
+        boolean res = changed;
+        changed = false;
+        return res;
+    }
+
+    @Override
+    public void onEnergyNetUpdate(@Nonnull EnergyNet energyNet) {
+        double gain = energyNet.getAverageSupply() - energyNet.getAverageDemand();
+
+        if (Double.compare(gain, netGain) != 0) {
+            netGain = gain;
+            changed = true;
+        }
+    }
+
+    @Override
+    public void onEnergyNetRemoved(@Nonnull EnergyNet energyNet) {
+        net = null;
+        netFace = null;
+        netGain = 0;
+        changed = true;
+    }
+}
@@ -1,20 +1,21 @@
 package io.github.thebusybiscuit.sensibletoolbox.blocks.machines;
 
 import org.bukkit.ChatColor;
+import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
 
-import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
-import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.items.energycells.TenKEnergyCell;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 
 public class PowerMonitor extends BaseSTBBlock {
 
+    private final NetGainWatcher watcher = new NetGainWatcher(this);
+
     public PowerMonitor() {}
 
     public PowerMonitor(ConfigurationSection conf) {
@@ -56,32 +57,43 @@ public class PowerMonitor extends BaseSTBBlock {
 
     @Override
     public void onServerTick() {
-        updateAttachedLabelSigns();
+        watcher.refresh();
+
+        if (watcher.checkChanged()) {
+            updateAttachedLabelSigns();
+        }
+
         super.onServerTick();
     }
 
+    @Override
+    public void onBlockUnregistered(Location location) {
+        watcher.close();
+        super.onBlockUnregistered(location);
+    }
+
     @Override
     protected String[] getSignLabel(BlockFace face) {
         String[] label = super.getSignLabel(face);
 
-        label[2] = ChatColor.DARK_RED + "No cable attached";
-
-        for (BlockFace f : STBUtil.getMainHorizontalFaces()) {
-            EnergyNet net = SensibleToolbox.getEnergyNet(getRelativeLocation(f).getBlock());
-
-            if (net != null) {
-                double stat = net.getSupply() - net.getDemand();
-                String prefix;
+        if (!watcher.hasNet()) {
+            // a sign may be attached before our first tick
+            watcher.refresh();
+        }
 
-                if (stat > 0) {
-                    prefix = ChatColor.DARK_GREEN + "" + ChatColor.BOLD + "+ " + ChatColor.GREEN;
-                } else {
-                    prefix = ChatColor.DARK_RED + "" + ChatColor.BOLD + "- " + ChatColor.RED;
-                }
+        if (watcher.hasNet()) {
+            double stat = watcher.getNetGain();
+            String prefix;
 
-                label[2] = prefix + STBUtil.getCompactDouble(Math.abs(stat)) + " SCU/t";
-                break;
+            if (stat > 0) {
+                prefix = ChatColor.DARK_GREEN + "" + ChatColor.BOLD + "+ " + ChatColor.GREEN;
+            } else {
+                prefix = ChatColor.DARK_RED + "" + ChatColor.BOLD + "- " + ChatColor.RED;
             }
+
+            label[2] = prefix + STBUtil.getCompactDouble(Math.abs(stat)) + " SCU/t";
+        } else {
+            label[2] = ChatColor.DARK_RED + "No cable attached";
         }
 
         return label;
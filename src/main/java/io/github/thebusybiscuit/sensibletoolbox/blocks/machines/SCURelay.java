@@ -23,6 +23,7 @@ import org.bukkit.inventory.ShapelessRecipe;
 import com.google.common.base.Objects;
 
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.InventoryGUI;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.SlotType;
@@ -253,8 +254,8 @@ public class SCURelay extends BatteryBox {
     }
 
     @Override
-    public int insertItems(ItemStack toInsert, BlockFace side, boolean sorting, UUID uuid) {
-        int n = super.insertItems(toInsert, side, sorting, uuid);
+    public int commitInsert(ItemKey key, int amount, BlockFace side, boolean sorting, UUID uuid) {
+        int n = super.commitInsert(key, amount, side, sorting, uuid);
 
         if (n > 0) {
             rescanTransponder();
@@ -264,14 +265,14 @@ public class SCURelay extends BatteryBox {
     }
 
     @Override
-    public ItemStack extractItems(BlockFace face, ItemStack receiver, int amount, UUID uuid) {
-        ItemStack stack = super.extractItems(face, receiver, amount, uuid);
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        int n = super.commitExtract(key, amount, face, uuid);
 
-        if (stack != null) {
+        if (n > 0) {
             rescanTransponder();
         }
 
-        return stack;
+        return n;
     }
 
     private void rescanTransponder() {
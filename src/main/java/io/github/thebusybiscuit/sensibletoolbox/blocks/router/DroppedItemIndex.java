@@ -0,0 +1,274 @@
+package io.github.thebusybiscuit.sensibletoolbox.blocks.router;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Item;
+
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.VacuumModule;
+
+/**
+ * An index of the dropped {@link Item} entities in each world, bucketed by chunk, so
+ * that vacuum modules can find nearby items without asking the world for its entities
+ * on every router tick. The index is fed by item spawn, merge, pickup and despawn
+ * events, and by entities being loaded and unloaded with their chunks.
+ * <p>
+ * Items move after they've been indexed, so the buckets are only approximate: every
+ * {@link #REBUCKET_INTERVAL} ticks, each indexed item is checked and moved to the
+ * bucket for the chunk it's now in, and dead items are dropped. Queries always check
+ * an item's actual location, and look one chunk further out than strictly needed.
+ * <p>
+ * This also runs the absorption of vacuumed items: rather than each item getting its
+ * own scheduled task, items are queued here by the tick they should arrive on, and all
+ * the items due on a tick are handled together.
+ *
+ * @see VacuumModule
+ */
+public final class DroppedItemIndex {
+
+    private static final int REBUCKET_INTERVAL = 20;
+
+    private final Map<UUID, Map<Long, Set<Item>>> buckets = new HashMap<>();
+    // the key of the bucket each indexed item is in, so that it can be removed from there directly
+    private final Map<UUID, Long> indexed = new HashMap<>();
+    // items waiting to be absorbed, by the tick they're due on
+    private final Map<Long, List<PendingAbsorb>> pending = new HashMap<>();
+    private final Set<UUID> claimed = new HashSet<>();
+    private long ticks;
+
+    private static final class PendingAbsorb {
+
+        private final Item item;
+        private final Consumer<Item> absorber;
+
+        private PendingAbsorb(Item item, Consumer<Item> absorber) {
+            this.item = item;
+            this.absorber = absorber;
+        }
+    }
+
+    /**
+     * Add all the dropped items in the given world to the index.
+     *
+     * @param world
+     *            the world
+     */
+    public void indexWorld(@Nonnull World world) {
+        for (Item item : world.getEntitiesByClass(Item.class)) {
+            add(item);
+        }
+    }
+
+    /**
+     * Add a dropped item to the index.
+     *
+     * @param item
+     *            the item entity
+     */
+    public void add(@Nonnull Item item) {
+        if (!indexed.containsKey(item.getUniqueId())) {
+            addToBucket(item.getWorld().getUID(), item);
+        }
+    }
+
+    /**
+     * Remove a dropped item from the index, e.g. because it has been picked up.
+     *
+     * @param item
+     *            the item entity
+     */
+    public void remove(@Nonnull Item item) {
+        Long key = indexed.remove(item.getUniqueId());
+        Map<Long, Set<Item>> worldMap = key == null ? null : buckets.get(item.getWorld().getUID());
+
+        if (worldMap != null) {
+            // the bucket it was put in, even if it's moved since
+            Set<Item> bucket = worldMap.get(key);
+
+            if (bucket != null && bucket.remove(item) && bucket.isEmpty()) {
+                worldMap.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forget all indexed items in the given world.
+     *
+     * @param world
+     *            the world being unloaded
+     */
+    public void onWorldUnloaded(@Nonnull World world) {
+        Map<Long, Set<Item>> worldMap = buckets.remove(world.getUID());
+
+        if (worldMap != null) {
+            for (Set<Item> bucket : worldMap.values()) {
+                for (Item item : bucket) {
+                    indexed.remove(item.getUniqueId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the indexed items which are within the given distance of a location, along
+     * each axis. Items which have already been claimed by a vacuum are not included.
+     *
+     * @param loc
+     *            the centre of the search
+     * @param radius
+     *            the distance from the centre to search
+     * @param found
+     *            a list to add the items found to
+     */
+    @ParametersAreNonnullByDefault
+    public void findNearby(Location loc, double radius, List<Item> found) {
+        Map<Long, Set<Item>> worldMap = buckets.get(loc.getWorld().getUID());
+
+        if (worldMap == null) {
+            return;
+        }
+
+        int minX = ((int) Math.floor(loc.getX() - radius) >> 4) - 1;
+        int maxX = ((int) Math.floor(loc.getX() + radius) >> 4) + 1;
+        int minZ = ((int) Math.floor(loc.getZ() - radius) >> 4) - 1;
+        int maxZ = ((int) Math.floor(loc.getZ() + radius) >> 4) + 1;
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cz = minZ; cz <= maxZ; cz++) {
+                Set<Item> bucket = worldMap.get(getChunkKey(cx, cz));
+
+                if (bucket == null) {
+                    continue;
+                }
+
+                for (Item item : bucket) {
+                    if (item.isValid() && !claimed.contains(item.getUniqueId())) {
+                        Location itemLoc = item.getLocation();
+
+                        if (Math.abs(itemLoc.getX() - loc.getX()) <= radius && Math.abs(itemLoc.getY() - loc.getY()) <= radius && Math.abs(itemLoc.getZ() - loc.getZ()) <= radius) {
+                            found.add(item);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Claim an item for absorption after the given number of ticks. Once claimed, the
+     * item won't be returned by {@link #findNearby(Location, double, List)} until it
+     * has been absorbed (or has vanished).
+     *
+     * @param item
+     *            the item entity
+     * @param delay
+     *            the delay in ticks before the item is absorbed
+     * @param absorber
+     *            called with the item when it's due, if it's still valid
+     */
+    @ParametersAreNonnullByDefault
+    public void scheduleAbsorb(Item item, long delay, Consumer<Item> absorber) {
+        claimed.add(item.getUniqueId());
+        pending.computeIfAbsent(ticks + Math.max(1, delay), k -> new ArrayList<>()).add(new PendingAbsorb(item, absorber));
+    }
+
+    /**
+     * Called once per server tick: absorbs all items due on this tick, and periodically
+     * brings the buckets up to date with where the items have moved to.
+     */
+    public void tick() {
+        ticks++;
+
+        List<PendingAbsorb> due = pending.remove(ticks);
+
+        if (due != null) {
+            for (PendingAbsorb p : due) {
+                claimed.remove(p.item.getUniqueId());
+
+                if (p.item.isValid()) {
+                    p.absorber.accept(p.item);
+                }
+            }
+        }
+
+        if (ticks % REBUCKET_INTERVAL == 0) {
+            rebucket();
+        }
+    }
+
+    private void rebucket() {
+        for (Map.Entry<UUID, Map<Long, Set<Item>>> worldEntry : buckets.entrySet()) {
+            Map<Long, Set<Item>> worldMap = worldEntry.getValue();
+            List<Item> moved = null;
+
+            for (Iterator<Map.Entry<Long, Set<Item>>> iter = worldMap.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry<Long, Set<Item>> entry = iter.next();
+
+                for (Iterator<Item> itemIter = entry.getValue().iterator(); itemIter.hasNext();) {
+                    Item item = itemIter.next();
+
+                    if (!item.isValid()) {
+                        itemIter.remove();
+                        indexed.remove(item.getUniqueId());
+                        continue;
+                    }
+
+                    Location loc = item.getLocation();
+                    long key = getChunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+
+                    if (key != entry.getKey()) {
+                        itemIter.remove();
+
+                        if (moved == null) {
+                            moved = new ArrayList<>();
+                        }
+
+                        moved.add(item);
+                    }
+                }
+
+                if (entry.getValue().isEmpty()) {
+                    iter.remove();
+                }
+            }
+
+            if (moved != null) {
+                for (Item item : moved) {
+                    addToBucket(worldEntry.getKey(), item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of items in the index.
+     *
+     * @return the number of indexed items
+     */
+    public int size() {
+        return indexed.size();
+    }
+
+    private void addToBucket(@Nonnull UUID worldId, @Nonnull Item item) {
+        Location loc = item.getLocation();
+        long key = getChunkKey(loc.getBlockX() >> 4, loc.getBlockZ() >> 4);
+        buckets.computeIfAbsent(worldId, k -> new HashMap<>()).computeIfAbsent(key, k -> new HashSet<>()).add(item);
+        indexed.put(item.getUniqueId(), key);
+    }
+
+    private static long getChunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
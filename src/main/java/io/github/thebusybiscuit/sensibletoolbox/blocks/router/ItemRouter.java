@@ -3,9 +3,15 @@ package io.github.thebusybiscuit.sensibletoolbox.blocks.router;
 import java.awt.Color;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.annotation.Nonnull;
@@ -30,6 +36,8 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
 
+import io.github.bakedlibs.dough.items.ItemUtils;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.GUIUtil;
@@ -38,35 +46,65 @@ import io.github.thebusybiscuit.sensibletoolbox.api.gui.SlotType;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.AccessControlGadget;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.RedstoneBehaviourGadget;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.AdvancedSenderModule;
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.BufferModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.DirectionalItemRouterModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.ItemRouterModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.ReceiverModule;
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.SenderModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.SpeedModule;
 import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.StackModule;
 import io.github.thebusybiscuit.sensibletoolbox.utils.BukkitSerialization;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+import io.github.thebusybiscuit.sensibletoolbox.utils.UnicodeSymbol;
 import io.github.thebusybiscuit.sensibletoolbox.utils.VanillaInventoryUtils;
 import me.desht.dhutils.Debugger;
+import me.desht.dhutils.MiscUtil;
 import me.desht.dhutils.text.LogUtils;
 
 public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
+    private static final int QUEUE_LABEL_SLOT = 10;
     private static final int BUFFER_LABEL_SLOT = 12;
     private static final int BUFFER_ITEM_SLOT = 13;
     private static final int MODULE_LABEL_SLOT = 18;
     private static final int MOD_SLOT_START = 27;
     private static final int MOD_SLOT_END = 36;
     private static final int MOD_SLOT_COUNT = 9;
+    private static final int MAX_EXTRA_BUFFERS = 3;
+
+    /**
+     * The most buffer slots a router can have: one, plus one for each buffer module.
+     */
+    public static final int MAX_BUFFER_SLOTS = 1 + MAX_EXTRA_BUFFERS;
 
     private final List<InstalledModule> modules = new ArrayList<>();
+    // the buffer slot currently being processed; the other slots are kept in buffers[]
     private ItemStack bufferItem;
+    private final ItemStack[] buffers = new ItemStack[MAX_BUFFER_SLOTS];
+    private int activeBuffer = 0;
+    // extra buffer slots unlocked by buffer modules
+    private int extraBufferCount = 0;
+    // the key of the items in each buffer slot, and the stack it was worked out for
+    private final ItemKey[] bufferKeys = new ItemKey[buffers.length];
+    private final ItemStack[] keyedStacks = new ItemStack[buffers.length];
     private int stackSize;
     private int tickRate;
     private boolean needToProcessModules = false;
     private boolean needToScanBufferSlot = false;
     private final List<BlockFace> neighbours = new ArrayList<>();
+    // what was found on each face at the last scan; the material is kept so that
+    // physics events which don't change the neighbour (e.g. redstone) can be ignored
+    private final Map<BlockFace, Material> neighbourMaterials = new EnumMap<>(BlockFace.class);
+    private final Map<BlockFace, STBInventoryHolder> neighbourHolders = new EnumMap<>(BlockFace.class);
+    private final Set<BlockFace> vanillaNeighbours = EnumSet.noneOf(BlockFace.class);
+    private boolean neighbourScanPending = false;
+    // items taken by advanced senders while their receiver's chunk wasn't loaded, by linked location
+    private final Map<String, ItemStack> linkQueues = new HashMap<>();
     private boolean updateNeeded = false;
     private ReceiverModule receiver = null;
+    // changes whenever anything which decides if this router is a relay may have changed
+    private long relayStamp;
 
     public ItemRouter() {
         bufferItem = null;
@@ -82,20 +120,45 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
         try {
             if (conf.contains("buffer")) {
-                Inventory inv = BukkitSerialization.fromBase64(conf.getString("buffer"));
-                setBufferItem(inv.getItem(0));
+                // slot 0 is the main buffer; any extra buffer slots follow it
+                ItemStack[] items = BukkitSerialization.decodeItems(conf.getString("buffer"));
+                setBufferItem(items.length > 0 ? items[0] : null);
+
+                for (int i = 1; i < buffers.length && i < items.length; i++) {
+                    buffers[i] = items[i];
+                }
             }
         } catch (IOException e) {
             LogUtils.warning(this + ": can't restore buffer item: " + e.getMessage());
         }
+
+        loadLinkQueues(conf);
+    }
+
+    private void loadLinkQueues(@Nonnull ConfigurationSection conf) {
+        ConfigurationSection queues = conf.getConfigurationSection("linkQueues");
+
+        if (queues != null) {
+            for (String k : queues.getKeys(false)) {
+                try {
+                    ItemStack[] items = BukkitSerialization.decodeItems(queues.getString(k + ".items"));
+                    ItemStack stack = items.length > 0 ? items[0] : null;
+
+                    if (stack != null) {
+                        linkQueues.put(queues.getString(k + ".link"), stack);
+                    }
+                } catch (IOException e) {
+                    LogUtils.warning(this + ": can't restore queued items: " + e.getMessage());
+                }
+            }
+        }
     }
 
     private void loadModules(@Nonnull ConfigurationSection conf) {
         try {
             String enc = conf.getString("moduleList");
             if (enc != null && !enc.isEmpty()) {
-                Inventory inv = BukkitSerialization.fromBase64(conf.getString("moduleList"));
-                processModules(inv, 0);
+                processModules(BukkitSerialization.decodeItems(enc), 0);
             }
         } catch (IOException e) {
             LogUtils.warning(this + ": can't restore module list: " + e.getMessage());
@@ -107,20 +170,39 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         YamlConfiguration conf = super.freeze();
 
         if (getGUI() != null) {
-            Inventory modInv = Bukkit.createInventory(null, 9);
+            ItemStack[] mods = new ItemStack[9];
 
             for (int i = 0; i < 9; i++) {
-                modInv.setItem(i, getGUI().getItem(MOD_SLOT_START + i));
+                mods[i] = getGUI().getItem(MOD_SLOT_START + i);
             }
 
-            conf.set("moduleList", BukkitSerialization.toBase64(modInv));
+            conf.set("moduleList", BukkitSerialization.encodeItems(mods));
         } else {
             conf.set("moduleList", "");
         }
 
-        Inventory bufferInv = Bukkit.createInventory(null, 9);
-        bufferInv.setItem(0, getBufferItem());
-        conf.set("buffer", BukkitSerialization.toBase64(bufferInv, 1));
+        // only save as many slots as are in use, so a single buffer is saved just as it always was
+        ItemStack[] bufferItems = new ItemStack[buffers.length];
+        int nSlots = 1;
+
+        for (int i = 0; i < buffers.length; i++) {
+            bufferItems[i] = getBufferSlot(i);
+
+            if (bufferItems[i] != null) {
+                nSlots = i + 1;
+            }
+        }
+
+        conf.set("buffer", BukkitSerialization.encodeItems(Arrays.copyOf(bufferItems, nSlots)));
+
+        int i = 0;
+
+        for (Map.Entry<String, ItemStack> entry : linkQueues.entrySet()) {
+            conf.set("linkQueues." + i + ".link", entry.getKey());
+            conf.set("linkQueues." + i + ".items", BukkitSerialization.encodeItems(entry.getValue()));
+            i++;
+        }
+
         return conf;
     }
 
@@ -193,7 +275,7 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
             updateBufferIndicator(true);
             getGUI().show(event.getPlayer());
             event.setCancelled(true);
-        } else if (event.getAction() == Action.LEFT_CLICK_BLOCK && event.getPlayer().isSneaking() && getBufferItem() != null) {
+        } else if (event.getAction() == Action.LEFT_CLICK_BLOCK && event.getPlayer().isSneaking() && !isBufferEmpty()) {
             if (hasAccessRights(event.getPlayer())) {
                 ejectBuffer(event.getBlockFace());
             }
@@ -206,8 +288,16 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
     public void ejectBuffer(@Nonnull BlockFace face) {
         Block b = getLocation().getBlock().getRelative(face);
-        b.getWorld().dropItemNaturally(b.getLocation(), getBufferItem());
-        setBufferItem(null);
+
+        for (int i = 0; i < buffers.length; i++) {
+            ItemStack stack = getBufferSlot(i);
+
+            if (stack != null) {
+                b.getWorld().dropItemNaturally(b.getLocation(), stack);
+                setBufferSlot(i, null);
+            }
+        }
+
         update(false);
         b.getWorld().playSound(b.getLocation(), Sound.ENTITY_CHICKEN_EGG, 1.0F, 1.0F);
     }
@@ -216,10 +306,16 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
     protected InventoryGUI createGUI() {
         InventoryGUI gui = GUIUtil.createGUI(this, 36, ChatColor.DARK_RED + getItemName());
 
-        gui.addLabel("Item Buffer", BUFFER_LABEL_SLOT, null, "Items can be extracted", "here, but not inserted.");
+        gui.addLabel("Item Buffer", BUFFER_LABEL_SLOT, null, "Items can be extracted", "here, but not inserted.", "Buffer modules unlock", "extra buffer slots.");
         gui.setSlotType(BUFFER_ITEM_SLOT, SlotType.ITEM);
         gui.setItem(BUFFER_ITEM_SLOT, getBufferItem());
 
+        for (int i = 1; i <= extraBufferCount; i++) {
+            gui.setSlotType(BUFFER_ITEM_SLOT + i, SlotType.ITEM);
+            gui.setItem(BUFFER_ITEM_SLOT + i, buffers[i]);
+        }
+
+        addQueueLabel(gui);
         gui.addGadget(new RedstoneBehaviourGadget(gui, 8));
         gui.addGadget(new AccessControlGadget(gui, 17));
 
@@ -240,7 +336,14 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
     @Override
     public void onBlockRegistered(Location loc, boolean isPlacing) {
-        Bukkit.getScheduler().runTask(getProviderPlugin(), this::findNeighbourInventories);
+        scheduleNeighbourScan();
+        relayStamp++;
+
+        for (Map.Entry<String, ItemStack> entry : linkQueues.entrySet()) {
+            SensibleToolbox.getPluginInstance().getRouterLinkRegistry().setQueued(MiscUtil.formatLocation(loc), entry.getKey(), entry.getValue().getAmount());
+        }
+
+        returnOrphanedQueues();
 
         if (updateNeeded) {
             update(false);
@@ -256,6 +359,21 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         getGUI().ejectItems(BUFFER_ITEM_SLOT);
         setBufferItem(null);
 
+        for (int i = 1; i < buffers.length; i++) {
+            if (buffers[i] != null) {
+                loc.getWorld().dropItemNaturally(loc, buffers[i]);
+                setBufferSlot(i, null);
+            }
+        }
+
+        for (Map.Entry<String, ItemStack> entry : linkQueues.entrySet()) {
+            loc.getWorld().dropItemNaturally(loc, entry.getValue());
+            SensibleToolbox.getPluginInstance().getRouterLinkRegistry().setQueued(MiscUtil.formatLocation(loc), entry.getKey(), 0);
+        }
+
+        linkQueues.clear();
+        relayStamp++;
+
         for (int modSlot = MOD_SLOT_START; modSlot < MOD_SLOT_END; modSlot++) {
             getGUI().ejectItems(modSlot);
         }
@@ -270,12 +388,17 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         boolean didSomeWork = false;
 
         if (needToProcessModules) {
-            processModules(getGUI().getInventory(), MOD_SLOT_START);
+            processModules(getGUI().getInventory().getContents(), MOD_SLOT_START);
             needToProcessModules = false;
         }
 
         if (needToScanBufferSlot) {
             bufferItem = getGUI().getItem(BUFFER_ITEM_SLOT);
+
+            for (int i = 1; i <= extraBufferCount; i++) {
+                buffers[i] = getGUI().getItem(BUFFER_ITEM_SLOT + i);
+            }
+
             update(false);
             needToScanBufferSlot = false;
         }
@@ -283,17 +406,17 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         if (isRedstoneActive()) {
             Location loc = getLocation();
 
-            for (InstalledModule e : modules) {
-                if (e.getModule() instanceof DirectionalItemRouterModule) {
-                    DirectionalItemRouterModule dmod = (DirectionalItemRouterModule) e.getModule();
-                    if (dmod.execute(loc.clone())) {
+            // each buffer slot in turn is made the active one, and all modules run on it
+            try {
+                for (int i = 0; i <= extraBufferCount; i++) {
+                    selectBuffer(i);
+
+                    if (executeModules(loc)) {
                         didSomeWork = true;
-                        if (dmod.isTerminator()) {
-                            break;
-                        }
                     }
                 }
-
+            } finally {
+                selectBuffer(0);
             }
 
             if (didSomeWork) {
@@ -305,13 +428,58 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         super.onServerTick();
     }
 
+    private boolean executeModules(@Nonnull Location loc) {
+        boolean didSomeWork = false;
+
+        for (InstalledModule e : modules) {
+            if (e.getModule() instanceof DirectionalItemRouterModule) {
+                DirectionalItemRouterModule dmod = (DirectionalItemRouterModule) e.getModule();
+
+                if (!dmod.worksOnBufferSlot(activeBuffer)) {
+                    continue;
+                }
+
+                if (dmod.execute(loc.clone())) {
+                    didSomeWork = true;
+                    if (dmod.isTerminator()) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        return didSomeWork;
+    }
+
     @Override
     public void onBlockPhysics(BlockPhysicsEvent event) {
-        Bukkit.getScheduler().runTask(getProviderPlugin(), this::findNeighbourInventories);
+        Block source = event.getSourceBlock();
+        BlockFace face = event.getBlock().getFace(source);
+
+        // only a change of block type on one of the six faces can change what we're connected to;
+        // if there's no scanned material for the face, it's either not a direct face or a scan is pending
+        if (face != null && neighbourMaterials.containsKey(face) && source.getType() != neighbourMaterials.get(face)) {
+            scheduleNeighbourScan();
+        }
+    }
+
+    /**
+     * Schedule a rescan of this router's neighbouring inventories for the next tick.
+     * Any number of calls in the same tick result in a single scan.
+     */
+    private void scheduleNeighbourScan() {
+        if (!neighbourScanPending) {
+            neighbourScanPending = true;
+            Bukkit.getScheduler().runTask(getProviderPlugin(), this::findNeighbourInventories);
+        }
     }
 
     private void findNeighbourInventories() {
+        neighbourScanPending = false;
         neighbours.clear();
+        neighbourMaterials.clear();
+        neighbourHolders.clear();
+        vanillaNeighbours.clear();
         Location loc = getLocation();
         if (loc == null) {
             return;
@@ -320,12 +488,54 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
         for (BlockFace face : STBUtil.getDirectBlockFaces()) {
             Block b1 = b.getRelative(face);
-            BaseSTBBlock stb = SensibleToolbox.getBlockAt(b1.getLocation());
+            neighbourMaterials.put(face, b1.getType());
+            BaseSTBBlock stb = SensibleToolbox.getBlockAt(b1.getLocation(), true);
 
-            if (stb instanceof STBInventoryHolder || VanillaInventoryUtils.isVanillaInventory(b1)) {
+            if (stb instanceof STBInventoryHolder && stb != this) {
+                neighbourHolders.put(face, (STBInventoryHolder) stb);
+                neighbours.add(face);
+            } else if (stb == null && VanillaInventoryUtils.isVanillaInventory(b1)) {
+                vanillaNeighbours.add(face);
                 neighbours.add(face);
             }
         }
+
+        relayStamp++;
+        Debugger.getInstance().debug(2, this + " found " + neighbours.size() + " neighbouring inventories");
+    }
+
+    /**
+     * Get the STB inventory holder adjacent to this router on the given face, as
+     * found by the last neighbour scan. Label signs are looked through, so a sign
+     * attached to an STB block on that face resolves to the block.
+     *
+     * @param face
+     *            the face to check
+     * @return the adjacent STB inventory holder, or null if there is none
+     */
+    @Nullable
+    public STBInventoryHolder getNeighbourHolder(@Nonnull BlockFace face) {
+        STBInventoryHolder holder = neighbourHolders.get(face);
+
+        if (holder instanceof BaseSTBBlock && ((BaseSTBBlock) holder).getLocation() == null) {
+            // broken since the last scan, and the scan hasn't run yet
+            scheduleNeighbourScan();
+            return null;
+        }
+
+        return holder;
+    }
+
+    /**
+     * Check if the last neighbour scan found a vanilla inventory holder (chest,
+     * furnace, hopper...) adjacent to this router on the given face.
+     *
+     * @param face
+     *            the face to check
+     * @return true if there is a vanilla inventory on that face
+     */
+    public boolean hasVanillaNeighbour(@Nonnull BlockFace face) {
+        return vanillaNeighbours.contains(face);
     }
 
     public void playParticles(Color color) {
@@ -354,6 +564,7 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         setStackSize(1);
         setTickRate(20);
         receiver = null;
+        extraBufferCount = 0;
     }
 
     private void insertModule(ItemRouterModule module, int count) {
@@ -369,6 +580,8 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
             setStackSize(getStackSize() * (int) Math.pow(2, count));
         } else if (module instanceof SpeedModule) {
             setTickRate(getTickRate() - 5 * count);
+        } else if (module instanceof BufferModule) {
+            extraBufferCount = Math.min(extraBufferCount + count, MAX_EXTRA_BUFFERS);
         } else if (module instanceof ReceiverModule) {
             receiver = (ReceiverModule) module;
         }
@@ -376,14 +589,305 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         modules.add(new InstalledModule(module, count));
     }
 
+    /**
+     * Get a stamp for this router's state as a relay. The stamp changes whenever the
+     * router is placed or broken, has its modules changed, rescans its neighbours, has
+     * items queued or dequeued, or sees a change in redstone power; its buffer, access rights and
+     * redstone behaviour setting are not covered. See {@link #getRelayTarget(ItemStack)}.
+     *
+     * @return the current relay stamp
+     */
+    public long getRelayStamp() {
+        return relayStamp;
+    }
+
+    @Override
+    public void onRedstonePowerChanged(int oldPower, int newPower) {
+        relayStamp++;
+    }
+
+    /**
+     * Check if this router is a simple relay for the given items: one which has a
+     * receiver, an empty buffer, is active, and whose only directional module is a
+     * sender which would pass the items straight on to another receiver. Items sent
+     * to a relay may skip it and go directly to that receiver; see {@link RouterNetworkPlanner}.
+     *
+     * @param items
+     *            the items which would be sent to this router
+     * @return the receiver the items would be passed on to, or null if this router isn't a relay for them
+     */
+    @Nullable
+    public ReceiverModule getRelayTarget(@Nonnull ItemStack items) {
+        if (receiver == null || !isBufferEmpty() || !isRedstoneActive()) {
+            return null;
+        }
+
+        Location loc = getLocation();
+        DirectionalItemRouterModule sender = null;
+
+        for (InstalledModule e : modules) {
+            if (e.getModule() instanceof DirectionalItemRouterModule) {
+                if (sender != null) {
+                    // more than one module might act on the items; not a simple relay
+                    return null;
+                }
+
+                sender = (DirectionalItemRouterModule) e.getModule();
+            }
+        }
+
+        if (sender != null && sender.getBufferSlot() != 0) {
+            // received items mightn't land in the slot the sender works on
+            return null;
+        }
+
+        if (loc == null) {
+            return null;
+        } else if (sender instanceof SenderModule) {
+            return ((SenderModule) sender).getRelayTarget(loc, items);
+        } else if (sender instanceof AdvancedSenderModule) {
+            return ((AdvancedSenderModule) sender).getRelayTarget(loc, items);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get the items queued for the given link, waiting for the linked receiver's
+     * chunk to be loaded.
+     *
+     * @param link
+     *            the linked location, as formatted by {@link me.desht.dhutils.MiscUtil#formatLocation(Location)}
+     * @return the queued items, or null if nothing is queued
+     */
+    @Nullable
+    public ItemStack getQueuedItems(@Nonnull String link) {
+        return linkQueues.get(link);
+    }
+
+    /**
+     * Set the items queued for the given link.
+     *
+     * @param link
+     *            the linked location, as formatted by {@link me.desht.dhutils.MiscUtil#formatLocation(Location)}
+     * @param stack
+     *            the queued items, or null if nothing is queued
+     */
+    public void setQueuedItems(@Nonnull String link, @Nullable ItemStack stack) {
+        if (stack == null || stack.getAmount() <= 0) {
+            linkQueues.remove(link);
+            SensibleToolbox.getPluginInstance().getRouterLinkRegistry().setQueued(MiscUtil.formatLocation(getLocation()), link, 0);
+        } else {
+            linkQueues.put(link, stack);
+            SensibleToolbox.getPluginInstance().getRouterLinkRegistry().setQueued(MiscUtil.formatLocation(getLocation()), link, stack.getAmount());
+        }
+
+        if (getGUI() != null) {
+            addQueueLabel(getGUI());
+        }
+
+        relayStamp++;
+        update(false);
+    }
+
+    /**
+     * Take the items queued for the given link back into the buffer, e.g. because the
+     * linked router has gone, or no sender uses the link any more. Anything which
+     * doesn't fit in the buffer is dropped.
+     *
+     * @param link
+     *            the linked location, as formatted by {@link me.desht.dhutils.MiscUtil#formatLocation(Location)}
+     */
+    public void returnQueuedItems(@Nonnull String link) {
+        ItemStack queued = linkQueues.get(link);
+        Location loc = getLocation();
+
+        if (queued == null || loc == null) {
+            return;
+        }
+
+        ItemKey key = ItemKey.of(queued);
+        int amount = queued.getAmount();
+        int nInserted;
+
+        while (amount > 0 && (nInserted = commitInsert(key, amount, BlockFace.SELF, false, getOwner())) > 0) {
+            amount -= nInserted;
+        }
+
+        if (amount > 0) {
+            loc.getWorld().dropItemNaturally(loc, key.toItemStack(amount));
+        }
+
+        Debugger.getInstance().debug(2, this + ": returned " + queued.getAmount() + " items queued for " + link + " (" + amount + " dropped)");
+        setQueuedItems(link, null);
+    }
+
+    /**
+     * Return the items queued for any link which none of the installed advanced senders
+     * use any more; their sender has been removed, or relinked elsewhere.
+     */
+    private void returnOrphanedQueues() {
+        if (linkQueues.isEmpty() || getLocation() == null) {
+            return;
+        }
+
+        Set<String> links = new HashSet<>();
+
+        for (InstalledModule e : modules) {
+            if (e.getModule() instanceof AdvancedSenderModule) {
+                String link = ((AdvancedSenderModule) e.getModule()).getLink();
+
+                if (link != null) {
+                    links.add(link);
+                }
+            }
+        }
+
+        for (String link : new ArrayList<>(linkQueues.keySet())) {
+            if (!links.contains(link)) {
+                returnQueuedItems(link);
+            }
+        }
+    }
+
+    private void addQueueLabel(@Nonnull InventoryGUI gui) {
+        if (linkQueues.isEmpty()) {
+            gui.addLabel("Queued Items", QUEUE_LABEL_SLOT, null, "Items waiting for an Adv.", "Sender's Receiver to be", "loaded are shown here");
+        } else {
+            List<String> lore = new ArrayList<>();
+            lore.add("Waiting for the Receiver");
+            lore.add("to be loaded:");
+
+            for (Map.Entry<String, ItemStack> entry : linkQueues.entrySet()) {
+                lore.add(ChatColor.WHITE.toString() + entry.getValue().getAmount() + " x " + ItemUtils.getItemName(entry.getValue()) + ChatColor.GRAY + " " + UnicodeSymbol.ARROW_RIGHT.toUnicode() + " " + entry.getKey());
+            }
+
+            ItemStack texture = linkQueues.values().iterator().next().clone();
+            texture.setAmount(1);
+            gui.addLabel("Queued Items", QUEUE_LABEL_SLOT, texture, lore.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * Get the items in the active buffer slot. While the router's modules are running,
+     * this is whichever slot they're being run on; at any other time it's the main buffer.
+     *
+     * @return a copy of the buffered items, or null if the slot is empty
+     */
     @Nullable
     public ItemStack getBufferItem() {
         return bufferItem == null ? null : bufferItem.clone();
     }
 
+    /**
+     * Get the number of buffer slots this router has: one, plus one for each buffer
+     * module installed.
+     *
+     * @return the number of buffer slots
+     */
+    public int getBufferSlotCount() {
+        return 1 + extraBufferCount;
+    }
+
+    /**
+     * Get the buffer slot currently being processed. While the router's modules run,
+     * each buffer slot in turn is made the active one.
+     *
+     * @return the active buffer slot, counting from 0
+     */
+    public int getActiveBufferSlot() {
+        return activeBuffer;
+    }
+
+    /**
+     * Check if a buffer slot other than the active one holds items with the given key.
+     * Each item type is only kept in one slot, so that the slots are left free for other
+     * items.
+     *
+     * @param key
+     *            the key to check
+     * @return true if another slot holds those items
+     */
+    public boolean isHeldInOtherSlot(@Nonnull ItemKey key) {
+        for (int i = 0; i <= extraBufferCount; i++) {
+            if (i != activeBuffer && getBufferKey(i) == key) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if a buffer slot other than the active one holds items similar to the given
+     * stack; see {@link #isHeldInOtherSlot(ItemKey)}.
+     *
+     * @param stack
+     *            the items to check
+     * @return true if another slot holds those items
+     */
+    public boolean isHeldInOtherSlot(@Nonnull ItemStack stack) {
+        for (int i = 0; i <= extraBufferCount; i++) {
+            ItemStack inSlot = i == activeBuffer ? null : getBufferSlot(i);
+
+            if (inSlot != null && inSlot.isSimilar(stack)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if all of this router's buffer slots are empty.
+     *
+     * @return true if there are no items buffered
+     */
+    public boolean isBufferEmpty() {
+        for (int i = 0; i < buffers.length; i++) {
+            if (getBufferSlot(i) != null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void selectBuffer(int slot) {
+        if (slot != activeBuffer) {
+            buffers[activeBuffer] = bufferItem;
+            bufferItem = buffers[slot];
+            buffers[slot] = null;
+            activeBuffer = slot;
+        }
+    }
+
+    @Nullable
+    private ItemStack getBufferSlot(int slot) {
+        return slot == activeBuffer ? bufferItem : buffers[slot];
+    }
+
+    private void setBufferSlot(int slot, @Nullable ItemStack stack) {
+        if (slot == activeBuffer) {
+            setBufferItem(stack);
+        } else {
+            buffers[slot] = stack == null || stack.getAmount() == 0 || stack.getType() == Material.AIR ? null : stack;
+
+            if (getGUI() != null && getGUI().getViewers().isEmpty()) {
+                getGUI().getInventory().setItem(BUFFER_ITEM_SLOT + slot, buffers[slot]);
+            }
+        }
+    }
+
     private void updateBufferIndicator(boolean force) {
         if (getGUI() != null && (getGUI().getViewers().isEmpty() || force)) {
-            getGUI().getInventory().setItem(BUFFER_ITEM_SLOT, bufferItem);
+            if (force) {
+                for (int i = 0; i <= extraBufferCount; i++) {
+                    getGUI().getInventory().setItem(BUFFER_ITEM_SLOT + i, getBufferSlot(i));
+                }
+            } else {
+                getGUI().getInventory().setItem(BUFFER_ITEM_SLOT + activeBuffer, bufferItem);
+            }
         }
     }
 
@@ -420,50 +924,231 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         }
     }
 
+    /**
+     * Get the key of the items in the active buffer slot. Unlike {@link #getBufferItem()},
+     * this makes no copy of the items.
+     *
+     * @return the key of the buffered items, or null if the slot is empty
+     */
+    @Nullable
+    public ItemKey getBufferKey() {
+        return getBufferKey(activeBuffer);
+    }
+
+    /**
+     * Get the number of items in the active buffer slot.
+     *
+     * @return the number of buffered items
+     */
+    public int getBufferAmount() {
+        return bufferItem == null ? 0 : bufferItem.getAmount();
+    }
+
+    /**
+     * Get the key of the items in the given buffer slot.
+     *
+     * @param slot
+     *            the buffer slot, counting from 0
+     * @return the key of the buffered items, or null if the slot is empty
+     */
+    @Nullable
+    public ItemKey getBufferKey(int slot) {
+        ItemStack stack = getBufferSlot(slot);
+
+        if (stack == null) {
+            return null;
+        } else if (keyedStacks[slot] != stack) {
+            // the slot holds a different stack now; amounts change in place, so this is rare
+            bufferKeys[slot] = ItemKey.of(stack);
+            keyedStacks[slot] = stack;
+        }
+
+        return bufferKeys[slot];
+    }
+
+    /**
+     * Find the buffer slot which items with the given key would be inserted into: the
+     * one which already holds those items, if it has room for more, or else the first
+     * empty one. A full slot's items don't spill into an empty one. If only one slot
+     * may be used, the items go there or nowhere; they can't go into it if another slot
+     * already holds them.
+     */
+    private int findInsertSlot(@Nonnull ItemKey key, int onlySlot) {
+        int emptySlot = -1;
+
+        for (int i = 0; i <= extraBufferCount; i++) {
+            ItemStack inSlot = getBufferSlot(i);
+
+            if (inSlot == null) {
+                if (emptySlot < 0 && (onlySlot < 0 || i == onlySlot)) {
+                    emptySlot = i;
+                }
+            } else if (getBufferKey(i) == key) {
+                return inSlot.getAmount() < key.getMaxStackSize() && (onlySlot < 0 || i == onlySlot) ? i : -1;
+            }
+        }
+
+        return emptySlot;
+    }
+
+    private int findExtractSlot(@Nullable ItemKey key) {
+        for (int i = 0; i <= extraBufferCount; i++) {
+            if (getBufferSlot(i) != null && (key == null || getBufferKey(i) == key)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
     @Override
     public int insertItems(ItemStack item, BlockFace face, boolean sorting, UUID uuid) {
+        ItemKey key = null;
+
+        // the items usually top up a buffer slot, whose key can be used rather than making one
+        for (int i = 0; i <= extraBufferCount && key == null; i++) {
+            ItemKey inSlot = getBufferKey(i);
+
+            if (inSlot != null && inSlot.matches(item)) {
+                key = inSlot;
+            }
+        }
+
+        return commitInsert(key == null ? ItemKey.of(item) : key, item.getAmount(), face, sorting, uuid);
+    }
+
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
         if (!hasAccessRights(uuid)) {
             return 0;
         }
+
         // item routers don't care about sorters - they will take items from them happily
-        if (bufferItem == null) {
-            setBufferItem(item.clone());
-            return item.getAmount();
-        } else if (item.isSimilar(bufferItem)) {
-            int nInserted = Math.min(item.getAmount(), item.getType().getMaxStackSize() - bufferItem.getAmount());
-            setBufferAmount(bufferItem.getAmount() + nInserted);
-            return nInserted;
-        } else {
+        return insert(key, amount, -1, false);
+    }
+
+    @Override
+    public int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
+            return 0;
+        }
+
+        return insert(key, amount, -1, true);
+    }
+
+    /**
+     * Insert items into the given buffer slot only, as a module running on that slot
+     * would. Nothing is inserted if the slot holds different items, or if another slot
+     * already holds these ones.
+     *
+     * @param slot
+     *            the buffer slot, counting from 0
+     * @param key
+     *            the key of the items to insert
+     * @param amount
+     *            the number of items to insert
+     * @return the number of items actually inserted
+     */
+    public int commitInsert(int slot, @Nonnull ItemKey key, int amount) {
+        if (slot < 0 || slot > extraBufferCount) {
+            // the buffer module for that slot has been removed
             return 0;
         }
+
+        return insert(key, amount, slot, true);
+    }
+
+    private int insert(@Nonnull ItemKey key, int amount, int onlySlot, boolean commit) {
+        int slot = findInsertSlot(key, onlySlot);
+
+        if (slot < 0) {
+            return 0;
+        }
+
+        ItemStack inSlot = getBufferSlot(slot);
+        int nInserted = inSlot == null ? amount : Math.min(amount, key.getMaxStackSize() - inSlot.getAmount());
+
+        if (commit && nInserted > 0) {
+            if (inSlot == null) {
+                setBufferSlot(slot, key.toItemStack(nInserted));
+            } else {
+                inSlot.setAmount(inSlot.getAmount() + nInserted);
+                setBufferSlot(slot, inSlot);
+            }
+        }
+
+        return nInserted;
     }
 
     @Override
     public ItemStack extractItems(BlockFace face, ItemStack receiver, int amount, UUID uuid) {
-        if (!hasAccessRights(uuid) || bufferItem == null) {
+        if (!hasAccessRights(uuid)) {
+            return null;
+        }
+
+        ItemKey key = receiver == null ? getExtractableKey(face, uuid) : ItemKey.of(receiver);
+
+        if (key == null) {
+            return null;
+        } else if (receiver != null) {
+            amount = Math.min(amount, receiver.getMaxStackSize() - receiver.getAmount());
+        }
+
+        int nExtracted = commitExtract(key, amount, face, uuid);
+
+        if (nExtracted <= 0) {
             return null;
         } else if (receiver == null) {
-            ItemStack returned = bufferItem.clone();
-            int nExtracted = Math.min(amount, bufferItem.getAmount());
-            returned.setAmount(nExtracted);
-            setBufferAmount(bufferItem.getAmount() - nExtracted);
-            return returned;
-        } else if (receiver.isSimilar(bufferItem)) {
-            int nExtracted = Math.min(amount, bufferItem.getAmount());
-            nExtracted = Math.min(nExtracted, receiver.getMaxStackSize() - receiver.getAmount());
+            return key.toItemStack(nExtracted);
+        } else {
             receiver.setAmount(receiver.getAmount() + nExtracted);
-            setBufferAmount(bufferItem.getAmount() - nExtracted);
             return receiver;
-        } else {
+        }
+    }
+
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
             return null;
         }
+
+        int slot = findExtractSlot(null);
+        return slot < 0 ? null : getBufferKey(slot);
+    }
+
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        if (!hasAccessRights(uuid)) {
+            return 0;
+        }
+
+        int slot = findExtractSlot(key);
+        return slot < 0 ? 0 : Math.min(amount, getBufferSlot(slot).getAmount());
+    }
+
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        int nExtracted = simulateExtract(key, amount, face, uuid);
+
+        if (nExtracted > 0) {
+            int slot = findExtractSlot(key);
+            ItemStack inSlot = getBufferSlot(slot);
+            inSlot.setAmount(inSlot.getAmount() - nExtracted);
+            setBufferSlot(slot, inSlot);
+        }
+
+        return nExtracted;
     }
 
     @Override
     public Inventory showOutputItems(UUID uuid) {
         if (hasAccessRights(uuid)) {
             Inventory inv = Bukkit.createInventory(this, 9);
-            inv.setItem(0, getBufferItem());
+
+            for (int i = 0; i <= extraBufferCount; i++) {
+                inv.setItem(i, getBufferSlot(i) == null ? null : getBufferSlot(i).clone());
+            }
+
             return inv;
         } else {
             return null;
@@ -473,7 +1158,9 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
     @Override
     public void updateOutputItems(UUID uuid, Inventory inventory) {
         if (hasAccessRights(uuid)) {
-            setBufferItem(inventory.getItem(0));
+            for (int i = 0; i <= extraBufferCount; i++) {
+                setBufferSlot(i, inventory.getItem(i));
+            }
         }
     }
 
@@ -484,7 +1171,7 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
     @Override
     public boolean onSlotClick(HumanEntity player, int slot, ClickType click, ItemStack inSlot, ItemStack onCursor) {
-        if (slot == BUFFER_ITEM_SLOT) {
+        if (isBufferSlot(slot)) {
             if (inSlot == null || onCursor.getType() != Material.AIR) {
                 return false;
             }
@@ -542,7 +1229,7 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
 
     @Override
     public boolean onShiftClickExtract(HumanEntity player, int slot, ItemStack toExtract) {
-        if (slot == BUFFER_ITEM_SLOT && getBufferItem() != null) {
+        if (isBufferSlot(slot) && getBufferSlot(slot - BUFFER_ITEM_SLOT) != null) {
             needToScanBufferSlot = true;
             return true;
         } else if (slot >= MOD_SLOT_START && slot < MOD_SLOT_END) {
@@ -553,6 +1240,10 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         }
     }
 
+    private boolean isBufferSlot(int slot) {
+        return slot >= BUFFER_ITEM_SLOT && slot <= BUFFER_ITEM_SLOT + extraBufferCount;
+    }
+
     @Override
     public boolean onClickOutside(HumanEntity player) {
         return false;
@@ -563,13 +1254,14 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         // no action needed here
     }
 
-    private void processModules(Inventory inv, int baseSlot) {
+    private void processModules(ItemStack[] items, int baseSlot) {
+        int oldBufferCount = extraBufferCount;
         clearModules();
 
         Map<ItemStack, Integer> mods = new LinkedHashMap<>();
 
-        for (int i = 0; i < MOD_SLOT_COUNT; i++) {
-            ItemStack stack = inv.getItem(baseSlot + i);
+        for (int i = 0; i < MOD_SLOT_COUNT && baseSlot + i < items.length; i++) {
+            ItemStack stack = items[baseSlot + i];
 
             if (stack != null) {
                 if (!mods.containsKey(stack)) {
@@ -588,6 +1280,13 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
             }
         }
 
+        if (extraBufferCount != oldBufferCount) {
+            updateBufferSlots(oldBufferCount);
+        }
+
+        returnOrphanedQueues();
+
+        relayStamp++;
         Debugger.getInstance().debug("re-processed modules for " + this + " tick-rate=" + getTickRate() + " stack-size=" + getStackSize());
 
         if (getTicksLived() > 20) {
@@ -595,6 +1294,40 @@ public class ItemRouter extends BaseSTBBlock implements STBInventoryHolder {
         }
     }
 
+    /**
+     * Lock or unlock extra buffer slots after the number of buffer modules has changed.
+     * Items in slots which are no longer available are dropped, and cleared from the GUI.
+     * The GUI's copy is the one dropped, since a player may have changed it since the
+     * buffer slots were last scanned.
+     */
+    private void updateBufferSlots(int oldBufferCount) {
+        Location loc = getLocation();
+
+        for (int i = 1; i < buffers.length; i++) {
+            if (i > extraBufferCount && i <= oldBufferCount) {
+                ItemStack stack = getGUI() == null ? buffers[i] : getGUI().getItem(BUFFER_ITEM_SLOT + i);
+
+                if (stack != null && loc != null) {
+                    loc.getWorld().dropItemNaturally(loc, stack);
+                }
+
+                buffers[i] = null;
+
+                if (getGUI() != null) {
+                    getGUI().getInventory().setItem(BUFFER_ITEM_SLOT + i, null);
+                }
+            }
+
+            if (getGUI() != null) {
+                getGUI().setSlotType(BUFFER_ITEM_SLOT + i, i <= extraBufferCount ? SlotType.ITEM : SlotType.BACKGROUND);
+
+                if (i <= extraBufferCount) {
+                    getGUI().getInventory().setItem(BUFFER_ITEM_SLOT + i, buffers[i]);
+                }
+            }
+        }
+    }
+
     @Nonnull
     public List<BlockFace> getNeighbours() {
         return neighbours;
@@ -0,0 +1,140 @@
+package io.github.thebusybiscuit.sensibletoolbox.blocks.router;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.SenderModule;
+
+/**
+ * Keeps track of when blocks last changed, chunk by chunk, so that sender modules
+ * can cache the receiver they found instead of searching for it on every tick, and
+ * planned routes (see {@link RouterNetworkPlanner}) can be kept until something along
+ * them changes.
+ * A sender remembers the change stamps of the chunks its line of sight passes
+ * through; as long as those stamps haven't moved on, nothing along the line of
+ * sight can have been placed, broken or moved, and the cached result still holds.
+ * <p>
+ * Stamps come from a single counter which only ever increases, so a stamp can
+ * never return to a value a sender has already seen. Only loaded chunks have stamps:
+ * a chunk's stamp is dropped when it unloads, and it gets a new one when it loads
+ * again, since its blocks may have changed in the meantime without any events.
+ * <p>
+ * This also keeps a count of the items queued on each advanced sender link whose
+ * receiver is in an unloaded chunk.
+ *
+ * @see SenderModule
+ */
+public final class RouterLinkRegistry {
+
+    private final Map<UUID, Map<Long, Long>> stamps = new HashMap<>();
+    private long counter;
+    // items queued by advanced senders for receivers in unloaded chunks, by link
+    private final Map<String, Integer> queued = new HashMap<>();
+
+    /**
+     * Get the change stamp for the chunk containing the given block.
+     *
+     * @param b
+     *            the block
+     * @return the chunk's change stamp; 0 if the chunk has been loaded since startup and
+     *         no block in it has changed, or -1 if the chunk isn't loaded
+     */
+    public long getChangeStamp(@Nonnull Block b) {
+        Map<Long, Long> worldMap = stamps.get(b.getWorld().getUID());
+        Long stamp = worldMap == null ? null : worldMap.get(getChunkKey(b.getX() >> 4, b.getZ() >> 4));
+
+        if (stamp != null) {
+            return stamp;
+        } else {
+            return b.getWorld().isChunkLoaded(b.getX() >> 4, b.getZ() >> 4) ? 0 : -1;
+        }
+    }
+
+    /**
+     * Record that the given block has been placed, broken or otherwise changed.
+     *
+     * @param b
+     *            the block which has changed
+     */
+    public void onBlockChanged(@Nonnull Block b) {
+        stamps.computeIfAbsent(b.getWorld().getUID(), k -> new HashMap<>()).put(getChunkKey(b.getX() >> 4, b.getZ() >> 4), ++counter);
+    }
+
+    /**
+     * Give a newly loaded chunk a new stamp.
+     *
+     * @param chunk
+     *            the chunk which has loaded
+     */
+    public void onChunkLoaded(@Nonnull Chunk chunk) {
+        stamps.computeIfAbsent(chunk.getWorld().getUID(), k -> new HashMap<>()).put(getChunkKey(chunk.getX(), chunk.getZ()), ++counter);
+    }
+
+    /**
+     * Forget the stamp for a chunk which is being unloaded. The counter moves on too,
+     * so that the stamp the chunk gets when it loads again is one nobody has seen.
+     *
+     * @param chunk
+     *            the chunk being unloaded
+     */
+    public void onChunkUnloaded(@Nonnull Chunk chunk) {
+        Map<Long, Long> worldMap = stamps.get(chunk.getWorld().getUID());
+
+        if (worldMap != null) {
+            worldMap.remove(getChunkKey(chunk.getX(), chunk.getZ()));
+        }
+
+        counter++;
+    }
+
+    /**
+     * Forget all stamps for the given world.
+     *
+     * @param world
+     *            the world being unloaded
+     */
+    public void onWorldUnloaded(@Nonnull World world) {
+        stamps.remove(world.getUID());
+    }
+
+    /**
+     * Record the number of items queued on a sender link, waiting for the receiver's
+     * chunk to be loaded.
+     *
+     * @param source
+     *            the location of the sending router
+     * @param link
+     *            the linked location
+     * @param amount
+     *            the number of items now queued
+     */
+    public void setQueued(@Nonnull String source, @Nonnull String link, int amount) {
+        if (amount > 0) {
+            queued.put(source + " -> " + link, amount);
+        } else {
+            queued.remove(source + " -> " + link);
+        }
+    }
+
+    /**
+     * Get the number of items queued on each sender link which has any items queued.
+     *
+     * @return an unmodifiable map of link description to number of items queued
+     */
+    @Nonnull
+    public Map<String, Integer> getQueuedItems() {
+        return Collections.unmodifiableMap(queued);
+    }
+
+    private static long getChunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,234 @@
+package io.github.thebusybiscuit.sensibletoolbox.blocks.router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.inventory.ItemStack;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.RedstoneBehaviour;
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
+import io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules.ReceiverModule;
+import me.desht.dhutils.Debugger;
+
+/**
+ * Plans multi-hop deliveries across chains of item routers. When a sender finds a
+ * receiver in a router which does nothing but pass items straight on (a "relay"; see
+ * {@link ItemRouter#getRelayTarget(ItemStack)}), the items can skip that router and
+ * go directly to the next hop, and so on down the chain, in a single transfer on the
+ * sending router's tick. Each relay's filter and access rights are checked just as if
+ * the items had passed through it; the items only leave the sending router's buffer
+ * once the final receiver has accepted them, so nothing is ever left part-way.
+ * <p>
+ * Routes are cached per sending module, along with what they depended on: the state
+ * of each router on the route (see {@link ItemRouter#getRelayStamp()}), and the change
+ * stamps of the chunks each hop starts and ends in (see {@link RouterLinkRegistry}).
+ * A route is only recomputed when one of those has moved on, so changes elsewhere in
+ * the world don't affect it, and checking it costs a few field reads per relay.
+ * <p>
+ * This is opt-in, via the {@code router_network_planner} config setting.
+ *
+ * @see ItemRouter
+ */
+public final class RouterNetworkPlanner {
+
+    // the longest chain of relays which will be followed
+    private static final int MAX_HOPS = 16;
+
+    private RouterNetworkPlanner() {}
+
+    /**
+     * A planned delivery route from a sending module, to be held by that module.
+     */
+    public static final class Route {
+
+        private ReceiverModule first;
+        private ItemStack template;
+        private UUID senderId;
+        private final List<ItemRouter> relays = new ArrayList<>();
+        private ReceiverModule receiver;
+        private UUID finalSenderId;
+        // what the route depends on: the relays followed by the final router, with their
+        // state when planned, and the blocks of each of those routers with their chunk stamps
+        private final List<ItemRouter> routers = new ArrayList<>();
+        private long[] routerStamps = new long[0];
+        private RedstoneBehaviour[] behaviours = new RedstoneBehaviour[0];
+        private Block[] blocks = new Block[0];
+        private long[] chunkStamps = new long[0];
+        private boolean finalBufferEmpty;
+
+        /**
+         * Get the receiver at the end of the route.
+         *
+         * @return the final receiver
+         */
+        @Nonnull
+        public ReceiverModule getReceiver() {
+            return receiver;
+        }
+
+        /**
+         * Get the ID to deliver to the final receiver as; this is the owner of the last
+         * relay on the route, or the original sender if there are no relays.
+         *
+         * @return the sender ID for the final delivery
+         */
+        @Nullable
+        public UUID getSenderId() {
+            return finalSenderId;
+        }
+
+        /**
+         * Get the number of relays the route skips.
+         *
+         * @return the number of relays
+         */
+        public int getHops() {
+            return relays.size();
+        }
+
+        @ParametersAreNonnullByDefault
+        private boolean isValidFor(ReceiverModule first, ItemStack items, @Nullable UUID senderId) {
+            if (this.first != first || template == null || !items.isSimilar(template) || !sameId(senderId, this.senderId)) {
+                return false;
+            }
+
+            RouterLinkRegistry links = SensibleToolbox.getPluginInstance().getRouterLinkRegistry();
+
+            for (int i = 0; i < routers.size(); i++) {
+                ItemRouter router = routers.get(i);
+
+                // a pulsed router is only active on its own tick, so never stays a relay
+                if (router.getRelayStamp() != routerStamps[i] || router.getRedstoneBehaviour() != behaviours[i] || behaviours[i] == RedstoneBehaviour.PULSED || links.getChangeStamp(blocks[i]) != chunkStamps[i]) {
+                    return false;
+                }
+            }
+
+            // a relay is only a relay while its buffer is empty
+            UUID owner = senderId;
+
+            for (ItemRouter relay : relays) {
+                if (!relay.isBufferEmpty() || !relay.hasAccessRights(owner)) {
+                    return false;
+                }
+
+                owner = relay.getOwner();
+            }
+
+            // the final router may have become a relay since
+            ItemRouter last = receiver.getItemRouter();
+            return last == null || finalBufferEmpty || !last.isBufferEmpty();
+        }
+
+        private void recordDependencies() {
+            routers.clear();
+            routers.addAll(relays);
+
+            if (receiver.getItemRouter() != null) {
+                routers.add(receiver.getItemRouter());
+                finalBufferEmpty = receiver.getItemRouter().isBufferEmpty();
+            }
+
+            int n = routers.size();
+            routerStamps = new long[n];
+            behaviours = new RedstoneBehaviour[n];
+            blocks = new Block[n];
+            chunkStamps = new long[n];
+            RouterLinkRegistry links = SensibleToolbox.getPluginInstance().getRouterLinkRegistry();
+
+            for (int i = 0; i < n; i++) {
+                ItemRouter router = routers.get(i);
+                Location loc = router.getLocation();
+
+                if (loc == null) {
+                    // can't be relied on; make sure the route is planned again next time
+                    template = null;
+                    return;
+                }
+
+                routerStamps[i] = router.getRelayStamp();
+                behaviours[i] = router.getRedstoneBehaviour();
+                blocks[i] = loc.getBlock();
+                chunkStamps[i] = links.getChangeStamp(blocks[i]);
+            }
+        }
+
+        private static boolean sameId(@Nullable UUID a, @Nullable UUID b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * Work out where items sent from the given router to the given receiver should
+     * actually end up, following any chain of relays. The route is cached in the
+     * given route object, and only recomputed when needed.
+     *
+     * @param route
+     *            the sending module's route
+     * @param source
+     *            the sending router
+     * @param first
+     *            the receiver the items would normally be sent to
+     * @param items
+     *            the items to be sent
+     * @param senderId
+     *            the ID the items would normally be sent as
+     * @return the route, for the final receiver and sender ID
+     */
+    @Nonnull
+    @ParametersAreNonnullByDefault
+    public static Route plan(Route route, ItemRouter source, ReceiverModule first, ItemStack items, @Nullable UUID senderId) {
+        if (route.isValidFor(first, items, senderId)) {
+            return route;
+        }
+
+        route.first = first;
+        route.template = items.clone();
+        route.senderId = senderId;
+        route.relays.clear();
+
+        ReceiverModule current = first;
+        UUID owner = senderId;
+
+        while (route.relays.size() < MAX_HOPS) {
+            ItemRouter router = current.getItemRouter();
+
+            if (router == null || !router.hasAccessRights(owner)) {
+                break;
+            }
+
+            ReceiverModule next = router.getRelayTarget(items);
+
+            if (next == null) {
+                break;
+            }
+
+            ItemRouter nextRouter = next.getItemRouter();
+
+            if (nextRouter == null || nextRouter == source || nextRouter == router || route.relays.contains(nextRouter) || !nextRouter.hasAccessRights(router.getOwner())) {
+                // don't follow loops; the items just go to this router as normal
+                break;
+            }
+
+            route.relays.add(router);
+            owner = router.getOwner();
+            current = next;
+        }
+
+        route.receiver = current;
+        route.finalSenderId = owner;
+        route.recordDependencies();
+
+        if (!route.relays.isEmpty()) {
+            Debugger.getInstance().debug(2, source + ": planned route to " + current.getItemRouter() + " via " + route.relays.size() + " relays");
+        }
+
+        return route;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.thebusybiscuit.sensibletoolbox.commands;
+
+import java.text.DecimalFormat;
+import java.util.List;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.core.energy.EnergyNetManager;
+import io.github.thebusybiscuit.sensibletoolbox.core.energy.EnergyNetStats;
+import io.github.thebusybiscuit.sensibletoolbox.core.energy.STBEnergyNet;
+import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+import me.desht.dhutils.DHUtilsException;
+import me.desht.dhutils.commands.AbstractCommand;
+import me.desht.dhutils.text.MessagePager;
+
+public class EnergyNetCommand extends AbstractCommand {
+
+    private static final int DEFAULT_COUNT = 10;
+    private static final DecimalFormat FORMAT = new DecimalFormat("0.###");
+
+    public EnergyNetCommand() {
+        super("stb enet", 0, 1);
+        setPermissionNode("stb.commands.enet");
+        setUsage("/<command> enet [<count>]");
+    }
+
+    @Override
+    public boolean execute(Plugin plugin, CommandSender sender, String[] args) {
+        int count = DEFAULT_COUNT;
+
+        if (args.length >= 1) {
+            try {
+                count = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                throw new DHUtilsException("Invalid count: " + args[0]);
+            }
+        }
+
+        EnergyNetManager manager = ((SensibleToolboxPlugin) plugin).getEnergyNetManager();
+        EnergyNetStats stats = manager.getStats();
+        List<STBEnergyNet> nets = manager.getBusiestNets(count);
+        MessagePager pager = MessagePager.getPager(sender).clear();
+
+        pager.add(ChatColor.AQUA + "" + manager.getNetCount() + " energy nets; tick avg " + FORMAT.format(stats.getAverageTickMillis()) + "ms, max " + FORMAT.format(stats.getMaxTickMillis()) + "ms");
+        pager.add(ChatColor.AQUA + "" + stats.getNetsBuilt() + " nets built; avg " + FORMAT.format(stats.getAverageBuildMillis()) + "ms, max " + FORMAT.format(stats.getMaxBuildMillis()) + "ms");
+
+        if (stats.getConservationFailures() > 0) {
+            pager.add(ChatColor.RED + "" + stats.getConservationFailures() + " net ticks did not conserve energy!");
+        }
+
+        if (nets.isEmpty()) {
+            pager.add("There are no energy nets.");
+        }
+
+        for (STBEnergyNet net : nets) {
+            pager.add(ChatColor.YELLOW + "#" + net.getNetID() + ChatColor.RESET + " in " + net.getWorldName() + ": " + net.getCableCount() + " cables, " + net.getSourceCount() + " sources, " + net.getSinkCount() + " sinks");
+            pager.add("  supply " + STBUtil.getCompactDouble(net.getAverageSupply()) + ", demand " + STBUtil.getCompactDouble(net.getAverageDemand()) + ", delivered " + STBUtil.getCompactDouble(net.getAverageDelivered()) + ", shortfall " + STBUtil.getCompactDouble(net.getAverageShortfall()) + " SCU/t");
+        }
+
+        pager.showPage();
+        return true;
+    }
+}
@@ -6,6 +6,7 @@ import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.annotation.ParametersAreNonnullByDefault;
@@ -30,6 +31,8 @@ import io.github.bakedlibs.dough.items.ItemUtils;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBItem;
+import io.github.thebusybiscuit.sensibletoolbox.core.ItemStateCache;
+import io.github.thebusybiscuit.sensibletoolbox.core.ProtectionCache;
 import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
 import io.github.thebusybiscuit.sensibletoolbox.utils.BukkitSerialization;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
@@ -62,6 +65,22 @@ public class ShowCommand extends AbstractCommand {
             long avg = LocationManager.getManager().getAverageTimePerTick();
             double pct = avg / 200000.0;
             pager.add(avg + " ns/tick (" + pct + "%) spent in ticking STB blocks");
+
+            ProtectionCache protection = SensibleToolbox.getPluginInstance().getProtectionCache();
+            pager.add("Protection cache: " + protection.size() + " blocks, " + protection.getHits() + " hits, " + protection.getMisses() + " misses");
+
+            ItemStateCache itemStates = SensibleToolbox.getPluginInstance().getItemRegistry().getStateCache();
+            pager.add("Item decode cache: " + itemStates.size() + "/" + itemStates.getMaxSize() + " items, " + itemStates.getHits() + " hits, " + itemStates.getMisses() + " misses, " + itemStates.getEvictions() + " evictions");
+
+            Map<String, Integer> queued = SensibleToolbox.getPluginInstance().getRouterLinkRegistry().getQueuedItems();
+
+            if (!queued.isEmpty()) {
+                pager.add(queued.size() + " sender links have items queued for unloaded receivers:");
+
+                for (Map.Entry<String, Integer> entry : queued.entrySet()) {
+                    pager.add("  " + entry.getKey() + ": " + entry.getValue() + " items");
+                }
+            }
         } else if (getBooleanOption("dump")) {
             dumpItemData(plugin, sender);
         } else {
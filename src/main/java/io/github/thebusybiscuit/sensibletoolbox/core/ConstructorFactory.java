@@ -0,0 +1,114 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * Creates instances of a class through its no-argument and
+ * {@link ConfigurationSection} constructors, without going through reflection on
+ * every call. Classes loaded by STB's own class loader get generated factories,
+ * which call the constructors directly. Classes from other plugins can't have
+ * those generated for them (the lambda metafactory refuses to link across class
+ * loaders), and are called through method handles instead.
+ *
+ * @param <T>
+ *            the class being created
+ */
+final class ConstructorFactory<T> {
+
+    private final Supplier<T> factory0arg;
+    private final Function<ConfigurationSection, T> factory1arg;
+
+    private ConstructorFactory(@Nonnull Supplier<T> factory0arg, @Nonnull Function<ConfigurationSection, T> factory1arg) {
+        this.factory0arg = factory0arg;
+        this.factory1arg = factory1arg;
+    }
+
+    /**
+     * Make factories for the given class's public constructors.
+     *
+     * @param clazz
+     *            the class
+     * @param <T>
+     *            the class being created
+     * @return the factories
+     * @throws Throwable
+     *             if the factories can't be made
+     */
+    @Nonnull
+    static <T> ConstructorFactory<T> of(@Nonnull Class<T> clazz) throws Throwable {
+        if (clazz.getClassLoader() == ConstructorFactory.class.getClassLoader()) {
+            return generated(clazz);
+        } else {
+            return viaHandles(clazz);
+        }
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <T> ConstructorFactory<T> generated(@Nonnull Class<T> clazz) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle0 = lookup.findConstructor(clazz, MethodType.methodType(void.class));
+        MethodHandle handle1 = lookup.findConstructor(clazz, MethodType.methodType(void.class, ConfigurationSection.class));
+
+        CallSite site0 = LambdaMetafactory.metafactory(lookup, "get", MethodType.methodType(Supplier.class), MethodType.methodType(Object.class), handle0, MethodType.methodType(clazz));
+        CallSite site1 = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class), MethodType.methodType(Object.class, Object.class), handle1, MethodType.methodType(clazz, ConfigurationSection.class));
+
+        Supplier<T> factory0arg = (Supplier<T>) (Supplier<?>) site0.getTarget().invokeExact();
+        Function<ConfigurationSection, T> factory1arg = (Function<ConfigurationSection, T>) (Function<?, ?>) site1.getTarget().invokeExact();
+        return new ConstructorFactory<>(factory0arg, factory1arg);
+    }
+
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static <T> ConstructorFactory<T> viaHandles(@Nonnull Class<T> clazz) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodHandle handle0 = lookup.findConstructor(clazz, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+        MethodHandle handle1 = lookup.findConstructor(clazz, MethodType.methodType(void.class, ConfigurationSection.class)).asType(MethodType.methodType(Object.class, ConfigurationSection.class));
+
+        Supplier<T> factory0arg = () -> {
+            try {
+                return (T) (Object) handle0.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        Function<ConfigurationSection, T> factory1arg = conf -> {
+            try {
+                return (T) (Object) handle1.invokeExact(conf);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+
+        return new ConstructorFactory<>(factory0arg, factory1arg);
+    }
+
+    /**
+     * Create a new instance. Anything thrown by the constructor is passed straight on.
+     *
+     * @param conf
+     *            the configuration to pass to the constructor, or null to use the
+     *            no-argument constructor
+     * @return the new instance
+     */
+    @Nonnull
+    T create(@Nullable ConfigurationSection conf) {
+        return conf == null ? factory0arg.get() : factory1arg.apply(conf);
+    }
+}
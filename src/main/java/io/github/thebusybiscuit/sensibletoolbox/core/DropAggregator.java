@@ -0,0 +1,163 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Item;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.Vector;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+
+/**
+ * Collects items dropped into the world by machines and routers, and spawns them once
+ * per tick. Identical items dropped at the same block during a tick become a single
+ * item entity, and if the entity dropped there last time is still lying where it was
+ * dropped, it is topped up rather than a new entity being spawned beside it. Busy
+ * machines then leave a handful of full stacks lying around, rather than thousands of
+ * single items for the server to merge.
+ * <p>
+ * Dropped items appear in the world at the end of the tick, rather than immediately.
+ */
+public final class DropAggregator {
+
+    // how far a dropped item may drift and still be topped up
+    private static final double MAX_TOP_UP_DISTANCE_SQUARED = 0.25;
+    private static final int PRUNE_INTERVAL = 100;
+
+    private final Map<DropKey, Integer> pending = new LinkedHashMap<>();
+    private final Map<DropKey, Item> lastDropped = new LinkedHashMap<>();
+    private int ticks;
+
+    private static final class DropKey {
+
+        private final World world;
+        private final BlockPosition pos;
+        private final ItemKey item;
+
+        private DropKey(@Nonnull World world, @Nonnull BlockPosition pos, @Nonnull ItemKey item) {
+            this.world = world;
+            this.pos = pos;
+            this.item = item;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            } else if (!(o instanceof DropKey)) {
+                return false;
+            }
+
+            DropKey other = (DropKey) o;
+            return item == other.item && pos.equals(other.pos) && world.getUID().equals(other.world.getUID());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(world.getUID(), pos, item);
+        }
+    }
+
+    /**
+     * Drop items at the centre of the block at the given location. The items are
+     * spawned at the end of the tick, with no velocity.
+     *
+     * @param loc
+     *            a location in the block to drop the items at
+     * @param stack
+     *            the items to drop; the stack is not kept, so may be modified afterwards
+     */
+    public void drop(@Nonnull Location loc, @Nonnull ItemStack stack) {
+        if (stack.getAmount() <= 0) {
+            return;
+        }
+
+        BlockPosition pos = new BlockPosition(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        pending.merge(new DropKey(loc.getWorld(), pos, ItemKey.of(stack)), stack.getAmount(), Integer::sum);
+    }
+
+    /**
+     * Spawn (or top up) the item entities for everything dropped since the last call.
+     * This should be called once per tick.
+     */
+    public void flush() {
+        if (!pending.isEmpty()) {
+            for (Map.Entry<DropKey, Integer> entry : pending.entrySet()) {
+                spawn(entry.getKey(), entry.getValue());
+            }
+
+            pending.clear();
+        }
+
+        if (++ticks >= PRUNE_INTERVAL) {
+            ticks = 0;
+            lastDropped.values().removeIf(item -> !item.isValid());
+        }
+    }
+
+    private void spawn(@Nonnull DropKey key, int amount) {
+        World world = key.world;
+        Location loc = new Location(world, key.pos.getX() + 0.5, key.pos.getY() + 0.5, key.pos.getZ() + 0.5);
+        int maxStack = key.item.getMaxStackSize();
+        Item last = lastDropped.get(key);
+
+        if (last != null && last.isValid() && last.getLocation().distanceSquared(loc) <= MAX_TOP_UP_DISTANCE_SQUARED) {
+            ItemStack onGround = last.getItemStack();
+
+            if (key.item.matches(onGround) && onGround.getAmount() < maxStack) {
+                int toAdd = Math.min(amount, maxStack - onGround.getAmount());
+                onGround.setAmount(onGround.getAmount() + toAdd);
+                last.setItemStack(onGround);
+                amount -= toAdd;
+            }
+        }
+
+        while (amount > 0) {
+            int toSpawn = Math.min(amount, maxStack);
+            Item item = world.dropItem(loc, key.item.toItemStack(toSpawn));
+            item.setVelocity(new Vector(0, 0, 0));
+            lastDropped.put(key, item);
+            amount -= toSpawn;
+        }
+    }
+
+    /**
+     * Spawn anything waiting to be dropped in the given world, and forget the items
+     * dropped there.
+     *
+     * @param world
+     *            the world being unloaded
+     */
+    public void onWorldUnloaded(@Nonnull World world) {
+        UUID worldId = world.getUID();
+
+        for (Iterator<Map.Entry<DropKey, Integer>> iter = pending.entrySet().iterator(); iter.hasNext();) {
+            Map.Entry<DropKey, Integer> entry = iter.next();
+
+            if (entry.getKey().world.getUID().equals(worldId)) {
+                spawn(entry.getKey(), entry.getValue());
+                iter.remove();
+            }
+        }
+
+        lastDropped.keySet().removeIf(key -> key.world.getUID().equals(worldId));
+    }
+
+    /**
+     * Get the number of item kinds waiting to be dropped.
+     *
+     * @return the number of pending drops
+     */
+    public int size() {
+        return pending.size();
+    }
+}
@@ -2,11 +2,16 @@ package io.github.thebusybiscuit.sensibletoolbox.core;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.plugin.Plugin;
@@ -16,7 +21,14 @@ import io.github.thebusybiscuit.sensibletoolbox.blocks.machines.SCURelay;
 /**
  * The {@link IDTracker} tracks a numeric id that is automatically incremented.
  * It is currently only used by the {@link SCURelay}.
- * 
+ * <p>
+ * IDs are handed out from blocks ("leases") whose upper bound is persisted before any
+ * ID from the block is used, so that a crash can never cause an ID to be reused; at worst
+ * some IDs are skipped. The next lease is written asynchronously while the current one
+ * still has IDs left, so allocating an ID normally involves no disk I/O at all.
+ * <p>
+ * The tracked data is held in a concurrent map, and may be safely accessed from any thread.
+ *
  * @author desht
  * @author TheBusyBiscuit
  *
@@ -25,17 +37,28 @@ import io.github.thebusybiscuit.sensibletoolbox.blocks.machines.SCURelay;
  */
 public class IDTracker<T> {
 
-    private final Map<Integer, T> map = new HashMap<>();
+    private static final int LEASE_SIZE = 64;
+
+    private final Map<Integer, T> map = new ConcurrentHashMap<>();
     private final Plugin plugin;
     private final String name;
+    private final File file;
+    private final Object saveLock = new Object();
+
     private int nextID;
+    // every ID below this limit has been persisted as used, or is free to be handed out
+    private volatile int durableLimit;
+    // the highest limit which has been requested to be written
+    private int requestedLimit;
+    // guarded by saveLock
+    private int lastSaved;
 
     public IDTracker(@Nonnull Plugin plugin, @Nonnull String name) {
         this.name = name;
         this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), name + ".yml");
 
         YamlConfiguration conf = new YamlConfiguration();
-        File file = new File(plugin.getDataFolder(), name + ".yml");
 
         if (file.exists()) {
             try {
@@ -46,29 +69,92 @@ public class IDTracker<T> {
             }
         } else {
             nextID = 1;
-            save();
         }
+
+        // the persisted value is the first ID which is not known to be in use;
+        // take out the first lease now, while we're still starting up
+        lastSaved = nextID;
+        requestedLimit = nextID + LEASE_SIZE;
+        save(requestedLimit, false);
     }
 
-    private void save() {
-        File file = new File(plugin.getDataFolder(), name + ".yml");
-        YamlConfiguration conf = new YamlConfiguration();
-        conf.set("nextID", nextID);
+    /**
+     * Write the given limit to disk, if it is higher than anything written so far.
+     * The file is written to a temporary file first, then moved into place, so a
+     * crash while saving can never leave a truncated file behind.
+     *
+     * @param limit
+     *            the first ID which has not been leased
+     * @param force
+     *            if true, write the limit even if a higher limit has already been written
+     */
+    private void save(int limit, boolean force) {
+        synchronized (saveLock) {
+            if (!force && limit <= lastSaved && file.exists()) {
+                return;
+            }
+
+            YamlConfiguration conf = new YamlConfiguration();
+            conf.set("nextID", limit);
+            File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+            try {
+                Files.write(tmp.toPath(), conf.saveToString().getBytes(StandardCharsets.UTF_8));
+
+                try {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+
+                lastSaved = limit;
 
-        try {
-            conf.save(file);
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, e, () -> "Failed to save id tracker file: " + name);
+                if (force || limit > durableLimit) {
+                    durableLimit = limit;
+                }
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, e, () -> "Failed to save id tracker file: " + name);
+            }
         }
     }
 
-    private int getNextID() {
+    private synchronized int getNextID() {
+        if (nextID >= durableLimit) {
+            // the next lease hasn't made it to disk yet (or was never requested); we can't
+            // hand out this ID until it has
+            requestedLimit = Math.max(requestedLimit, nextID + LEASE_SIZE);
+            save(requestedLimit, false);
+        }
+
         int id = nextID;
         nextID++;
-        save();
+
+        if (durableLimit - nextID < LEASE_SIZE / 2 && requestedLimit <= durableLimit) {
+            // running low on leased IDs; get the next lease written in the background
+            int limit = durableLimit + LEASE_SIZE;
+            requestedLimit = limit;
+
+            if (plugin.isEnabled()) {
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> save(limit, false));
+            } else {
+                save(limit, false);
+            }
+        }
+
         return id;
     }
 
+    /**
+     * Persist the exact next ID, releasing any unused IDs in the current lease. This
+     * blocks while the file is written, so should only be called when the plugin is
+     * being disabled.
+     */
+    public synchronized void shutdown() {
+        save(nextID, true);
+        requestedLimit = nextID;
+    }
+
+    @Nullable
     public T get(int id) {
         return map.get(id);
     }
@@ -77,11 +163,11 @@ public class IDTracker<T> {
         return map.containsKey(id);
     }
 
-    public void add(int id, T data) {
+    public void add(int id, @Nonnull T data) {
         map.put(id, data);
     }
 
-    public int add(T data) {
+    public int add(@Nonnull T data) {
         int id = getNextID();
         map.put(id, data);
         return id;
@@ -0,0 +1,159 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.inventory.DoubleChestInventory;
+import org.bukkit.inventory.Inventory;
+
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+
+/**
+ * Keeps track of when watched inventories last changed, by block position. Anything
+ * which polls a container (e.g. an item router's puller) can watch it, and when a poll
+ * finds nothing to do, skip polling again until the container's change stamp moves on.
+ * <p>
+ * Stamps are moved on by inventory events (hoppers, droppers, dispensers, furnaces and
+ * brewing stands finishing, players clicking and dragging) and by STB's own insertions
+ * and extractions. STB's own blocks aren't tracked: items are pulled from those through
+ * their {@link io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder} methods,
+ * which don't need to search an inventory to find nothing. Only watched positions are
+ * tracked; a watch which isn't used for {@link #EXPIRY_TICKS} ticks is dropped, so
+ * there's no need to explicitly stop watching.
+ * <p>
+ * Not every change to an inventory fires an event (other plugins can modify an
+ * inventory directly), so anything skipping work on the strength of an unchanged
+ * stamp should still poll occasionally.
+ */
+public final class InventoryChangeTracker {
+
+    public static final long EXPIRY_TICKS = 200L;
+
+    private final Map<UUID, Map<BlockPosition, Watch>> watches = new HashMap<>();
+    private long counter;
+
+    private static final class Watch {
+
+        private long stamp;
+        private boolean used = true;
+
+        private Watch(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+
+    /**
+     * Watch the inventory at the given block, and get its current change stamp.
+     * This must be called each time the stamp is needed, to keep the watch alive.
+     *
+     * @param b
+     *            the block holding the inventory
+     * @return the inventory's change stamp
+     */
+    public long watch(@Nonnull Block b) {
+        Map<BlockPosition, Watch> worldMap = watches.computeIfAbsent(b.getWorld().getUID(), k -> new HashMap<>());
+        Watch watch = worldMap.computeIfAbsent(new BlockPosition(b.getX(), b.getY(), b.getZ()), k -> new Watch(++counter));
+        watch.used = true;
+        return watch.stamp;
+    }
+
+    /**
+     * Record that the inventory at the given block has changed.
+     *
+     * @param b
+     *            the block holding the inventory
+     */
+    public void notifyChanged(@Nonnull Block b) {
+        notifyChanged(b.getWorld(), b.getX(), b.getY(), b.getZ());
+    }
+
+    /**
+     * Record that the given inventory has changed. Inventories which don't belong to a
+     * block are ignored; both halves of a double chest are notified.
+     *
+     * @param inv
+     *            the inventory which has changed
+     */
+    public void notifyChanged(@Nullable Inventory inv) {
+        if (inv == null || watches.isEmpty()) {
+            return;
+        }
+
+        if (inv instanceof DoubleChestInventory) {
+            notifyChanged(((DoubleChestInventory) inv).getLeftSide().getLocation());
+            notifyChanged(((DoubleChestInventory) inv).getRightSide().getLocation());
+        } else {
+            notifyChanged(inv.getLocation());
+        }
+    }
+
+    private void notifyChanged(@Nullable Location loc) {
+        if (loc != null && loc.getWorld() != null) {
+            notifyChanged(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        }
+    }
+
+    private void notifyChanged(@Nonnull World world, int x, int y, int z) {
+        Map<BlockPosition, Watch> worldMap = watches.get(world.getUID());
+
+        if (worldMap != null) {
+            Watch watch = worldMap.get(new BlockPosition(x, y, z));
+
+            if (watch != null) {
+                watch.stamp = ++counter;
+            }
+        }
+    }
+
+    /**
+     * Forget all watches in the given world.
+     *
+     * @param world
+     *            the world being unloaded
+     */
+    public void onWorldUnloaded(@Nonnull World world) {
+        watches.remove(world.getUID());
+    }
+
+    /**
+     * Drop any watches which haven't been used since the last call. This should be
+     * called every {@link #EXPIRY_TICKS} ticks.
+     */
+    public void expireWatches() {
+        for (Iterator<Map<BlockPosition, Watch>> iter = watches.values().iterator(); iter.hasNext();) {
+            Map<BlockPosition, Watch> worldMap = iter.next();
+            worldMap.values().removeIf(watch -> !watch.used);
+
+            for (Watch watch : worldMap.values()) {
+                watch.used = false;
+            }
+
+            if (worldMap.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of inventories currently being watched.
+     *
+     * @return the number of watched inventories
+     */
+    public int size() {
+        int n = 0;
+
+        for (Map<BlockPosition, Watch> worldMap : watches.values()) {
+            n += worldMap.size();
+        }
+
+        return n;
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Keeps the decoded state of recently seen STB items, keyed by their frozen
+ * (YAML-encoded) state. The same item tends to be decoded over and over, e.g. the item
+ * a player is holding on every interact event, and parsing the YAML is by far the
+ * most expensive part of turning an item stack back into an STB item.
+ * <p>
+ * The cache holds at most a fixed number of entries, dropping the least recently used
+ * one when full; a size of 0 disables it. Each decode gets its own copy of the cached
+ * state, so an item may change or keep the configuration it was made from. Copying
+ * sections and cloning item stacks is still far cheaper than parsing the YAML again,
+ * which deserializes every item stack's meta from scratch.
+ */
+public final class ItemStateCache {
+
+    private final Map<String, Configuration> entries = new LinkedHashMap<String, Configuration>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Configuration> eldest) {
+            if (size() > maxSize) {
+                evictions++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+    };
+
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Set the most entries the cache may hold. Shrinking the cache empties it.
+     *
+     * @param maxSize
+     *            the maximum number of entries; 0 disables the cache
+     */
+    public synchronized void setMaxSize(int maxSize) {
+        if (maxSize < this.maxSize) {
+            entries.clear();
+        }
+
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Get the decoded form of the given frozen item state, parsing it only if it
+     * isn't already cached.
+     *
+     * @param frozen
+     *            the frozen item state
+     * @return the decoded state, which belongs to the caller
+     */
+    @Nonnull
+    public synchronized Configuration decode(@Nonnull String frozen) {
+        Configuration conf = maxSize > 0 ? entries.get(frozen) : null;
+
+        if (conf != null) {
+            hits++;
+            return copy(conf);
+        }
+
+        misses++;
+        conf = YamlConfiguration.loadConfiguration(new StringReader(frozen));
+
+        if (maxSize > 0) {
+            // the cache keeps the parsed state to itself; the caller gets a copy
+            entries.put(frozen, conf);
+            return copy(conf);
+        } else {
+            return conf;
+        }
+    }
+
+    @Nonnull
+    private static Configuration copy(@Nonnull Configuration conf) {
+        MemoryConfiguration copy = new MemoryConfiguration();
+        copySection(conf, copy);
+        return copy;
+    }
+
+    private static void copySection(@Nonnull ConfigurationSection from, @Nonnull ConfigurationSection to) {
+        for (String key : from.getKeys(false)) {
+            Object value = from.get(key);
+
+            if (value instanceof ConfigurationSection) {
+                copySection((ConfigurationSection) value, to.createSection(key));
+            } else {
+                to.set(key, copyValue(value));
+            }
+        }
+    }
+
+    @Nullable
+    private static Object copyValue(@Nullable Object value) {
+        if (value instanceof ItemStack) {
+            return ((ItemStack) value).clone();
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> copy = new ArrayList<>(list.size());
+
+            for (Object o : list) {
+                copy.add(copyValue(o));
+            }
+
+            return copy;
+        } else if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<>();
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), copyValue(entry.getValue()));
+            }
+
+            return copy;
+        } else if (value instanceof ConfigurationSerializable) {
+            ConfigurationSerializable serializable = (ConfigurationSerializable) value;
+            return ConfigurationSerialization.deserializeObject(serializable.serialize(), serializable.getClass());
+        } else {
+            // strings, numbers and booleans can't be changed
+            return value;
+        }
+    }
+
+    /**
+     * Forget everything in the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
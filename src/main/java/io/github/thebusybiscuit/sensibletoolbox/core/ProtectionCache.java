@@ -0,0 +1,242 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import io.github.bakedlibs.dough.protection.Interaction;
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+
+/**
+ * Caches the protection plugins' answers for automated actions: routers and machines
+ * moving items in and out of containers, breaking blocks, or building, on behalf of
+ * their owner. Asking the protection manager goes through every installed protection
+ * plugin, which is expensive when a router asks the same question every tick.
+ * <p>
+ * Answers are kept for a configurable time (<em>protection_cache_ttl</em>, in seconds;
+ * 0 disables caching). They are forgotten early when a block is placed, broken or
+ * written on at or next to their position, since that's how many plugins create or
+ * remove protections (chest locks, protection signs, claim blocks). A change of claim
+ * made any other way is picked up when the cached answer expires.
+ * <p>
+ * This is only for automated actions; anything done directly by a player should ask
+ * the protection manager, as before.
+ */
+public final class ProtectionCache {
+
+    // by world, then chunk, so that unloading a chunk drops its answers in one go
+    private final Map<UUID, Map<Long, Map<BlockPosition, List<Decision>>>> decisions = new HashMap<>();
+    private long ttlMillis;
+    private long hits;
+    private long misses;
+
+    /**
+     * A question asked of the protection manager for one block, and its answer.
+     */
+    private static final class Decision {
+
+        private final UUID owner;
+        private final Interaction interaction;
+        private boolean allowed;
+        private long expiresAt;
+
+        private Decision(@Nonnull UUID owner, @Nonnull Interaction interaction) {
+            this.owner = owner;
+            this.interaction = interaction;
+        }
+    }
+
+    /**
+     * Set how long answers are kept for.
+     *
+     * @param ttlSeconds
+     *            the time to keep answers for, in seconds; 0 disables caching
+     */
+    public void setTTL(int ttlSeconds) {
+        ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+        clear();
+    }
+
+    /**
+     * Check if the given player may carry out the given interaction at the given block.
+     *
+     * @param owner
+     *            ID of the player the action is done for; may be null, in which case
+     *            permission is always refused
+     * @param b
+     *            the block being interacted with
+     * @param interaction
+     *            the interaction
+     * @return true if the interaction is allowed
+     */
+    public boolean hasPermission(@Nullable UUID owner, @Nonnull Block b, @Nonnull Interaction interaction) {
+        if (owner == null) {
+            return false;
+        }
+
+        if (ttlMillis == 0) {
+            misses++;
+            return ask(owner, b, interaction);
+        }
+
+        Map<BlockPosition, List<Decision>> chunkMap = decisions.computeIfAbsent(b.getWorld().getUID(), k -> new HashMap<>()).computeIfAbsent(getChunkKey(b.getX() >> 4, b.getZ() >> 4), k -> new HashMap<>());
+        List<Decision> atPos = chunkMap.computeIfAbsent(new BlockPosition(b.getX(), b.getY(), b.getZ()), k -> new ArrayList<>(2));
+        long now = System.currentTimeMillis();
+        Decision decision = null;
+
+        // there are rarely more than a couple of owners and interactions per block
+        for (Decision d : atPos) {
+            if (d.interaction == interaction && d.owner.equals(owner)) {
+                decision = d;
+                break;
+            }
+        }
+
+        if (decision == null) {
+            decision = new Decision(owner, interaction);
+            atPos.add(decision);
+        } else if (decision.expiresAt > now) {
+            hits++;
+            return decision.allowed;
+        }
+
+        misses++;
+        decision.allowed = ask(owner, b, interaction);
+        decision.expiresAt = now + ttlMillis;
+        return decision.allowed;
+    }
+
+    private boolean ask(@Nonnull UUID owner, @Nonnull Block b, @Nonnull Interaction interaction) {
+        return SensibleToolbox.getProtectionManager().hasPermission(Bukkit.getOfflinePlayer(owner), b, interaction);
+    }
+
+    /**
+     * Forget all answers for the given block.
+     *
+     * @param b
+     *            the block which has changed
+     */
+    public void invalidate(@Nonnull Block b) {
+        Map<Long, Map<BlockPosition, List<Decision>>> worldMap = decisions.get(b.getWorld().getUID());
+        Map<BlockPosition, List<Decision>> chunkMap = worldMap == null ? null : worldMap.get(getChunkKey(b.getX() >> 4, b.getZ() >> 4));
+
+        if (chunkMap != null) {
+            chunkMap.remove(new BlockPosition(b.getX(), b.getY(), b.getZ()));
+        }
+    }
+
+    /**
+     * Forget all answers in the given chunk.
+     *
+     * @param chunk
+     *            the chunk being unloaded
+     */
+    public void invalidate(@Nonnull Chunk chunk) {
+        Map<Long, Map<BlockPosition, List<Decision>>> worldMap = decisions.get(chunk.getWorld().getUID());
+
+        if (worldMap != null) {
+            worldMap.remove(getChunkKey(chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    /**
+     * Forget all answers in the given world.
+     *
+     * @param world
+     *            the world being unloaded
+     */
+    public void invalidate(@Nonnull World world) {
+        decisions.remove(world.getUID());
+    }
+
+    /**
+     * Forget all answers.
+     */
+    public void clear() {
+        decisions.clear();
+    }
+
+    /**
+     * Drop any answers which have expired. This should be called every so often to
+     * keep memory use down.
+     */
+    public void expire() {
+        long now = System.currentTimeMillis();
+
+        for (Iterator<Map<Long, Map<BlockPosition, List<Decision>>>> iter = decisions.values().iterator(); iter.hasNext();) {
+            Map<Long, Map<BlockPosition, List<Decision>>> worldMap = iter.next();
+
+            for (Iterator<Map<BlockPosition, List<Decision>>> iter2 = worldMap.values().iterator(); iter2.hasNext();) {
+                Map<BlockPosition, List<Decision>> chunkMap = iter2.next();
+
+                for (Iterator<List<Decision>> iter3 = chunkMap.values().iterator(); iter3.hasNext();) {
+                    List<Decision> atPos = iter3.next();
+                    atPos.removeIf(d -> d.expiresAt <= now);
+
+                    if (atPos.isEmpty()) {
+                        iter3.remove();
+                    }
+                }
+
+                if (chunkMap.isEmpty()) {
+                    iter2.remove();
+                }
+            }
+
+            if (worldMap.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the number of times a cached answer was used.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of times the protection manager had to be asked.
+     *
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of blocks with cached answers.
+     *
+     * @return the number of cached positions
+     */
+    public int size() {
+        int n = 0;
+
+        for (Map<Long, Map<BlockPosition, List<Decision>>> worldMap : decisions.values()) {
+            for (Map<BlockPosition, List<Decision>> chunkMap : worldMap.values()) {
+                n += chunkMap.size();
+            }
+        }
+
+        return n;
+    }
+
+    private static long getChunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
@@ -1,11 +1,11 @@
 package io.github.thebusybiscuit.sensibletoolbox.core;
 
-import java.io.StringReader;
 import java.lang.reflect.Constructor;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.Set;
 import java.util.logging.Level;
 
@@ -22,7 +22,6 @@ import org.bukkit.NamespacedKey;
 import org.bukkit.configuration.Configuration;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.MemoryConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
@@ -31,21 +30,27 @@ import org.bukkit.plugin.Plugin;
 import io.github.bakedlibs.dough.data.persistent.PersistentDataAPI;
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
 import io.github.thebusybiscuit.sensibletoolbox.api.ItemRegistry;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.Chargeable;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBItem;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.ItemAction;
 import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
+import me.desht.dhutils.Debugger;
 
 public class STBItemRegistry implements ItemRegistry, Keyed {
 
     public static final String LORE_PREFIX = ChatColor.DARK_GRAY.toString() + ChatColor.ITALIC + "\u25b9";
     public static final int MAX_ITEM_ID_LENGTH = 32;
+    // how the type ID appears in an item's frozen state
+    private static final String TYPE_PREFIX = "'*TYPE':";
 
     private final Map<String, ReflectionDetails<?>> reflectionDetailsMap = new HashMap<>();
     private final Map<String, Class<? extends BaseSTBItem>> craftingRestrictions = new HashMap<>();
     private final Map<String, String> permissionPrefix = new HashMap<>();
     private final Map<String, Plugin> id2plugin = new HashMap<>();
     private final NamespacedKey namespacedKey;
+    private final NamespacedKey chargeKey;
+    private final ItemStateCache stateCache = new ItemStateCache();
 
     @ParametersAreNonnullByDefault
     public STBItemRegistry(Plugin plugin, String registryKey) {
@@ -53,6 +58,7 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
         Validate.notNull(registryKey, "The registry cannot be null");
 
         this.namespacedKey = new NamespacedKey(plugin, registryKey);
+        this.chargeKey = new NamespacedKey(plugin, registryKey + "_charge");
     }
 
     @Override
@@ -60,6 +66,28 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
         return namespacedKey;
     }
 
+    /**
+     * Get the key under which the charge of a {@link Chargeable} item is stored in its
+     * item stack. The charge is kept separately from the rest of the item's frozen state,
+     * so that it can be updated without re-encoding everything else.
+     *
+     * @return the charge key
+     */
+    @Nonnull
+    public NamespacedKey getChargeKey() {
+        return chargeKey;
+    }
+
+    /**
+     * Get the cache of decoded item state used by {@link #fromItemStack(ItemStack)}.
+     *
+     * @return the item state cache
+     */
+    @Nonnull
+    public ItemStateCache getStateCache() {
+        return stateCache;
+    }
+
     @Override
     public void registerItem(BaseSTBItem item, Plugin plugin) {
         registerItem(item, plugin, null, null);
@@ -130,7 +158,8 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
 
     @Override
     public BaseSTBItem fromItemStack(@Nullable ItemStack stack) {
-        if (stack == null) {
+        if (stack == null || !reflectionDetailsMap.containsKey(getItemTypeId(stack))) {
+            // not an STB item (or not one we know about), so there's nothing to decode
             return null;
         }
 
@@ -139,6 +168,15 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
 
         if (item != null) {
             item.storeEnchants(stack);
+
+            if (item instanceof Chargeable) {
+                // the dedicated charge field may be more recent than the frozen state
+                OptionalDouble charge = PersistentDataAPI.getOptionalDouble(stack.getItemMeta(), chargeKey);
+
+                if (charge.isPresent()) {
+                    ((Chargeable) item).setCharge(charge.getAsDouble());
+                }
+            }
         }
 
         return item;
@@ -155,7 +193,7 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
         Optional<String> optional = PersistentDataAPI.getOptionalString(stack.getItemMeta(), namespacedKey);
 
         if (optional.isPresent()) {
-            return YamlConfiguration.loadConfiguration(new StringReader(optional.get()));
+            return stateCache.decode(optional.get());
         } else {
             return new MemoryConfiguration();
         }
@@ -163,6 +201,10 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
 
     @Override
     public <T extends BaseSTBItem> T fromItemStack(ItemStack stack, Class<T> type) {
+        if (!isSTBItem(stack, type)) {
+            return null;
+        }
+
         BaseSTBItem item = fromItemStack(stack);
 
         if (item != null && type.isAssignableFrom(item.getClass())) {
@@ -186,7 +228,7 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
         }
 
         try {
-            return conf == null ? details.ctor0arg.newInstance() : details.ctor1arg.newInstance(conf);
+            return details.create(conf);
         } catch (Exception | LinkageError e) {
             SensibleToolboxPlugin.getInstance().getLogger().log(Level.SEVERE, e, () -> "Failed to create STB item from item ID: " + id);
             return null;
@@ -200,14 +242,51 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
 
     @Override
     public boolean isSTBItem(ItemStack stack, Class<? extends BaseSTBItem> c) {
-        BaseSTBItem item = fromItemStack(stack);
-        if (c == null) {
-            return item != null;
+        String id = getItemTypeId(stack);
+        ReflectionDetails<?> details = id == null ? null : reflectionDetailsMap.get(id);
+
+        if (details == null) {
+            return false;
         } else {
-            return c.isInstance(item);
+            return c == null || c.isAssignableFrom(details.clazz);
         }
     }
 
+    @Override
+    public String getItemTypeId(@Nullable ItemStack stack) {
+        if (stack == null || !stack.hasItemMeta()) {
+            return null;
+        }
+
+        // the type is picked out of the frozen state, rather than kept under a key of its
+        // own, so that item stacks stay exactly as they were and still stack with old ones
+        Optional<String> attributes = PersistentDataAPI.getOptionalString(stack.getItemMeta(), namespacedKey);
+        return attributes.isPresent() ? findTypeId(attributes.get()) : null;
+    }
+
+    /**
+     * Find the type ID in an item's frozen state without parsing all of it. The state is
+     * written by {@link org.bukkit.configuration.file.YamlConfiguration#saveToString()},
+     * which always puts the type on a line of its own as a top-level key; anything
+     * unexpected falls back to a full parse.
+     */
+    @Nullable
+    private String findTypeId(@Nonnull String attributes) {
+        int start = attributes.startsWith(TYPE_PREFIX) ? 0 : attributes.indexOf("\n" + TYPE_PREFIX) + 1;
+
+        // a line which is indented belongs to a nested section, so it's no good here
+        if (start > 0 || attributes.startsWith(TYPE_PREFIX)) {
+            int end = attributes.indexOf('\n', start);
+            String id = attributes.substring(start + TYPE_PREFIX.length(), end < 0 ? attributes.length() : end).trim();
+
+            if (!id.isEmpty() && id.chars().allMatch(ch -> ch == '_' || ch == '-' || Character.isLetterOrDigit(ch))) {
+                return id;
+            }
+        }
+
+        return stateCache.decode(attributes).getString("*TYPE");
+    }
+
     public Plugin getPlugin(BaseSTBItem item) {
         return id2plugin.get(item.getItemTypeID());
     }
@@ -224,12 +303,22 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
         craftingRestrictions.put(item.getItemTypeID() + ":" + mat, c);
     }
 
+    /**
+     * How to create instances of an item class. Creating items is very common (every
+     * item decode, every block loaded from the database), so this avoids reflection
+     * where it can; see {@link ConstructorFactory}. The reflective constructors are
+     * only used if no factory can be set up.
+     */
     private final class ReflectionDetails<T extends BaseSTBItem> {
 
+        private final Class<T> clazz;
         private final Constructor<T> ctor0arg;
         private final Constructor<T> ctor1arg;
+        private final ConstructorFactory<T> factory;
 
         private ReflectionDetails(Class<T> clazz) {
+            this.clazz = clazz;
+
             try {
                 ctor0arg = clazz.getConstructor();
             } catch (NoSuchMethodException e) {
@@ -241,6 +330,26 @@ public class STBItemRegistry implements ItemRegistry, Keyed {
             } catch (NoSuchMethodException e) {
                 throw new IllegalArgumentException("class " + clazz + " does not have a 1-argument (ConfigurationSection) constructor!");
             }
+
+            ConstructorFactory<T> f;
+
+            try {
+                f = ConstructorFactory.of(clazz);
+            } catch (Throwable e) {
+                Debugger.getInstance().debug("can't make item factories for " + clazz.getName() + ", using reflection: " + e);
+                f = null;
+            }
+
+            factory = f;
+        }
+
+        @Nonnull
+        private T create(@Nullable ConfigurationSection conf) throws ReflectiveOperationException {
+            if (factory != null) {
+                return factory.create(conf);
+            } else {
+                return conf == null ? ctor0arg.newInstance() : ctor1arg.newInstance(conf);
+            }
         }
     }
 }
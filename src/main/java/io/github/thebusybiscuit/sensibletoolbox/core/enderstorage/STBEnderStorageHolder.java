@@ -16,8 +16,10 @@ import org.bukkit.inventory.ItemStack;
 import com.google.common.io.Files;
 
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.enderstorage.EnderStorageHolder;
 import io.github.thebusybiscuit.sensibletoolbox.utils.BukkitSerialization;
+import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 import io.github.thebusybiscuit.sensibletoolbox.utils.VanillaInventoryUtils;
 import me.desht.dhutils.Debugger;
 import me.desht.dhutils.text.LogUtils;
@@ -39,11 +41,11 @@ public abstract class STBEnderStorageHolder implements EnderStorageHolder {
         if (saveFile.exists()) {
             try (Scanner scanner = new Scanner(saveFile, StandardCharsets.UTF_8.name()).useDelimiter("\\A")) {
                 String encoded = scanner.next();
-                Inventory savedInv = BukkitSerialization.fromBase64(encoded);
-                inventory = Bukkit.createInventory(this, savedInv.getSize(), getInventoryTitle());
+                ItemStack[] items = BukkitSerialization.decodeItems(encoded);
+                inventory = Bukkit.createInventory(this, STBUtil.roundUp(items.length, 9), getInventoryTitle());
 
-                for (int i = 0; i < savedInv.getSize(); i++) {
-                    inventory.setItem(i, savedInv.getItem(i));
+                for (int i = 0; i < items.length; i++) {
+                    inventory.setItem(i, items[i]);
                 }
 
                 Debugger.getInstance().debug("loaded " + this + " from " + saveFile);
@@ -108,6 +110,127 @@ public abstract class STBEnderStorageHolder implements EnderStorageHolder {
         return stack;
     }
 
+    @Override
+    public int simulateInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        Inventory inv = getInventory();
+        int maxStack = Math.min(key.getMaxStackSize(), inv.getMaxStackSize());
+        int room = 0;
+        boolean isEmpty = true;
+        boolean hasKey = false;
+
+        for (int slot = 0; slot < inv.getSize(); slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (stack == null) {
+                room += maxStack;
+            } else {
+                isEmpty = false;
+
+                if (key.matches(stack)) {
+                    hasKey = true;
+                    room += Math.max(0, maxStack - stack.getAmount());
+                }
+            }
+        }
+
+        if (sorting && !isEmpty && !hasKey) {
+            // a sorter may only put items into an empty bag, or one which already has some
+            return 0;
+        }
+
+        return Math.min(amount, room);
+    }
+
+    @Override
+    public int commitInsert(ItemKey key, int amount, BlockFace face, boolean sorting, UUID uuid) {
+        int toInsert = simulateInsert(key, amount, face, sorting, uuid);
+
+        if (toInsert <= 0) {
+            return 0;
+        }
+
+        Inventory inv = getInventory();
+        int maxStack = Math.min(key.getMaxStackSize(), inv.getMaxStackSize());
+        int remaining = toInsert;
+
+        // top up existing stacks first, then fill empty slots, as Inventory#addItem() does
+        for (int slot = 0; slot < inv.getSize() && remaining > 0; slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (key.matches(stack) && stack.getAmount() < maxStack) {
+                int toAdd = Math.min(remaining, maxStack - stack.getAmount());
+                stack.setAmount(stack.getAmount() + toAdd);
+                inv.setItem(slot, stack);
+                remaining -= toAdd;
+            }
+        }
+
+        for (int slot = 0; slot < inv.getSize() && remaining > 0; slot++) {
+            if (inv.getItem(slot) == null) {
+                int toAdd = Math.min(remaining, maxStack);
+                inv.setItem(slot, key.toItemStack(toAdd));
+                remaining -= toAdd;
+            }
+        }
+
+        setChanged();
+        return toInsert - remaining;
+    }
+
+    @Override
+    public ItemKey getExtractableKey(BlockFace face, UUID uuid) {
+        Inventory inv = getInventory();
+
+        for (int slot = 0; slot < inv.getSize(); slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (stack != null) {
+                return ItemKey.of(stack);
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public int simulateExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        Inventory inv = getInventory();
+        int available = 0;
+
+        for (int slot = 0; slot < inv.getSize() && available < amount; slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (key.matches(stack)) {
+                available += stack.getAmount();
+            }
+        }
+
+        return Math.min(amount, available);
+    }
+
+    @Override
+    public int commitExtract(ItemKey key, int amount, BlockFace face, UUID uuid) {
+        Inventory inv = getInventory();
+        int extracted = 0;
+
+        for (int slot = 0; slot < inv.getSize() && extracted < amount; slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (key.matches(stack)) {
+                int toTake = Math.min(amount - extracted, stack.getAmount());
+                stack.setAmount(stack.getAmount() - toTake);
+                inv.setItem(slot, stack.getAmount() > 0 ? stack : null);
+                extracted += toTake;
+            }
+        }
+
+        if (extracted > 0) {
+            setChanged();
+        }
+
+        return extracted;
+    }
+
     @Override
     public Inventory showOutputItems(UUID uuid) {
         Inventory res = Bukkit.createInventory(this, getInventory().getSize());
@@ -2,14 +2,14 @@ package io.github.thebusybiscuit.sensibletoolbox.core.energy;
 
 import org.bukkit.block.BlockFace;
 
-import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBMachine;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
 
 public class AdjacentMachine {
 
-    private final BaseSTBMachine machine;
+    private final ChargeableBlock machine;
     private final BlockFace direction;
 
-    AdjacentMachine(BaseSTBMachine machine, BlockFace direction) {
+    AdjacentMachine(ChargeableBlock machine, BlockFace direction) {
         this.machine = machine;
         this.direction = direction;
     }
@@ -18,7 +18,7 @@ public class AdjacentMachine {
         return direction;
     }
 
-    BaseSTBMachine getMachine() {
+    ChargeableBlock getMachine() {
         return machine;
     }
 }
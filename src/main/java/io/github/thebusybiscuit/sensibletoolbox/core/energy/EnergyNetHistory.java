@@ -0,0 +1,65 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+/**
+ * A fixed-size ring buffer of per-tick energy flow samples for a single energy net.
+ * All figures are stored in SCU per server tick, in primitive arrays, so recording
+ * a sample never allocates.
+ */
+final class EnergyNetHistory {
+
+    static final int HISTORY_SIZE = 32;
+
+    private final double[] supply = new double[HISTORY_SIZE];
+    private final double[] demand = new double[HISTORY_SIZE];
+    private final double[] delivered = new double[HISTORY_SIZE];
+    private final double[] shortfall = new double[HISTORY_SIZE];
+    private int next;
+    private int count;
+
+    void record(double supplied, double demanded, double deliveredAmount, double shortfallAmount) {
+        supply[next] = supplied;
+        demand[next] = demanded;
+        delivered[next] = deliveredAmount;
+        shortfall[next] = shortfallAmount;
+        next = (next + 1) % HISTORY_SIZE;
+
+        if (count < HISTORY_SIZE) {
+            count++;
+        }
+    }
+
+    int getSampleCount() {
+        return count;
+    }
+
+    double getAverageSupply() {
+        return average(supply);
+    }
+
+    double getAverageDemand() {
+        return average(demand);
+    }
+
+    double getAverageDelivered() {
+        return average(delivered);
+    }
+
+    double getAverageShortfall() {
+        return average(shortfall);
+    }
+
+    private double average(double[] samples) {
+        if (count == 0) {
+            return 0;
+        }
+
+        // unused slots are always zero, so there's no need to work out where the live ones are
+        double total = 0;
+
+        for (double sample : samples) {
+            total += sample;
+        }
+
+        return total / count;
+    }
+}
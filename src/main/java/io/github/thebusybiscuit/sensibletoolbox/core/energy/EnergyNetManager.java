@@ -1,16 +1,22 @@
 package io.github.thebusybiscuit.sensibletoolbox.core.energy;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 
@@ -19,21 +25,37 @@ import com.google.common.base.Joiner;
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
-import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBMachine;
-import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 import me.desht.dhutils.Debugger;
 
 public class EnergyNetManager {
 
     public static final long DEFAULT_TICK_RATE = 10;
+    private static final String SNAPSHOT_FILE = "energy_nets.dat";
     private long tickRate = DEFAULT_TICK_RATE;
 
     private final Map<Integer, STBEnergyNet> allNets = new HashMap<>();
-    private final SensibleToolboxPlugin plugin;
+    // restored nets which still have cables to verify against the world
+    private final Set<STBEnergyNet> unverifiedNets = new HashSet<>();
+    // machine attachments from a restored snapshot, waiting for the machine to be registered; by world name then position
+    private final Map<String, Map<BlockPosition, List<PendingAttachment>>> pendingAttachments = new HashMap<>();
+    // cables which may need connecting to a net once their chunk loads: from rebuilt nets, or next to
+    // restored ones; by world name then chunk
+    private final Map<String, Map<Long, List<BlockPosition>>> deferredCables = new HashMap<>();
+    private final EnergyNetWorld netWorld;
+    private final File snapshotFile;
+    private final Logger logger;
+    private final EnergyNetStats stats = new EnergyNetStats();
 
     public EnergyNetManager(@Nonnull SensibleToolboxPlugin plugin) {
-        this.plugin = plugin;
+        this(new LiveEnergyNetWorld(plugin), new File(plugin.getDataFolder(), SNAPSHOT_FILE), plugin.getLogger());
+    }
+
+    EnergyNetManager(@Nonnull EnergyNetWorld netWorld, @Nonnull File snapshotFile, @Nonnull Logger logger) {
+        this.netWorld = netWorld;
+        this.snapshotFile = snapshotFile;
+        this.logger = logger;
     }
 
     public long getTickRate() {
@@ -44,6 +66,20 @@ public class EnergyNetManager {
         this.tickRate = tickRate;
     }
 
+    @Nonnull
+    public EnergyNetStats getStats() {
+        return stats;
+    }
+
+    @Nonnull
+    EnergyNetWorld getNetWorld() {
+        return netWorld;
+    }
+
+    public int getNetCount() {
+        return allNets.size();
+    }
+
     /**
      * Get the energy net this block is in, if any.
      *
@@ -53,10 +89,24 @@ public class EnergyNetManager {
      */
     @Nullable
     public STBEnergyNet getEnergyNet(@Nonnull Block block) {
-        Integer netId = (Integer) STBUtil.getMetadataValue(block, STBEnergyNet.STB_ENET_ID);
+        Integer netId = netWorld.getNetID(block);
         return netId == null ? null : allNets.get(netId);
     }
 
+    /**
+     * Get the energy nets which have been moving the most energy recently.
+     *
+     * @param max
+     *            the maximum number of nets to return
+     * @return a list of energy nets, busiest first
+     */
+    @Nonnull
+    public List<STBEnergyNet> getBusiestNets(int max) {
+        List<STBEnergyNet> nets = new ArrayList<>(allNets.values());
+        nets.sort(Comparator.comparingDouble(STBEnergyNet::getAverageDelivered).thenComparingDouble(STBEnergyNet::getAverageDemand).reversed());
+        return nets.subList(0, Math.max(0, Math.min(max, nets.size())));
+    }
+
     /**
      * Given a cable which has just been placed, check what energy nets and machines, if any,
      * are adjacent to it, and act accordingly.
@@ -120,15 +170,15 @@ public class EnergyNetManager {
 
         // scan this cable's neighbours to see what it was attached to
         final List<Block> attachedCables = new ArrayList<>();
-        final List<BaseSTBMachine> attachedMachines = new ArrayList<>();
+        final List<ChargeableBlock> attachedMachines = new ArrayList<>();
 
         for (BlockFace face : STBUtil.getDirectBlockFaces()) {
             Block b = cable.getRelative(face);
 
-            if (STBUtil.isCable(b)) {
+            if (netWorld.isCable(b)) {
                 attachedCables.add(b);
             } else {
-                BaseSTBMachine machine = LocationManager.getManager().get(b.getLocation(), BaseSTBMachine.class);
+                ChargeableBlock machine = netWorld.getMachine(b);
 
                 if (machine != null) {
                     attachedMachines.add(machine);
@@ -148,7 +198,7 @@ public class EnergyNetManager {
             }
             // need a delayed task here, since the block for the cable being removed isn't
             // actually updated to air yet...
-            Bukkit.getScheduler().runTask(plugin, () -> {
+            netWorld.runTask(() -> {
                 // rebuild energy nets for the deleted cable's neighbours
                 for (Block b : attachedCables) {
                     // those neighbours could have another path to each other
@@ -164,12 +214,16 @@ public class EnergyNetManager {
     }
 
     public void onMachinePlaced(ChargeableBlock machine) {
+        if (attachFromSnapshot(machine)) {
+            return;
+        }
+
         Block b = machine.getLocation().getBlock();
         // scan adjacent blocks for cables
         for (BlockFace face : STBUtil.getDirectBlockFaces()) {
             Block cable = b.getRelative(face);
 
-            if (STBUtil.isCable(cable)) {
+            if (netWorld.isCable(cable)) {
                 STBEnergyNet net = getEnergyNet(cable);
 
                 if (net == null) {
@@ -204,7 +258,7 @@ public class EnergyNetManager {
         for (BlockFace face : STBUtil.getDirectBlockFaces()) {
             Block b = start.getRelative(face);
 
-            if (STBUtil.isCable(b)) {
+            if (netWorld.isCable(b)) {
                 EnergyNet net2 = getEnergyNet(b);
 
                 if (net2 == null) {
@@ -216,12 +270,12 @@ public class EnergyNetManager {
     }
 
     @Nonnull
-    private static List<AdjacentMachine> getAdjacentMachines(@Nonnull Block cable) {
+    private List<AdjacentMachine> getAdjacentMachines(@Nonnull Block cable) {
         final List<AdjacentMachine> attachedMachines = new ArrayList<>();
 
         for (BlockFace face : STBUtil.getDirectBlockFaces()) {
             Block b = cable.getRelative(face);
-            BaseSTBMachine machine = LocationManager.getManager().get(b.getLocation(), BaseSTBMachine.class);
+            ChargeableBlock machine = netWorld.getMachine(b);
 
             if (machine != null) {
                 attachedMachines.add(new AdjacentMachine(machine, face));
@@ -259,12 +313,272 @@ public class EnergyNetManager {
         if (enet != null) {
             enet.shutdown();
             allNets.remove(netID);
+            unverifiedNets.remove(enet);
         }
     }
 
+    /**
+     * Attach a newly registered machine to any restored nets it was attached to when the
+     * snapshot was written, without scanning the blocks around it.
+     *
+     * @param machine
+     *            the machine being registered
+     * @return true if the machine was attached from the snapshot, false if a scan is needed
+     */
+    private boolean attachFromSnapshot(@Nonnull ChargeableBlock machine) {
+        if (pendingAttachments.isEmpty()) {
+            return false;
+        }
+
+        String worldName = machine.getLocation().getWorld().getName();
+        Map<BlockPosition, List<PendingAttachment>> worldMap = pendingAttachments.get(worldName);
+        List<PendingAttachment> attachments = worldMap == null ? null : worldMap.remove(new BlockPosition(machine.getLocation()));
+
+        if (attachments == null) {
+            return false;
+        } else if (worldMap.isEmpty()) {
+            pendingAttachments.remove(worldName);
+        }
+
+        for (PendingAttachment attachment : attachments) {
+            if (!allNets.containsKey(attachment.net.getNetID())) {
+                // the restored net has been rebuilt since; fall back to a normal scan
+                return false;
+            }
+        }
+
+        for (PendingAttachment attachment : attachments) {
+            attachment.net.addMachine(machine, attachment.face);
+        }
+
+        return true;
+    }
+
+    /**
+     * Restore the energy net topology written by {@link #saveSnapshot()}, if there is one.
+     * This must be called before any machines are registered. The snapshot file is deleted
+     * once read, so it can never be used twice; restored cables are verified against the
+     * world as their chunks get loaded, and any net which doesn't match is rebuilt.
+     */
+    public void restoreSnapshot() {
+        if (!snapshotFile.exists()) {
+            return;
+        }
+
+        try {
+            int nNets = 0;
+
+            for (EnergyNetSnapshot.NetRecord rec : EnergyNetSnapshot.read(snapshotFile)) {
+                World world = netWorld.getWorld(rec.getWorldName());
+
+                if (world == null) {
+                    // nets in worlds which aren't loaded will be discovered the usual way
+                    continue;
+                }
+
+                STBEnergyNet net = STBEnergyNet.restore(rec, world, this);
+                allNets.put(net.getNetID(), net);
+                unverifiedNets.add(net);
+                Map<BlockPosition, List<PendingAttachment>> worldMap = pendingAttachments.computeIfAbsent(rec.getWorldName(), k -> new HashMap<>());
+
+                for (EnergyNetSnapshot.MachineRecord machine : rec.getMachines()) {
+                    worldMap.computeIfAbsent(machine.getPosition(), k -> new ArrayList<>()).add(new PendingAttachment(net, machine.getFace()));
+                }
+
+                nNets++;
+            }
+
+            Debugger.getInstance().debug("restored " + nNets + " energy nets from " + snapshotFile.getName());
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, e, () -> "Could not restore energy nets from " + snapshotFile.getName() + ", they will be rebuilt");
+
+            for (STBEnergyNet net : new ArrayList<>(allNets.values())) {
+                deleteEnergyNet(net.getNetID());
+            }
+
+            unverifiedNets.clear();
+            pendingAttachments.clear();
+        } finally {
+            if (!snapshotFile.delete()) {
+                logger.log(Level.WARNING, "Could not delete {0}", snapshotFile.getName());
+            }
+        }
+    }
+
+    /**
+     * Write the current energy net topology to disk, to be picked up by {@link #restoreSnapshot()}
+     * on the next startup. This should only be called when the plugin is being disabled.
+     */
+    public void saveSnapshot() {
+        try {
+            EnergyNetSnapshot.write(snapshotFile, allNets.values());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, e, () -> "Could not save energy nets to " + snapshotFile.getName());
+        }
+    }
+
+    /**
+     * Verify restored nets against any newly loaded chunks, and rebuild those which
+     * no longer match the world. Cables found next to restored ones which aren't in
+     * any net are connected by {@link #connectDeferredCables()}.
+     */
+    private void verifyRestoredNets() {
+        if (unverifiedNets.isEmpty()) {
+            if (!pendingAttachments.isEmpty()) {
+                // any machine still waiting for its attachments can find its nets the usual way
+                Debugger.getInstance().debug("all restored energy nets verified, dropping unused machine attachments");
+                pendingAttachments.clear();
+            }
+
+            return;
+        }
+
+        List<STBEnergyNet> toRebuild = null;
+        List<BlockPosition> neighbours = new ArrayList<>();
+        Iterator<STBEnergyNet> iter = unverifiedNets.iterator();
+
+        while (iter.hasNext()) {
+            STBEnergyNet net = iter.next();
+            World world = netWorld.getWorld(net.getWorldName());
+
+            if (world == null) {
+                iter.remove();
+            } else if (!net.verifyLoadedChunks(world, neighbours)) {
+                if (toRebuild == null) {
+                    toRebuild = new ArrayList<>();
+                }
+
+                toRebuild.add(net);
+            } else {
+                deferCables(world.getName(), neighbours);
+
+                if (!net.isVerificationPending()) {
+                    iter.remove();
+                }
+            }
+
+            neighbours.clear();
+        }
+
+        if (toRebuild != null) {
+            for (STBEnergyNet net : toRebuild) {
+                rebuildEnergyNet(net);
+            }
+        }
+    }
+
+    private void rebuildEnergyNet(@Nonnull STBEnergyNet net) {
+        World world = netWorld.getWorld(net.getWorldName());
+        List<BlockPosition> cables = new ArrayList<>(net.getCables());
+        deleteEnergyNet(net.getNetID());
+
+        if (world == null) {
+            return;
+        }
+
+        Debugger.getInstance().debug("rebuilding restored net #" + net.getNetID() + " which doesn't match the world");
+
+        // looking at a block in an unloaded chunk would load it, so those cables wait until it's loaded anyway
+        List<BlockPosition> unloaded = new ArrayList<>();
+
+        for (BlockPosition pos : cables) {
+            if (!world.isChunkLoaded(pos.getX() >> 4, pos.getZ() >> 4)) {
+                unloaded.add(pos);
+                continue;
+            }
+
+            Block b = world.getBlockAt(pos.getX(), pos.getY(), pos.getZ());
+
+            if (netWorld.isCable(b) && getEnergyNet(b) == null) {
+                STBEnergyNet newNet = STBEnergyNet.buildNet(b, this, unloaded);
+                allNets.put(newNet.getNetID(), newNet);
+            }
+        }
+
+        deferCables(world.getName(), unloaded);
+    }
+
+    private void deferCables(@Nonnull String worldName, @Nonnull List<BlockPosition> cables) {
+        if (cables.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<BlockPosition>> worldMap = deferredCables.computeIfAbsent(worldName, k -> new HashMap<>());
+
+        for (BlockPosition pos : cables) {
+            worldMap.computeIfAbsent(getChunkKey(pos), k -> new ArrayList<>()).add(pos);
+        }
+    }
+
+    /**
+     * Connect any deferred cables whose chunks have now loaded, and which still aren't
+     * in a net. They join the nets next to them just as newly placed cables would.
+     */
+    private void connectDeferredCables() {
+        Iterator<Map.Entry<String, Map<Long, List<BlockPosition>>>> worldIter = deferredCables.entrySet().iterator();
+
+        while (worldIter.hasNext()) {
+            Map.Entry<String, Map<Long, List<BlockPosition>>> worldEntry = worldIter.next();
+            World world = netWorld.getWorld(worldEntry.getKey());
+
+            if (world == null) {
+                // the world has been unloaded; its nets will be discovered the usual way
+                worldIter.remove();
+                continue;
+            }
+
+            Iterator<Map.Entry<Long, List<BlockPosition>>> iter = worldEntry.getValue().entrySet().iterator();
+
+            while (iter.hasNext()) {
+                Map.Entry<Long, List<BlockPosition>> entry = iter.next();
+                long key = entry.getKey();
+
+                if (world.isChunkLoaded((int) (key >> 32), (int) key)) {
+                    iter.remove();
+
+                    for (BlockPosition pos : entry.getValue()) {
+                        Block b = world.getBlockAt(pos.getX(), pos.getY(), pos.getZ());
+
+                        if (netWorld.isCable(b) && getEnergyNet(b) == null) {
+                            onCablePlaced(b);
+                        }
+                    }
+                }
+            }
+
+            if (worldEntry.getValue().isEmpty()) {
+                worldIter.remove();
+            }
+        }
+    }
+
+    private static long getChunkKey(@Nonnull BlockPosition pos) {
+        return ((long) (pos.getX() >> 4) << 32) | ((pos.getZ() >> 4) & 0xFFFFFFFFL);
+    }
+
     public void tick() {
+        stats.startTick();
+        verifyRestoredNets();
+
+        if (!deferredCables.isEmpty()) {
+            connectDeferredCables();
+        }
+
         for (STBEnergyNet net : allNets.values()) {
             net.tick();
         }
+
+        stats.endTick();
+    }
+
+    private static final class PendingAttachment {
+
+        private final STBEnergyNet net;
+        private final BlockFace face;
+
+        private PendingAttachment(@Nonnull STBEnergyNet net, @Nonnull BlockFace face) {
+            this.net = net;
+            this.face = face;
+        }
     }
 }
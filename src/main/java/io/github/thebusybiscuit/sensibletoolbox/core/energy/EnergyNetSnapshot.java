@@ -0,0 +1,183 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+import org.bukkit.Location;
+import org.bukkit.block.BlockFace;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+
+/**
+ * A compact on-disk snapshot of the energy net topology: the cable positions
+ * of each net, along with the machines attached to it and the faces they are
+ * attached on. The snapshot is only written on a clean shutdown and is deleted
+ * once it has been read, so a crash always results in a full rediscovery.
+ *
+ * @see EnergyNetManager
+ */
+final class EnergyNetSnapshot {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private EnergyNetSnapshot() {}
+
+    /**
+     * The persisted topology of a single energy net.
+     */
+    static final class NetRecord {
+
+        private final String worldName;
+        private final List<BlockPosition> cables = new ArrayList<>();
+        private final List<MachineRecord> machines = new ArrayList<>();
+
+        NetRecord(@Nonnull String worldName) {
+            this.worldName = worldName;
+        }
+
+        @Nonnull
+        String getWorldName() {
+            return worldName;
+        }
+
+        @Nonnull
+        List<BlockPosition> getCables() {
+            return cables;
+        }
+
+        @Nonnull
+        List<MachineRecord> getMachines() {
+            return machines;
+        }
+    }
+
+    /**
+     * A machine attachment; the machine position plus the face of the machine
+     * which touches the net.
+     */
+    static final class MachineRecord {
+
+        private final BlockPosition position;
+        private final BlockFace face;
+
+        @ParametersAreNonnullByDefault
+        MachineRecord(BlockPosition position, BlockFace face) {
+            this.position = position;
+            this.face = face;
+        }
+
+        @Nonnull
+        BlockPosition getPosition() {
+            return position;
+        }
+
+        @Nonnull
+        BlockFace getFace() {
+            return face;
+        }
+    }
+
+    @ParametersAreNonnullByDefault
+    static void write(File file, Collection<STBEnergyNet> nets) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(nets.size());
+
+            for (STBEnergyNet net : nets) {
+                out.writeUTF(net.getWorldName());
+
+                List<BlockPosition> cables = net.getCables();
+                out.writeInt(cables.size());
+
+                for (BlockPosition pos : cables) {
+                    writePosition(out, pos);
+                }
+
+                List<MachineRecord> machines = new ArrayList<>();
+
+                for (ChargeableBlock machine : net.getMachines()) {
+                    Location loc = machine.getLocation();
+
+                    for (BlockFace face : machine.getFacesForNet(net)) {
+                        machines.add(new MachineRecord(new BlockPosition(loc), face));
+                    }
+                }
+
+                out.writeInt(machines.size());
+
+                for (MachineRecord rec : machines) {
+                    writePosition(out, rec.getPosition());
+                    out.writeUTF(rec.getFace().name());
+                }
+            }
+        }
+
+        // only replace the old snapshot once the new one is completely written
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            throw new IOException("can't move " + tmp + " to " + file);
+        }
+    }
+
+    @Nonnull
+    static List<NetRecord> read(@Nonnull File file) throws IOException {
+        List<NetRecord> res = new ArrayList<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            int version = in.readInt();
+
+            if (version != FORMAT_VERSION) {
+                throw new IOException("unsupported energy net snapshot version " + version);
+            }
+
+            int nNets = in.readInt();
+
+            for (int i = 0; i < nNets; i++) {
+                NetRecord rec = new NetRecord(in.readUTF());
+                int nCables = in.readInt();
+
+                for (int j = 0; j < nCables; j++) {
+                    rec.getCables().add(readPosition(in));
+                }
+
+                int nMachines = in.readInt();
+
+                for (int j = 0; j < nMachines; j++) {
+                    BlockPosition pos = readPosition(in);
+                    rec.getMachines().add(new MachineRecord(pos, BlockFace.valueOf(in.readUTF())));
+                }
+
+                res.add(rec);
+            }
+        }
+
+        return res;
+    }
+
+    private static void writePosition(@Nonnull DataOutputStream out, @Nonnull BlockPosition pos) throws IOException {
+        out.writeInt(pos.getX());
+        out.writeInt(pos.getY());
+        out.writeInt(pos.getZ());
+    }
+
+    @Nonnull
+    private static BlockPosition readPosition(@Nonnull DataInputStream in) throws IOException {
+        return new BlockPosition(in.readInt(), in.readInt(), in.readInt());
+    }
+}
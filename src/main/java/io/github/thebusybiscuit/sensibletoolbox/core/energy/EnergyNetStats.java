@@ -0,0 +1,124 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import me.desht.dhutils.Debugger;
+
+/**
+ * Running performance figures for the energy net system as a whole: how long
+ * nets take to build, how long each manager tick takes, and (while debugging is
+ * enabled) how often a net tick failed to conserve energy. Tick figures are averaged
+ * over the last {@link #WINDOW} ticks. Allocation is not measured here; the energy
+ * net benchmarks cover it.
+ *
+ * @see EnergyNetManager#getStats()
+ */
+public final class EnergyNetStats {
+
+    static final int WINDOW = 32;
+    // relative tolerance for floating point error when checking energy conservation
+    private static final double CONSERVATION_EPSILON = 1.0E-6;
+
+    private final long[] tickNanos = new long[WINDOW];
+    private int pos;
+    private int count;
+    private long tickStartNanos;
+
+    private long netsBuilt;
+    private long totalBuildNanos;
+    private long maxBuildNanos;
+    private long conservationFailures;
+
+    void startTick() {
+        tickStartNanos = System.nanoTime();
+    }
+
+    void endTick() {
+        tickNanos[pos] = System.nanoTime() - tickStartNanos;
+        pos = (pos + 1) % WINDOW;
+
+        if (count < WINDOW) {
+            count++;
+        }
+    }
+
+    void recordBuild(long nanos) {
+        netsBuilt++;
+        totalBuildNanos += nanos;
+        maxBuildNanos = Math.max(maxBuildNanos, nanos);
+    }
+
+    /**
+     * Check that the energy taken from a net's sources in one tick matches the
+     * energy given to its sinks.
+     *
+     * @param net
+     *            the net which was ticked
+     * @param taken
+     *            the energy actually removed from sources
+     * @param given
+     *            the energy actually added to sinks
+     */
+    void checkConservation(STBEnergyNet net, double taken, double given) {
+        if (!isConserved(taken, given)) {
+            conservationFailures++;
+            Debugger.getInstance().debug("enet #" + net.getNetID() + " did not conserve energy: took " + taken + " SCU, gave " + given + " SCU");
+        }
+    }
+
+    /**
+     * Check if the energy taken and given in a net tick match, allowing for floating
+     * point error.
+     *
+     * @param taken
+     *            the energy removed from sources
+     * @param given
+     *            the energy added to sinks
+     * @return true if energy was conserved
+     */
+    static boolean isConserved(double taken, double given) {
+        return Math.abs(taken - given) <= CONSERVATION_EPSILON * Math.max(1.0, Math.max(taken, given));
+    }
+
+    public long getNetsBuilt() {
+        return netsBuilt;
+    }
+
+    public double getAverageBuildMillis() {
+        return netsBuilt == 0 ? 0 : totalBuildNanos / (netsBuilt * 1.0E6);
+    }
+
+    public double getMaxBuildMillis() {
+        return maxBuildNanos / 1.0E6;
+    }
+
+    public double getAverageTickMillis() {
+        return average(tickNanos) / 1.0E6;
+    }
+
+    public double getMaxTickMillis() {
+        long max = 0;
+
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, tickNanos[i]);
+        }
+
+        return max / 1.0E6;
+    }
+
+    public long getConservationFailures() {
+        return conservationFailures;
+    }
+
+    private double average(long[] samples) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long total = 0;
+
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+
+        return (double) total / count;
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
+
+/**
+ * Everything the energy net code looks up in the world while building nets and
+ * changing them as cables and machines come and go: which blocks are cables or
+ * machines, and which net each cable is in. The server is asked via
+ * {@link LiveEnergyNetWorld}; tests and benchmarks use an in-memory world instead.
+ */
+interface EnergyNetWorld {
+
+    @Nullable
+    World getWorld(@Nonnull String name);
+
+    boolean isCable(@Nonnull Block b);
+
+    /**
+     * Get the machine at the given block, if any.
+     *
+     * @param b
+     *            the block to check
+     * @return the machine, or null if the block isn't one
+     */
+    @Nullable
+    ChargeableBlock getMachine(@Nonnull Block b);
+
+    /**
+     * Get the ID of the net the given cable was last added to. The net may since
+     * have been deleted.
+     *
+     * @param b
+     *            the cable
+     * @return the net ID, or null if the cable isn't in a net
+     */
+    @Nullable
+    Integer getNetID(@Nonnull Block b);
+
+    void setNetID(@Nonnull Block b, int netID);
+
+    void removeNetID(@Nonnull Block b);
+
+    /**
+     * Run a task on the next server tick, once the world has caught up with the
+     * event being handled.
+     *
+     * @param task
+     *            the task to run
+     */
+    void runTask(@Nonnull Runnable task);
+}
@@ -0,0 +1,121 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.util.Collection;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.Chargeable;
+
+/**
+ * The arithmetic of a single energy net tick: how much the sources can supply, how
+ * much the sinks need, and moving energy from one to the other. This deals only in
+ * {@link Chargeable} objects, so it can be exercised without a server.
+ *
+ * @see STBEnergyNet
+ */
+final class EnergyTransfer {
+
+    private EnergyTransfer() {}
+
+    /**
+     * Get the energy the given sources could supply in one net tick.
+     *
+     * @param sources
+     *            the energy sources
+     * @param tickRate
+     *            the number of server ticks between each energy net tick
+     * @return the total supply
+     */
+    static double getSupply(@Nonnull Collection<? extends Chargeable> sources, long tickRate) {
+        double supply = 0;
+
+        for (Chargeable machine : sources) {
+            if (machine.getCharge() > 0) {
+                supply += Math.min(machine.getCharge(), (double) machine.getChargeRate() * tickRate);
+            }
+        }
+
+        return supply;
+    }
+
+    /**
+     * Get the energy the given sinks could take in one net tick.
+     *
+     * @param sinks
+     *            the energy sinks
+     * @param tickRate
+     *            the number of server ticks between each energy net tick
+     * @return the total demand
+     */
+    static double getDemand(@Nonnull Collection<? extends Chargeable> sinks, long tickRate) {
+        double demand = 0;
+
+        for (Chargeable machine : sinks) {
+            if (machine.getCharge() < machine.getMaxCharge()) {
+                double needed = machine.getMaxCharge() - machine.getCharge();
+                demand += Math.min(needed, (double) machine.getChargeRate() * tickRate);
+            }
+        }
+
+        return demand;
+    }
+
+    /**
+     * Move energy from the sources to the sinks. If there's more supply than demand,
+     * every source gives up the same share of what it could supply; otherwise every
+     * sink gets the same share of what it needs.
+     *
+     * @param sources
+     *            the energy sources
+     * @param sinks
+     *            the energy sinks
+     * @param supply
+     *            the sources' total supply, as found by {@link #getSupply(Collection, long)}
+     * @param demand
+     *            the sinks' total demand, as found by {@link #getDemand(Collection, long)}
+     * @param tickRate
+     *            the number of server ticks between each energy net tick
+     * @param ledger
+     *            if not null, the energy actually taken from the sources and given to the
+     *            sinks, measured from the change in their charge, is stored in its first
+     *            two elements
+     * @return the total energy delivered to the sinks
+     */
+    static double transfer(@Nonnull Collection<? extends Chargeable> sources, @Nonnull Collection<? extends Chargeable> sinks, double supply, double demand, long tickRate, @Nullable double[] ledger) {
+        double ratio = demand / supply;
+        double taken = 0;
+        double given = 0;
+
+        // when there's more demand than supply, sources give all they can and sinks get a share
+        double sourceShare = Math.min(ratio, 1.0);
+        double sinkDivisor = Math.max(ratio, 1.0);
+
+        for (Chargeable source : sources) {
+            double before = source.getCharge();
+            double toTake = Math.min(before, (double) source.getChargeRate() * tickRate);
+            source.setCharge(before - toTake * sourceShare);
+
+            if (ledger != null) {
+                taken += before - source.getCharge();
+            }
+        }
+
+        for (Chargeable sink : sinks) {
+            double before = sink.getCharge();
+            double toGive = Math.min(sink.getMaxCharge() - before, (double) sink.getChargeRate() * tickRate);
+            sink.setCharge(before + toGive / sinkDivisor);
+
+            if (ledger != null) {
+                given += sink.getCharge() - before;
+            }
+        }
+
+        if (ledger != null) {
+            ledger[0] = taken;
+            ledger[1] = given;
+        }
+
+        return ratio <= 1.0 ? demand : supply;
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.metadata.FixedMetadataValue;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
+import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBMachine;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
+import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+
+/**
+ * The server's worlds, as seen by energy nets. A cable's net ID is kept in the
+ * block's metadata.
+ */
+final class LiveEnergyNetWorld implements EnergyNetWorld {
+
+    private final SensibleToolboxPlugin plugin;
+
+    LiveEnergyNetWorld(@Nonnull SensibleToolboxPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    @Nullable
+    public World getWorld(@Nonnull String name) {
+        return Bukkit.getWorld(name);
+    }
+
+    @Override
+    public boolean isCable(@Nonnull Block b) {
+        return STBUtil.isCable(b);
+    }
+
+    @Override
+    @Nullable
+    public ChargeableBlock getMachine(@Nonnull Block b) {
+        return LocationManager.getManager().get(b.getLocation(), BaseSTBMachine.class);
+    }
+
+    @Override
+    @Nullable
+    public Integer getNetID(@Nonnull Block b) {
+        return (Integer) STBUtil.getMetadataValue(b, STBEnergyNet.STB_ENET_ID);
+    }
+
+    @Override
+    public void setNetID(@Nonnull Block b, int netID) {
+        // setting metadata doesn't load the block's chunk
+        b.setMetadata(STBEnergyNet.STB_ENET_ID, new FixedMetadataValue(plugin, netID));
+    }
+
+    @Override
+    public void removeNetID(@Nonnull Block b) {
+        b.removeMetadata(STBEnergyNet.STB_ENET_ID, plugin);
+    }
+
+    @Override
+    public void runTask(@Nonnull Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+}
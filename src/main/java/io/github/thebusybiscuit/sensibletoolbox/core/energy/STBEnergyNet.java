@@ -1,25 +1,27 @@
 package io.github.thebusybiscuit.sensibletoolbox.core.energy;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.ParametersAreNonnullByDefault;
 
-import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
-import org.bukkit.metadata.FixedMetadataValue;
 
-import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
 import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
-import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBMachine;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNetListener;
 import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
-import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 import me.desht.dhutils.Debugger;
 
@@ -27,18 +29,25 @@ public class STBEnergyNet implements EnergyNet {
 
     public static final String STB_ENET_ID = "STB_ENet_ID";
     public static final int MAX_BLOCKS_IN_CABLE = 512;
+    // listeners are notified once every this many net ticks
+    private static final int LISTENER_INTERVAL = 4;
     private static int freeID = 1;
 
     private final int netID;
     private final String worldName;
     private double totalDemand;
     private double totalSupply;
+    private long ticks;
 
     private final EnergyNetManager enetManager;
     private final List<BlockPosition> cables = new ArrayList<>();
     private final Set<ChargeableBlock> machines = new HashSet<>();
     private final Set<ChargeableBlock> energySinks = new HashSet<>();
     private final Set<ChargeableBlock> energySources = new HashSet<>();
+    // cables restored from a snapshot which have not yet been checked against the world, keyed by chunk
+    private final Map<Long, List<BlockPosition>> unverifiedCables = new HashMap<>();
+    private final EnergyNetHistory history = new EnergyNetHistory();
+    private final List<EnergyNetListener> listeners = new CopyOnWriteArrayList<>();
 
     @ParametersAreNonnullByDefault
     private STBEnergyNet(String worldName, EnergyNetManager manager) {
@@ -53,10 +62,21 @@ public class STBEnergyNet implements EnergyNet {
 
     @Nonnull
     static STBEnergyNet buildNet(@Nonnull Block b, @Nonnull EnergyNetManager manager) {
+        return buildNet(b, manager, null);
+    }
+
+    /**
+     * Build a new net from the cables connected to the given one. If a list is given for
+     * them, the scan doesn't go into chunks which aren't loaded, so that it can't load
+     * them; the positions it would have looked at there are added to the list instead.
+     */
+    @Nonnull
+    static STBEnergyNet buildNet(@Nonnull Block b, @Nonnull EnergyNetManager manager, @Nullable List<BlockPosition> unloaded) {
+        long start = System.nanoTime();
         STBEnergyNet enet = new STBEnergyNet(b.getWorld().getName(), manager);
 
         Set<Object> blocks = new HashSet<>();
-        recursiveScan(b, blocks, BlockFace.SELF);
+        recursiveScan(manager.getNetWorld(), b, blocks, BlockFace.SELF, unloaded);
 
         for (Object o : blocks) {
             if (o instanceof Block) {
@@ -67,27 +87,135 @@ public class STBEnergyNet implements EnergyNet {
             }
         }
 
-        enet.findSourcesAndSinks();
-        Debugger.getInstance().debug("built new net #" + enet.getNetID() + " with " + enet.cables.size() + " cables & " + enet.machines.size() + " machines");
+        manager.getStats().recordBuild(System.nanoTime() - start);
+        Debugger.getInstance().debug("built new net #" + enet.getNetID() + " with " + enet.cables.size() + " cables & " + enet.machines.size() + " machines (" + enet.energySources.size() + " sources, " + enet.energySinks.size() + " sinks)");
+        return enet;
+    }
+
+    /**
+     * Restore a net from a persisted snapshot without scanning the world. Cable
+     * positions are trusted for now, and are verified later on, chunk by chunk, as
+     * the chunks containing them become loaded; see {@link #verifyLoadedChunks(World, List)}.
+     *
+     * @param rec
+     *            the persisted net
+     * @param world
+     *            the world the net is in
+     * @param manager
+     *            the energy net manager
+     * @return the restored net
+     */
+    @Nonnull
+    @ParametersAreNonnullByDefault
+    static STBEnergyNet restore(EnergyNetSnapshot.NetRecord rec, World world, EnergyNetManager manager) {
+        STBEnergyNet enet = new STBEnergyNet(world.getName(), manager);
+
+        for (BlockPosition pos : rec.getCables()) {
+            // getBlockAt() doesn't load the chunk, and neither does recording the net ID
+            manager.getNetWorld().setNetID(world.getBlockAt(pos.getX(), pos.getY(), pos.getZ()), enet.getNetID());
+            enet.cables.add(pos);
+            enet.unverifiedCables.computeIfAbsent(getChunkKey(pos), k -> new ArrayList<>()).add(pos);
+        }
+
+        Debugger.getInstance().debug("restored net #" + enet.getNetID() + " with " + enet.cables.size() + " cables");
         return enet;
     }
 
+    private static long getChunkKey(@Nonnull BlockPosition pos) {
+        return ((long) (pos.getX() >> 4) << 32) | ((pos.getZ() >> 4) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Check whether this net still has restored cables which haven't been verified
+     * against the world.
+     *
+     * @return true if verification is still pending
+     */
+    boolean isVerificationPending() {
+        return !unverifiedCables.isEmpty();
+    }
+
+    /**
+     * Verify any restored cables in currently loaded chunks. Cables in chunks which
+     * aren't loaded are left alone, so this never causes a chunk load.
+     * <p>
+     * Cables placed while the server was down aren't in the snapshot, so each verified
+     * cable's neighbours are checked too. Neighbouring cables which aren't in any net
+     * need connecting to this one; they are added to the given list, along with any
+     * neighbours in chunks which aren't loaded and so couldn't be checked.
+     *
+     * @param world
+     *            the world this net is in
+     * @param neighbours
+     *            a list to add neighbouring positions which need connecting to
+     * @return false if a restored cable is no longer present, meaning this net must be rebuilt
+     */
+    boolean verifyLoadedChunks(@Nonnull World world, @Nonnull List<BlockPosition> neighbours) {
+        Iterator<Map.Entry<Long, List<BlockPosition>>> iter = unverifiedCables.entrySet().iterator();
+
+        while (iter.hasNext()) {
+            Map.Entry<Long, List<BlockPosition>> entry = iter.next();
+            long key = entry.getKey();
+
+            if (world.isChunkLoaded((int) (key >> 32), (int) key)) {
+                for (BlockPosition pos : entry.getValue()) {
+                    if (!enetManager.getNetWorld().isCable(world.getBlockAt(pos.getX(), pos.getY(), pos.getZ()))) {
+                        Debugger.getInstance().debug("Enet #" + getNetID() + ": restored cable @ " + pos + " is missing");
+                        return false;
+                    }
+
+                    findUnconnectedNeighbours(world, pos, neighbours);
+                }
+
+                iter.remove();
+            }
+        }
+
+        return true;
+    }
+
+    private void findUnconnectedNeighbours(@Nonnull World world, @Nonnull BlockPosition pos, @Nonnull List<BlockPosition> neighbours) {
+        for (BlockFace face : STBUtil.getDirectBlockFaces()) {
+            int x = pos.getX() + face.getModX();
+            int y = pos.getY() + face.getModY();
+            int z = pos.getZ() + face.getModZ();
+
+            if (!world.isChunkLoaded(x >> 4, z >> 4)) {
+                // across the edge of the chunk; it can be checked once that chunk loads
+                neighbours.add(new BlockPosition(x, y, z));
+            } else {
+                Block b = world.getBlockAt(x, y, z);
+
+                if (enetManager.getNetWorld().isCable(b) && enetManager.getEnergyNet(b) == null) {
+                    neighbours.add(new BlockPosition(x, y, z));
+                }
+            }
+        }
+    }
+
     /**
      * Recursively scan blocks attached to this block for cables and machines. Machines are added to the
      * list of discovered blocks, but scanning stops where a machine is encountered.
      *
+     * @param netWorld
+     *            the world to look up cables and machines in
      * @param b
      *            the block being checked
      * @param discovered
      *            set of discovered blocks so far
      */
-    private static void recursiveScan(Block b, Set<Object> discovered, BlockFace fromDir) {
+    private static void recursiveScan(EnergyNetWorld netWorld, Block b, Set<Object> discovered, BlockFace fromDir, @Nullable List<BlockPosition> unloaded) {
         if (discovered.size() > MAX_BLOCKS_IN_CABLE || discovered.contains(b)) {
             return;
         }
 
-        if (!STBUtil.isCable(b)) {
-            BaseSTBMachine machine = LocationManager.getManager().get(b.getLocation(), BaseSTBMachine.class);
+        if (unloaded != null && !b.getWorld().isChunkLoaded(b.getX() >> 4, b.getZ() >> 4)) {
+            unloaded.add(new BlockPosition(b.getX(), b.getY(), b.getZ()));
+            return;
+        }
+
+        if (!netWorld.isCable(b)) {
+            ChargeableBlock machine = netWorld.getMachine(b);
 
             if (machine != null) {
                 discovered.add(new AdjacentMachine(machine, fromDir));
@@ -96,13 +224,15 @@ public class STBEnergyNet implements EnergyNet {
             discovered.add(b);
 
             for (BlockFace face : STBUtil.getDirectBlockFaces()) {
-                recursiveScan(b.getRelative(face), discovered, face.getOppositeFace());
+                recursiveScan(netWorld, b.getRelative(face), discovered, face.getOppositeFace(), unloaded);
             }
         }
     }
 
     /**
      * Determine which machines on this net can supply energy, and which consume it.
+     * This re-evaluates every machine on the net; when only a single machine has
+     * changed, prefer {@link #updateMachine(ChargeableBlock)}.
      */
     @Override
     public void findSourcesAndSinks() {
@@ -110,17 +240,41 @@ public class STBEnergyNet implements EnergyNet {
         energySources.clear();
 
         for (ChargeableBlock machine : machines) {
-            for (BlockFace face : machine.getFacesForNet(this)) {
-                if (machine.acceptsEnergy(face)) {
-                    energySinks.add(machine);
-                } else if (machine.suppliesEnergy(face)) {
-                    energySources.add(machine);
-                }
-            }
+            classify(machine);
         }
         Debugger.getInstance().debug("Energy net #" + getNetID() + ": found " + energySources.size() + " sources and " + energySinks.size() + " sinks");
     }
 
+    @Override
+    public void updateMachine(@Nonnull ChargeableBlock machine) {
+        if (!machines.contains(machine)) {
+            return;
+        }
+
+        energySinks.remove(machine);
+        energySources.remove(machine);
+        classify(machine);
+        Debugger.getInstance().debug(2, "Energy net #" + getNetID() + ": reclassified " + machine + ", now " + energySources.size() + " sources and " + energySinks.size() + " sinks");
+    }
+
+    /**
+     * Add the given machine to the sources and/or sinks of this net, according to
+     * the faces on which it is attached. The caller is responsible for removing any
+     * previous classification of the machine first.
+     *
+     * @param machine
+     *            the machine to classify
+     */
+    private void classify(@Nonnull ChargeableBlock machine) {
+        for (BlockFace face : machine.getFacesForNet(this)) {
+            if (machine.acceptsEnergy(face)) {
+                energySinks.add(machine);
+            } else if (machine.suppliesEnergy(face)) {
+                energySources.add(machine);
+            }
+        }
+    }
+
     @Override
     public int getNetID() {
         return netID;
@@ -129,46 +283,77 @@ public class STBEnergyNet implements EnergyNet {
     void addMachine(ChargeableBlock machine, BlockFace face) {
         machine.attachToEnergyNet(this, face);
         machines.add(machine);
-        findSourcesAndSinks();
+        // the machine may already be attached on another face, so start from scratch
+        energySinks.remove(machine);
+        energySources.remove(machine);
+        classify(machine);
         Debugger.getInstance().debug("Enet #" + getNetID() + ": added machine " + machine + " on face " + face);
     }
 
     void removeMachine(ChargeableBlock machine) {
         machine.detachFromEnergyNet(this);
         machines.remove(machine);
-        findSourcesAndSinks();
+        energySinks.remove(machine);
+        energySources.remove(machine);
         Debugger.getInstance().debug("Enet #" + getNetID() + ": removed machine " + machine);
     }
 
+    /**
+     * Get the name of the world this net is in.
+     *
+     * @return the world name
+     */
+    @Nonnull
+    public String getWorldName() {
+        return worldName;
+    }
+
+    @Nonnull
+    List<BlockPosition> getCables() {
+        return Collections.unmodifiableList(cables);
+    }
+
+    @Nonnull
+    Set<ChargeableBlock> getMachines() {
+        return Collections.unmodifiableSet(machines);
+    }
+
     void addCable(Block cable) {
-        cable.setMetadata(STB_ENET_ID, new FixedMetadataValue(SensibleToolboxPlugin.getInstance(), getNetID()));
+        enetManager.getNetWorld().setNetID(cable, getNetID());
         cables.add(new BlockPosition(cable.getLocation()));
         Debugger.getInstance().debug("Enet #" + getNetID() + ": added cable @ " + cable);
     }
 
     void removeCable(Block cable) {
-        cable.removeMetadata(STB_ENET_ID, SensibleToolboxPlugin.getInstance());
+        enetManager.getNetWorld().removeNetID(cable);
         cables.remove(new BlockPosition(cable.getLocation()));
         Debugger.getInstance().debug("Enet #" + getNetID() + ": removed cable @ " + cable);
     }
 
     public void shutdown() {
-        World w = Bukkit.getWorld(worldName);
+        World w = enetManager.getNetWorld().getWorld(worldName);
 
         if (w != null) {
             for (BlockPosition pos : cables) {
                 Block b = w.getBlockAt(pos.getX(), pos.getY(), pos.getZ());
-                b.removeMetadata(STB_ENET_ID, SensibleToolboxPlugin.getInstance());
+                enetManager.getNetWorld().removeNetID(b);
             }
         }
 
         cables.clear();
+        unverifiedCables.clear();
 
         for (ChargeableBlock machine : machines) {
             machine.detachFromEnergyNet(this);
         }
 
         machines.clear();
+
+        for (EnergyNetListener listener : listeners) {
+            listener.onEnergyNetRemoved(this);
+        }
+
+        listeners.clear();
         Debugger.getInstance().debug("Enet #" + getNetID() + " shutdown complete");
     }
 
@@ -208,52 +393,42 @@ public class STBEnergyNet implements EnergyNet {
     }
 
     void tick() {
-        totalDemand = totalSupply = 0;
-
         long tickRate = enetManager.getTickRate();
+        totalSupply = EnergyTransfer.getSupply(energySources, tickRate);
+        totalDemand = EnergyTransfer.getDemand(energySinks, tickRate);
 
-        for (ChargeableBlock machine : energySources) {
-            if (machine.getCharge() > 0) {
-                totalSupply += Math.min(machine.getCharge(), (double) machine.getChargeRate() * tickRate);
-            }
-        }
+        double delivered = 0;
 
-        for (ChargeableBlock machine : energySinks) {
-            if (machine.getCharge() < machine.getMaxCharge()) {
-                double needed = machine.getMaxCharge() - machine.getCharge();
-                needed = Math.min(needed, (double) machine.getChargeRate() * tickRate);
-                totalDemand += needed;
-            }
+        if (totalDemand > 0 && totalSupply > 0) {
+            delivered = transferEnergy(tickRate);
         }
 
-        if (totalDemand <= 0 || totalSupply <= 0) {
-            return;
-        }
-
-        double ratio = totalDemand / totalSupply;
+        history.record(totalSupply / tickRate, totalDemand / tickRate, delivered / tickRate, (totalDemand - delivered) / tickRate);
 
-        if (ratio <= 1.0) {
-            // there's enough power to supply all sinks
-            for (ChargeableBlock source : energySources) {
-                double toTake = Math.min(source.getCharge(), (double) source.getChargeRate() * tickRate);
-                source.setCharge(source.getCharge() - toTake * ratio);
+        if (!listeners.isEmpty() && ++ticks % LISTENER_INTERVAL == 0) {
+            for (EnergyNetListener listener : listeners) {
+                listener.onEnergyNetUpdate(this);
             }
+        }
+    }
 
-            for (ChargeableBlock sink : energySinks) {
-                double toGive = Math.min(sink.getMaxCharge() - sink.getCharge(), (double) sink.getChargeRate() * tickRate);
-                sink.setCharge(sink.getCharge() + toGive);
-            }
+    /**
+     * Move energy from this net's sources to its sinks. Energy conservation is only
+     * checked while debugging is enabled, since it means reading every machine's
+     * charge a second time.
+     *
+     * @param tickRate
+     *            the number of server ticks between each energy net tick
+     * @return the total energy delivered to the sinks
+     */
+    private double transferEnergy(long tickRate) {
+        if (Debugger.getInstance().getLevel() > 0) {
+            double[] ledger = new double[2];
+            double delivered = EnergyTransfer.transfer(energySources, energySinks, totalSupply, totalDemand, tickRate, ledger);
+            enetManager.getStats().checkConservation(this, ledger[0], ledger[1]);
+            return delivered;
         } else {
-            // more demand than supply!
-            for (ChargeableBlock source : energySources) {
-                double toTake = Math.min(source.getCharge(), (double) source.getChargeRate() * tickRate);
-                source.setCharge(source.getCharge() - toTake);
-            }
-
-            for (ChargeableBlock sink : energySinks) {
-                double toGive = Math.min(sink.getMaxCharge() - sink.getCharge(), (double) sink.getChargeRate() * tickRate);
-                sink.setCharge(sink.getCharge() + toGive / ratio);
-            }
+            return EnergyTransfer.transfer(energySources, energySinks, totalSupply, totalDemand, tickRate, null);
         }
     }
 
@@ -266,4 +441,36 @@ public class STBEnergyNet implements EnergyNet {
     public double getSupply() {
         return totalSupply / enetManager.getTickRate();
     }
+
+    @Override
+    public double getAverageSupply() {
+        return history.getAverageSupply();
+    }
+
+    @Override
+    public double getAverageDemand() {
+        return history.getAverageDemand();
+    }
+
+    @Override
+    public double getAverageDelivered() {
+        return history.getAverageDelivered();
+    }
+
+    @Override
+    public double getAverageShortfall() {
+        return history.getAverageShortfall();
+    }
+
+    @Override
+    public void addListener(@Nonnull EnergyNetListener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeListener(@Nonnull EnergyNetListener listener) {
+        listeners.remove(listener);
+    }
 }
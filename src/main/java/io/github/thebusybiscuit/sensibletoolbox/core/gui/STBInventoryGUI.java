@@ -358,23 +358,22 @@ public class STBInventoryGUI implements InventoryGUI {
 
     @Override
     public String freezeSlots(int... slots) {
-        int invSize = STBUtil.roundUp(slots.length, 9);
-        Inventory tmpInv = Bukkit.createInventory(null, invSize);
+        ItemStack[] items = new ItemStack[slots.length];
 
         for (int i = 0; i < slots.length; i++) {
-            tmpInv.setItem(i, inventory.getItem(slots[i]));
+            items[i] = inventory.getItem(slots[i]);
         }
 
-        return BukkitSerialization.toBase64(tmpInv, slots.length);
+        return BukkitSerialization.encodeItems(items);
     }
 
     @Override
     public void thawSlots(String frozen, int... slots) {
         if (frozen != null && !frozen.isEmpty() && slots.length > 0) {
             try {
-                Inventory tmpInv = BukkitSerialization.fromBase64(frozen);
+                ItemStack[] items = BukkitSerialization.decodeItems(frozen);
                 for (int i = 0; i < slots.length; i++) {
-                    inventory.setItem(slots[i], tmpInv.getItem(i));
+                    inventory.setItem(slots[i], i < items.length ? items[i] : null);
                 }
             } catch (IOException e) {
                 LogUtils.severe("can't restore inventory for " + getOwningItem().getItemName());
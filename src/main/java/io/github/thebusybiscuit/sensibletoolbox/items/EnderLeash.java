@@ -36,7 +36,6 @@ import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.inventory.EquipmentSlot;
-import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapedRecipe;
@@ -309,10 +308,10 @@ public class EnderLeash extends BaseSTBItem {
                 abstractHorse.setMaxDomestication(conf.getInt("maxDomestication"));
 
                 try {
-                    Inventory inv = BukkitSerialization.fromBase64(conf.getString("inventory"));
+                    ItemStack[] items = BukkitSerialization.decodeItems(conf.getString("inventory"));
 
-                    for (int i = 0; i < abstractHorse.getInventory().getSize(); i++) {
-                        abstractHorse.getInventory().setItem(i, inv.getItem(i));
+                    for (int i = 0; i < abstractHorse.getInventory().getSize() && i < items.length; i++) {
+                        abstractHorse.getInventory().setItem(i, items[i]);
                     }
                 } catch (IOException e) {
                     getProviderPlugin().getLogger().log(Level.WARNING, "Could not restore Horse Inventory", e);
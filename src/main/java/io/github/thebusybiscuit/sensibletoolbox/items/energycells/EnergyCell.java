@@ -9,6 +9,7 @@ import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.block.Action;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.LeatherArmorMeta;
@@ -108,9 +109,14 @@ public abstract class EnergyCell extends BaseSTBItem implements Chargeable {
                     if (toTransfer > 0) {
                         toTransfer = Math.min(toTransfer, getCharge());
                         setCharge(getCharge() - toTransfer);
-                        player.setItemInHand(toItemStack());
+                        updateHeldItemCharge(player, EquipmentSlot.HAND);
                         c.setCharge(c.getCharge() + toTransfer);
-                        player.getInventory().setItem(slot, item.toItemStack());
+
+                        if (!item.updateCharge(stack)) {
+                            stack = item.toItemStack(stack.getAmount());
+                        }
+
+                        player.getInventory().setItem(slot, stack);
                         break;
                     }
                 }
@@ -1,5 +1,8 @@
 package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -23,6 +26,8 @@ public class AdvancedSenderModule extends DirectionalItemRouterModule {
     private static final int RANGE = 24;
     private static final int RANGE2 = RANGE * RANGE;
     private Location linkedLoc;
+    // the router at linkedLoc, once it has been looked up
+    private ItemRouter linkedRouter;
 
     public AdvancedSenderModule() {
         linkedLoc = null;
@@ -101,30 +106,83 @@ public class AdvancedSenderModule extends DirectionalItemRouterModule {
         }
     }
 
+    /**
+     * Get the location this module is linked to, in the form used to key the items
+     * queued for it.
+     *
+     * @return the formatted linked location, or null if not linked
+     */
+    @Nullable
+    public String getLink() {
+        return linkedLoc == null ? null : MiscUtil.formatLocation(linkedLoc);
+    }
+
     public void linkToRouter(ItemRouter rtr) {
         linkedLoc = rtr == null ? null : rtr.getLocation();
+        linkedRouter = rtr;
+    }
+
+    /**
+     * Get the router this module is linked to. The router is looked up once and then
+     * kept, for as long as it is still registered at the linked location.
+     *
+     * @return the linked router, or null if there is none
+     */
+    @Nullable
+    private ItemRouter getLinkedRouter() {
+        if (linkedRouter != null) {
+            Location loc = linkedRouter.getLocation();
+
+            if (loc != null && loc.getWorld().equals(linkedLoc.getWorld()) && loc.getBlockX() == linkedLoc.getBlockX() && loc.getBlockY() == linkedLoc.getBlockY() && loc.getBlockZ() == linkedLoc.getBlockZ()) {
+                return linkedRouter;
+            }
+        }
+
+        // not looked up yet, or broken or moved since
+        linkedRouter = SensibleToolbox.getBlockAt(linkedLoc, ItemRouter.class, false);
+        return linkedRouter;
     }
 
     protected boolean inRange(Location ourLoc) {
-        return ourLoc != null && ourLoc.getWorld().equals(linkedLoc.getWorld()) && ourLoc.distanceSquared(linkedLoc) <= RANGE2;
+        return ourLoc != null && linkedLoc.isWorldLoaded() && ourLoc.getWorld().equals(linkedLoc.getWorld()) && ourLoc.distanceSquared(linkedLoc) <= RANGE2;
+    }
+
+    /**
+     * Check if the linked location can be accessed without loading anything.
+     *
+     * @return true if the linked location's world and chunk are both loaded
+     */
+    private boolean isLinkLoaded() {
+        return linkedLoc.isWorldLoaded() && linkedLoc.getWorld().isChunkLoaded(linkedLoc.getBlockX() >> 4, linkedLoc.getBlockZ() >> 4);
     }
 
     @Override
     public boolean execute(Location loc) {
-        if (getItemRouter() != null && getItemRouter().getBufferItem() != null && linkedLoc != null) {
-            if (getFilter() != null && !getFilter().shouldPass(getItemRouter().getBufferItem())) {
-                return false;
+        if (getItemRouter() != null && linkedLoc != null) {
+            if (!isLinkLoaded()) {
+                // never load the receiver's chunk (or world) just to send it items
+                return queueItems(loc);
             }
 
-            ItemRouter otherRouter = SensibleToolbox.getBlockAt(linkedLoc, ItemRouter.class, false);
+            ItemRouter otherRouter = getLinkedRouter();
+            ReceiverModule mod = otherRouter == null ? null : otherRouter.getReceiver();
+            String link = MiscUtil.formatLocation(linkedLoc);
 
-            if (otherRouter != null) {
-                if (!inRange(loc)) {
-                    return false;
+            if (mod == null) {
+                // the receiver has gone; anything queued for it would otherwise sit there for good
+                if (getItemRouter().getQueuedItems(link) != null) {
+                    getItemRouter().returnQueuedItems(link);
+                    return true;
                 }
+            } else if (inRange(loc)) {
+                ItemStack queued = getItemRouter().getQueuedItems(link);
 
-                ReceiverModule mod = otherRouter.getReceiver();
-                if (mod != null) {
+                if (queued != null) {
+                    // anything queued while the receiver was unloaded goes first
+                    return sendQueuedItems(mod, link, queued) > 0;
+                }
+
+                if (getItemRouter().getBufferItem() != null && (getFilter() == null || getFilter().shouldPass(getItemRouter().getBufferItem()))) {
                     return sendItems(mod) > 0;
                 }
             }
@@ -132,12 +190,90 @@ public class AdvancedSenderModule extends DirectionalItemRouterModule {
         return false;
     }
 
+    /**
+     * Get the receiver this module would send the given items to, if it would send
+     * them right now.
+     *
+     * @param loc
+     *            the location of this module's router
+     * @param items
+     *            the items to check
+     * @return the linked receiver, or null if the items would not be sent to it
+     */
+    @Nullable
+    public ReceiverModule getRelayTarget(@Nonnull Location loc, @Nonnull ItemStack items) {
+        if (linkedLoc == null || (getFilter() != null && !getFilter().shouldPass(items)) || !isLinkLoaded() || !inRange(loc)) {
+            return null;
+        }
+
+        if (getItemRouter().getQueuedItems(MiscUtil.formatLocation(linkedLoc)) != null) {
+            // queued items must be delivered first
+            return null;
+        }
+
+        ItemRouter otherRouter = getLinkedRouter();
+        return otherRouter == null ? null : otherRouter.getReceiver();
+    }
+
+    /**
+     * Move items from the router's buffer into the queue for this module's link,
+     * up to a single stack. The queue is kept by the router, and is delivered once
+     * the receiver's chunk is loaded again.
+     *
+     * @param loc
+     *            the location of the sending router
+     * @return true if any items were queued
+     */
+    private boolean queueItems(@Nonnull Location loc) {
+        ItemStack buffer = getItemRouter().getBufferItem();
+
+        if (buffer == null || (getFilter() != null && !getFilter().shouldPass(buffer)) || !inRange(loc)) {
+            return false;
+        }
+
+        String link = MiscUtil.formatLocation(linkedLoc);
+        ItemStack queued = getItemRouter().getQueuedItems(link);
+
+        if (queued != null && !queued.isSimilar(buffer)) {
+            // only one kind of item can be queued at a time
+            return false;
+        }
+
+        int space = buffer.getMaxStackSize() - (queued == null ? 0 : queued.getAmount());
+        int nToQueue = Math.min(Math.min(getItemRouter().getStackSize(), buffer.getAmount()), space);
+
+        if (nToQueue <= 0) {
+            return false;
+        }
+
+        ItemStack newQueued = buffer.clone();
+        newQueued.setAmount(nToQueue + (queued == null ? 0 : queued.getAmount()));
+        getItemRouter().reduceBuffer(nToQueue);
+        getItemRouter().setQueuedItems(link, newQueued);
+        Debugger.getInstance().debug(2, getItemRouter() + ": adv.sender queued " + nToQueue + " items for unloaded receiver at " + link);
+        return true;
+    }
+
+    private int sendQueuedItems(@Nonnull ReceiverModule receiver, @Nonnull String link, @Nonnull ItemStack queued) {
+        ItemStack toSend = queued.clone();
+        toSend.setAmount(Math.min(getItemRouter().getStackSize(), queued.getAmount()));
+        int received = sendToReceiver(receiver, toSend);
+
+        if (received > 0) {
+            ItemStack rest = queued.clone();
+            rest.setAmount(queued.getAmount() - received);
+            getItemRouter().setQueuedItems(link, rest);
+        }
+
+        return received;
+    }
+
     private int sendItems(ReceiverModule receiver) {
         Debugger.getInstance().debug(this.getItemRouter() + ": adv.sender sending items to receiver module in " + receiver.getItemRouter());
         int nToSend = getItemRouter().getStackSize();
         ItemStack toSend = getItemRouter().getBufferItem().clone();
         toSend.setAmount(Math.min(nToSend, toSend.getAmount()));
-        int received = receiver.receiveItem(toSend, getItemRouter().getOwner());
+        int received = sendToReceiver(receiver, toSend);
         getItemRouter().reduceBuffer(received);
         return received;
     }
@@ -2,7 +2,6 @@ package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
 import java.util.Collection;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Effect;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -44,7 +43,7 @@ public class BreakerModule extends DirectionalItemRouterModule {
         ItemStack inBuffer = getItemRouter().getBufferItem();
 
         if (inBuffer == null || inBuffer.isSimilar(mainDrop) && inBuffer.getAmount() < inBuffer.getMaxStackSize()) {
-            if (getFilter().shouldPass(mainDrop) && SensibleToolbox.getProtectionManager().hasPermission(Bukkit.getOfflinePlayer(getItemRouter().getOwner()), b, Interaction.BREAK_BLOCK)) {
+            if (getFilter().shouldPass(mainDrop) && SensibleToolbox.getPluginInstance().getProtectionCache().hasPermission(getItemRouter().getOwner(), b, Interaction.BREAK_BLOCK)) {
                 if (inBuffer == null) {
                     getItemRouter().setBufferItem(mainDrop);
                 } else {
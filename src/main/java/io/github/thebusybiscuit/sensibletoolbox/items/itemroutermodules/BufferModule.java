@@ -0,0 +1,40 @@
+package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.inventory.Recipe;
+import org.bukkit.inventory.ShapelessRecipe;
+
+public class BufferModule extends ItemRouterModule {
+
+    public BufferModule() {}
+
+    public BufferModule(ConfigurationSection conf) {
+        super(conf);
+    }
+
+    @Override
+    public String getItemName() {
+        return "I.R. Mod: Buffer Upgrade";
+    }
+
+    @Override
+    public String[] getLore() {
+        return new String[] { "Insert into an Item Router", "Passive module; each buffer module", "adds an extra buffer slot, so the", "router can carry several item types", "at once, one slot per item type.", "Each slot is processed by the", "modules set to work on it, or on", "all slots. Any modules over 3", "are ignored." };
+    }
+
+    @Override
+    public Recipe getMainRecipe() {
+        BlankModule bm = new BlankModule();
+        registerCustomIngredients(bm);
+        ShapelessRecipe recipe = new ShapelessRecipe(getKey(), toItemStack());
+        recipe.addIngredient(bm.getMaterial());
+        recipe.addIngredient(Material.CHEST);
+        return recipe;
+    }
+
+    @Override
+    public Material getMaterial() {
+        return Material.LEATHER;
+    }
+}
@@ -2,6 +2,10 @@ package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Predicate;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
@@ -20,6 +24,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.material.Directional;
 
 import io.github.bakedlibs.dough.items.ItemUtils;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.filters.Filter;
@@ -30,9 +35,13 @@ import io.github.thebusybiscuit.sensibletoolbox.api.gui.InventoryGUI;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.SlotType;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.DirectionGadget;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.FilterTypeGadget;
+import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.NumericGadget;
 import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.ToggleButton;
 import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.blocks.router.ItemRouter;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.RouterNetworkPlanner;
+import io.github.thebusybiscuit.sensibletoolbox.helpers.IntRange;
+import io.github.thebusybiscuit.sensibletoolbox.helpers.Validate;
 import io.github.thebusybiscuit.sensibletoolbox.utils.UnicodeSymbol;
 import io.github.thebusybiscuit.sensibletoolbox.utils.VanillaInventoryUtils;
 
@@ -40,6 +49,9 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
 
     private static final String LIST_ITEM = ChatColor.LIGHT_PURPLE + UnicodeSymbol.CENTERED_POINT.toUnicode() + " " + ChatColor.AQUA;
 
+    // how long a puller will skip polling an unchanged inventory before checking anyway
+    private static final long MAX_IDLE_TICKS = 100;
+
     private static final ItemStack WHITE_BUTTON = GUIUtil.makeTexture(Material.WHITE_WOOL, ChatColor.WHITE.toString() + ChatColor.UNDERLINE + "Whitelist", "Module will only process", "items which match the filter.");
     private static final ItemStack BLACK_BUTTON = GUIUtil.makeTexture(Material.BLACK_WOOL, ChatColor.WHITE.toString() + ChatColor.UNDERLINE + "Blacklist", "Module will NOT process", "items which match the filter.");
     private static final ItemStack OFF_BUTTON = GUIUtil.makeTexture(Material.LIGHT_BLUE_STAINED_GLASS, ChatColor.WHITE.toString() + ChatColor.UNDERLINE + "Termination OFF", "Subsequent modules in the", "Item Router will process items", "as normal.");
@@ -47,11 +59,18 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
 
     public static final int FILTER_LABEL_SLOT = 0;
     public static final int DIRECTION_LABEL_SLOT = 5;
+    public static final int BUFFER_SLOT_GADGET_SLOT = 31;
     private final Filter filter;
     private BlockFace direction;
     private boolean terminator;
+    // the buffer slot this module works on, counting from 1; 0 means every slot
+    private int bufferSlot;
     private InventoryGUI gui;
     private final int[] filterSlots = { 1, 2, 3, 10, 11, 12, 19, 20, 21 };
+    // only used by modules which send to receivers
+    private RouterNetworkPlanner.Route route;
+    // for each buffer slot, set when a pull from a vanilla inventory found nothing to take; see doPull()
+    private final IdleState[] idleStates = new IdleState[ItemRouter.MAX_BUFFER_SLOTS];
 
     /**
      * Run this module's action.
@@ -72,6 +91,7 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
         super(conf);
         setFacingDirection(BlockFace.valueOf(conf.getString("direction")));
         setTerminator(conf.getBoolean("terminator", false));
+        setBufferSlot(conf.getInt("bufferSlot", 0));
 
         if (conf.contains("filtered")) {
             boolean isWhite = conf.getBoolean("filterWhitelist", true);
@@ -89,6 +109,7 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
         YamlConfiguration conf = super.freeze();
         conf.set("direction", getFacing().toString());
         conf.set("terminator", isTerminator());
+        conf.set("bufferSlot", getBufferSlot());
 
         if (filter != null) {
             conf.set("filtered", filter.getFilterList());
@@ -112,6 +133,10 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
                 lore[0] += ", " + ChatColor.BOLD + "Terminating";
             }
 
+            if (bufferSlot > 0) {
+                lore[0] += ChatColor.GOLD + ", buffer slot " + bufferSlot;
+            }
+
             lore[1] = ChatColor.GOLD + filter.getFilterType().getLabel();
             int i = 2;
 
@@ -153,6 +178,32 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
         this.terminator = terminator;
     }
 
+    /**
+     * Get the item router buffer slot this module works on. Modules bound to different
+     * slots give each slot its own filtering.
+     *
+     * @return the buffer slot, counting from 1, or 0 if the module works on every slot
+     */
+    public int getBufferSlot() {
+        return bufferSlot;
+    }
+
+    public void setBufferSlot(int bufferSlot) {
+        Validate.isTrue(bufferSlot >= 0 && bufferSlot <= ItemRouter.MAX_BUFFER_SLOTS, "Invalid buffer slot: " + bufferSlot);
+        this.bufferSlot = bufferSlot;
+    }
+
+    /**
+     * Check if this module works on the given item router buffer slot.
+     *
+     * @param slot
+     *            the buffer slot, counting from 0 as {@link ItemRouter#getActiveBufferSlot()} does
+     * @return true if the module should run on that slot
+     */
+    public boolean worksOnBufferSlot(int slot) {
+        return bufferSlot == 0 || bufferSlot == slot + 1;
+    }
+
     @Override
     public void onInteractItem(PlayerInteractEvent event) {
         if (event.getAction() == Action.LEFT_CLICK_BLOCK) {
@@ -205,9 +256,26 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
         GUIUtil.setDisplayName(texture, "No Direction");
         inventory.addGadget(new DirectionGadget(inventory, 16, texture));
 
+        inventory.addGadget(new NumericGadget(inventory, BUFFER_SLOT_GADGET_SLOT, "Buffer Slot (0 = all)", new IntRange(0, ItemRouter.MAX_BUFFER_SLOTS), getBufferSlot(), 1, ItemRouter.MAX_BUFFER_SLOTS, newValue -> {
+            setBufferSlot(newValue);
+            return true;
+        }));
+        addConfigurationGadgets(inventory);
+
         return inventory;
     }
 
+    /**
+     * Add any extra gadgets to this module's configuration GUI. Slots 22-25 and 32-35
+     * are free for subclasses to use.
+     *
+     * @param inventory
+     *            the configuration GUI
+     */
+    protected void addConfigurationGadgets(@Nonnull InventoryGUI inventory) {
+        // nothing by default
+    }
+
     private void populateFilterInventory(Inventory inv) {
         int n = 0;
         for (ItemStack stack : filter.getFilterList()) {
@@ -274,34 +342,176 @@ public abstract class DirectionalItemRouterModule extends ItemRouterModule imple
     }
 
     protected boolean doPull(BlockFace from, Location loc) {
-        ItemStack inBuffer = getItemRouter().getBufferItem();
+        ItemRouter router = getItemRouter();
+        ItemKey bufferKey = router.getBufferKey();
+
+        if (bufferKey != null && router.getBufferAmount() >= bufferKey.getMaxStackSize()) {
+            return false;
+        }
+
+        int nToPull = router.getStackSize();
+        // the router keeps track of what's next to it, so there's no need to look at the world here
+        STBInventoryHolder holder = router.getNeighbourHolder(getFacing());
+
+        if (holder != null) {
+            return pullFromHolder(holder, from.getOppositeFace(), nToPull, bufferKey);
+        } else if (!router.hasVanillaNeighbour(getFacing())) {
+            return false;
+        }
 
-        if (inBuffer != null && inBuffer.getAmount() >= inBuffer.getType().getMaxStackSize()) {
+        ItemStack inBuffer = router.getBufferItem();
+        Block target = getTargetLocation(loc).getBlock();
+        long stamp = SensibleToolbox.getPluginInstance().getInventoryChangeTracker().watch(target);
+        int slot = router.getActiveBufferSlot();
+
+        if (idleStates[slot] == null) {
+            idleStates[slot] = new IdleState();
+        }
+
+        IdleState idle = idleStates[slot];
+
+        if (idle.matches(stamp, inBuffer, router, getFilter())) {
+            // nothing has changed since the last pull found nothing
+            return false;
+        }
+
+        // an empty slot mustn't take items which another slot already holds
+        Predicate<ItemStack> exclude = inBuffer == null ? router::isHeldInOtherSlot : null;
+        ItemStack pulled = VanillaInventoryUtils.pullFromInventory(target, nToPull, inBuffer, getFilter(), exclude, router.getOwner());
+
+        if (pulled == null) {
+            idle.set(stamp, inBuffer, router, getFilter());
             return false;
         }
 
-        int nToPull = getItemRouter().getStackSize();
-        Location targetLoc = getTargetLocation(loc);
-        ItemStack pulled;
-        BaseSTBBlock stb = SensibleToolbox.getBlockAt(targetLoc, true);
+        idle.stamp = -1;
+        router.setBufferItem(inBuffer == null ? pulled : inBuffer);
+        return true;
+    }
 
-        if (stb instanceof STBInventoryHolder) {
-            pulled = ((STBInventoryHolder) stb).extractItems(from.getOppositeFace(), inBuffer, nToPull, getItemRouter().getOwner());
+    /**
+     * Pull items from a neighbouring STB block. An empty buffer takes whatever the block
+     * offers first, unless another buffer slot already holds those items; a buffer which
+     * already holds items is topped up by key, so that blocks which implement the
+     * simulate/commit methods don't need to copy any items.
+     */
+    private boolean pullFromHolder(STBInventoryHolder holder, BlockFace side, int nToPull, @Nullable ItemKey bufferKey) {
+        ItemRouter router = getItemRouter();
+
+        if (bufferKey == null) {
+            ItemKey key = holder.getExtractableKey(side, router.getOwner());
+
+            if (key != null) {
+                if (router.isHeldInOtherSlot(key)) {
+                    return false;
+                }
+
+                int nPulled = holder.commitExtract(key, Math.min(nToPull, key.getMaxStackSize()), side, router.getOwner());
+
+                if (nPulled <= 0) {
+                    return false;
+                }
+
+                router.setBufferItem(key.toItemStack(nPulled));
+            } else {
+                // the block can't say what it would give without giving it
+                ItemStack pulled = holder.extractItems(side, null, nToPull, router.getOwner());
+
+                if (pulled == null || pulled.getAmount() <= 0) {
+                    return false;
+                }
+
+                router.setBufferItem(pulled);
+            }
         } else {
-            // possible vanilla inventory holder
-            pulled = VanillaInventoryUtils.pullFromInventory(targetLoc.getBlock(), nToPull, inBuffer, getFilter(), getItemRouter().getOwner());
+            int bufferAmount = router.getBufferAmount();
+            int nPulled = holder.commitExtract(bufferKey, Math.min(nToPull, bufferKey.getMaxStackSize() - bufferAmount), side, router.getOwner());
+
+            if (nPulled <= 0) {
+                return false;
+            }
+
+            router.setBufferAmount(bufferAmount + nPulled);
+        }
+
+        if (holder instanceof BaseSTBBlock) {
+            ((BaseSTBBlock) holder).update(false);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remembers that a pull into one buffer slot found nothing, so that the pull can be
+     * skipped while neither the inventory, the router's buffer nor the filter has changed. The
+     * inventory is polled anyway every so often, in case it was changed in a way which
+     * fired no event.
+     */
+    private static final class IdleState {
+
+        private long stamp = -1;
+        private long since;
+        private Material bufferType;
+        private int bufferAmount;
+        private int filterVersion;
+        // what the other slots held; an empty slot's pull skips those items
+        private final ItemKey[] otherKeys = new ItemKey[ItemRouter.MAX_BUFFER_SLOTS];
+
+        private void set(long stamp, @Nullable ItemStack inBuffer, @Nonnull ItemRouter router, @Nonnull Filter filter) {
+            this.stamp = stamp;
+            since = router.getTicksLived();
+            filterVersion = filter.getVersion();
+            bufferType = inBuffer == null ? null : inBuffer.getType();
+            bufferAmount = inBuffer == null ? 0 : inBuffer.getAmount();
+
+            for (int i = 0; i < otherKeys.length; i++) {
+                otherKeys[i] = i < router.getBufferSlotCount() ? router.getBufferKey(i) : null;
+            }
         }
 
-        if (pulled != null) {
-            if (stb != null) {
-                stb.update(false);
+        private boolean matches(long stamp, @Nullable ItemStack inBuffer, @Nonnull ItemRouter router, @Nonnull Filter filter) {
+            if (this.stamp != stamp || filter.getVersion() != filterVersion || router.getTicksLived() - since > MAX_IDLE_TICKS) {
+                return false;
+            }
+
+            if (inBuffer != null) {
+                return inBuffer.getType() == bufferType && inBuffer.getAmount() == bufferAmount;
+            } else if (bufferType != null) {
+                return false;
+            }
+
+            for (int i = 0; i < otherKeys.length; i++) {
+                if (otherKeys[i] != (i < router.getBufferSlotCount() ? router.getBufferKey(i) : null)) {
+                    return false;
+                }
             }
 
-            getItemRouter().setBufferItem(inBuffer == null ? pulled : inBuffer);
             return true;
         }
+    }
 
-        return false;
+    /**
+     * Send items to the given receiver. If the router network planner is enabled, the
+     * items may skip over any relays between here and their final destination; see
+     * {@link RouterNetworkPlanner}.
+     *
+     * @param receiver
+     *            the receiver to send to
+     * @param toSend
+     *            the items to send
+     * @return the number of items received
+     */
+    protected int sendToReceiver(@Nonnull ReceiverModule receiver, @Nonnull ItemStack toSend) {
+        if (SensibleToolbox.getPluginInstance().getConfigCache().isRouterNetworkPlanner()) {
+            if (route == null) {
+                route = new RouterNetworkPlanner.Route();
+            }
+
+            RouterNetworkPlanner.plan(route, getItemRouter(), receiver, toSend, getItemRouter().getOwner());
+            return route.getReceiver().receiveItem(toSend, route.getSenderId());
+        } else {
+            return receiver.receiveItem(toSend, getItemRouter().getOwner());
+        }
     }
 
     protected boolean vanillaInsertion(Block target, int amount, BlockFace side) {
@@ -1,28 +1,90 @@
 package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.annotation.Nonnull;
+
+import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.inventory.ItemStack;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapelessRecipe;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
-import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
+import io.github.thebusybiscuit.sensibletoolbox.api.gui.InventoryGUI;
+import io.github.thebusybiscuit.sensibletoolbox.api.gui.gadgets.NumericGadget;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.ItemRouter;
+import io.github.thebusybiscuit.sensibletoolbox.helpers.IntRange;
+import io.github.thebusybiscuit.sensibletoolbox.utils.VanillaInventoryUtils;
 
 public class DistributorModule extends DirectionalItemRouterModule {
 
-    private int nextNeighbour = 0;
+    public static final int MAX_WEIGHT = 8;
+    private static final BlockFace[] WEIGHTED_FACES = { BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST, BlockFace.UP, BlockFace.DOWN };
+    private static final int[] WEIGHT_SLOTS = { 23, 24, 25, 32, 33, 34 };
+    // longest a full neighbour is skipped before trying it again anyway
+    private static final long MAX_BACKOFF_TICKS = 100;
+
+    private final Map<BlockFace, Integer> weights = new EnumMap<>(BlockFace.class);
+    // for each buffer slot; slots hold different items, which neighbours may take or refuse separately
+    private final Distribution[] distributions = new Distribution[ItemRouter.MAX_BUFFER_SLOTS];
+
+    /**
+     * Where one buffer slot's items are being sent, and which neighbours have refused them.
+     */
+    private static final class Distribution {
+
+        private final Map<BlockFace, Target> targets = new EnumMap<>(BlockFace.class);
+        private int nextNeighbour = 0;
+        // how many turns the current neighbour has had in a row
+        private int turnsTaken = 0;
+
+        private void moveToNextNeighbour(@Nonnull List<BlockFace> neighbours) {
+            nextNeighbour = (nextNeighbour + 1) % neighbours.size();
+            turnsTaken = 0;
+        }
+    }
+
+    /**
+     * What's known about a neighbour which last refused the router's items.
+     */
+    private static final class Target {
+
+        private ItemKey refusedKey;
+        private long refusedStamp;
+        private long retryAt;
+        private long backoff;
+    }
 
     public DistributorModule() {}
 
     public DistributorModule(ConfigurationSection conf) {
         super(conf);
+
+        if (conf.contains("weights")) {
+            for (BlockFace face : WEIGHTED_FACES) {
+                setWeight(face, conf.getInt("weights." + face, 1));
+            }
+        }
+    }
+
+    @Override
+    public YamlConfiguration freeze() {
+        YamlConfiguration conf = super.freeze();
+
+        for (Map.Entry<BlockFace, Integer> entry : weights.entrySet()) {
+            conf.set("weights." + entry.getKey(), entry.getValue());
+        }
+
+        return conf;
     }
 
     @Override
@@ -37,7 +99,27 @@ public class DistributorModule extends DirectionalItemRouterModule {
 
     @Override
     public String[] getLore() {
-        return new String[] { "Pulls items from the configured", "direction, then sends them", "round-robin to all other", "adjacent inventories" };
+        return new String[] { "Pulls items from the configured", "direction, then sends them", "weighted round-robin to all", "other adjacent inventories" };
+    }
+
+    @Override
+    public String[] getExtraLore() {
+        String[] lore = super.getExtraLore();
+
+        if (weights.isEmpty()) {
+            return lore;
+        }
+
+        StringBuilder sb = new StringBuilder(ChatColor.GOLD + "Weights:");
+
+        for (BlockFace face : WEIGHTED_FACES) {
+            sb.append(' ').append(face.name().charAt(0)).append('=').append(getWeight(face));
+        }
+
+        String[] newLore = new String[lore.length + 1];
+        System.arraycopy(lore, 0, newLore, 0, lore.length);
+        newLore[lore.length] = sb.toString();
+        return newLore;
     }
 
     @Override
@@ -51,51 +133,151 @@ public class DistributorModule extends DirectionalItemRouterModule {
         return recipe;
     }
 
+    /**
+     * Get the weight of the given side: how many turns in a row the neighbour on that
+     * side gets, compared with the other neighbours. A weight of 0 means no items are
+     * sent that way.
+     *
+     * @param face
+     *            the side of the router
+     * @return the side's weight, 1 by default
+     */
+    public int getWeight(@Nonnull BlockFace face) {
+        return weights.getOrDefault(face, 1);
+    }
+
+    public void setWeight(@Nonnull BlockFace face, int weight) {
+        weight = Math.max(0, Math.min(weight, MAX_WEIGHT));
+
+        if (weight == 1) {
+            weights.remove(face);
+        } else {
+            weights.put(face, weight);
+        }
+    }
+
+    @Override
+    protected void addConfigurationGadgets(@Nonnull InventoryGUI inventory) {
+        inventory.addLabel("Distribution Weights", 22, null, "How many turns in a row", "each side gets; 0 means", "never send that way");
+
+        for (int i = 0; i < WEIGHTED_FACES.length; i++) {
+            BlockFace face = WEIGHTED_FACES[i];
+            inventory.addGadget(new NumericGadget(inventory, WEIGHT_SLOTS[i], "Weight: " + face, new IntRange(0, MAX_WEIGHT), getWeight(face), 1, MAX_WEIGHT, newValue -> {
+                setWeight(face, newValue);
+                return true;
+            }));
+        }
+    }
+
     @Override
     public boolean execute(Location loc) {
-        if (getItemRouter() == null) {
+        ItemRouter router = getItemRouter();
+
+        if (router == null) {
             // shouldn't happen...
             return false;
         }
 
         doPull(getFacing(), loc);
 
-        if (getItemRouter().getNeighbours().size() > 1 && getItemRouter().getBufferItem() != null) {
-            int nToInsert = getItemRouter().getStackSize();
-            BlockFace face = getNextNeighbour();
+        List<BlockFace> neighbours = router.getNeighbours();
+
+        if (neighbours.size() <= 1) {
+            return false;
+        }
+
+        int slot = router.getActiveBufferSlot();
+
+        if (distributions[slot] == null) {
+            distributions[slot] = new Distribution();
+        }
+
+        Distribution dist = distributions[slot];
+
+        // send as much as the stack size allows this tick, moving straight on from
+        // any neighbour which can't take (all of) its share
+        int budget = router.getStackSize();
+        boolean didWork = false;
 
-            if (face == getFacing()) {
-                // shouldn't happen...
-                return false;
+        for (int tries = 0; tries < neighbours.size() && budget > 0 && router.getBufferKey() != null; tries++) {
+            BlockFace face = neighbours.get(dist.nextNeighbour % neighbours.size());
+
+            if (face == getFacing() || getWeight(face) == 0 || isRefusing(dist, face, loc)) {
+                dist.moveToNextNeighbour(neighbours);
+                continue;
             }
 
-            Block b = loc.getBlock();
-            Block target = b.getRelative(face);
-            BaseSTBBlock stb = SensibleToolbox.getBlockAt(target.getLocation(), true);
+            int toSend = Math.min(budget, router.getBufferAmount());
+            int nSent = sendTo(face, loc, toSend);
 
-            if (stb instanceof STBInventoryHolder) {
-                ItemStack toInsert = getItemRouter().getBufferItem().clone();
-                toInsert.setAmount(Math.min(nToInsert, toInsert.getAmount()));
-                int nInserted = ((STBInventoryHolder) stb).insertItems(toInsert, face.getOppositeFace(), false, getItemRouter().getOwner());
-                getItemRouter().reduceBuffer(nInserted);
-                return nInserted > 0;
+            if (nSent <= 0) {
+                markRefused(dist, face, loc);
+                dist.moveToNextNeighbour(neighbours);
             } else {
-                // vanilla inventory holder?
-                return vanillaInsertion(target, nToInsert, getFacing().getOppositeFace());
+                dist.targets.remove(face);
+                budget -= nSent;
+                didWork = true;
+
+                if (nSent < toSend || ++dist.turnsTaken >= getWeight(face)) {
+                    dist.moveToNextNeighbour(neighbours);
+                }
             }
         }
 
-        return false;
+        return didWork;
     }
 
-    private BlockFace getNextNeighbour() {
-        List<BlockFace> neighbours = getItemRouter().getNeighbours();
-        nextNeighbour = (nextNeighbour + 1) % neighbours.size();
+    private int sendTo(@Nonnull BlockFace face, @Nonnull Location loc, int amount) {
+        ItemRouter router = getItemRouter();
+        STBInventoryHolder holder = router.getNeighbourHolder(face);
+        int nInserted;
 
-        if (neighbours.get(nextNeighbour) == getFacing()) {
-            nextNeighbour = (nextNeighbour + 1) % neighbours.size();
+        if (holder != null) {
+            nInserted = holder.commitInsert(router.getBufferKey(), amount, face.getOppositeFace(), false, router.getOwner());
+        } else if (router.hasVanillaNeighbour(face)) {
+            nInserted = VanillaInventoryUtils.vanillaInsertion(loc.getBlock().getRelative(face), router.getBufferItem(), amount, face.getOppositeFace(), false, router.getOwner());
+        } else {
+            return 0;
+        }
+
+        router.reduceBuffer(nInserted);
+        return nInserted;
+    }
+
+    /**
+     * Check if a neighbour refused the items in the router's buffer last time, and
+     * shouldn't be tried again yet. A vanilla inventory is skipped until it changes; an
+     * STB block is skipped for a while, backing off further each time it refuses.
+     */
+    private boolean isRefusing(@Nonnull Distribution dist, @Nonnull BlockFace face, @Nonnull Location loc) {
+        Target target = dist.targets.get(face);
+
+        if (target == null || target.refusedKey != getItemRouter().getBufferKey()) {
+            return false;
+        } else if (getItemRouter().getTicksLived() >= target.retryAt) {
+            return false;
+        } else if (getItemRouter().hasVanillaNeighbour(face)) {
+            return watch(loc.getBlock().getRelative(face)) == target.refusedStamp;
+        } else {
+            return true;
+        }
+    }
+
+    private void markRefused(@Nonnull Distribution dist, @Nonnull BlockFace face, @Nonnull Location loc) {
+        Target target = dist.targets.computeIfAbsent(face, k -> new Target());
+
+        if (getItemRouter().hasVanillaNeighbour(face)) {
+            target.refusedStamp = watch(loc.getBlock().getRelative(face));
+            target.backoff = MAX_BACKOFF_TICKS;
+        } else {
+            target.backoff = target.refusedKey == getItemRouter().getBufferKey() ? Math.min(target.backoff * 2, MAX_BACKOFF_TICKS) : 1;
         }
 
-        return neighbours.get(nextNeighbour);
+        target.refusedKey = getItemRouter().getBufferKey();
+        target.retryAt = getItemRouter().getTicksLived() + target.backoff;
+    }
+
+    private long watch(@Nonnull Block b) {
+        return SensibleToolbox.getPluginInstance().getInventoryChangeTracker().watch(b);
     }
 }
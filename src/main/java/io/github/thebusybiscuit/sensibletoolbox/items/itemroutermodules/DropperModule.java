@@ -4,12 +4,11 @@ import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.entity.Item;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapelessRecipe;
-import org.bukkit.util.Vector;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import me.desht.dhutils.Debugger;
 
 public class DropperModule extends DirectionalItemRouterModule {
@@ -56,9 +55,7 @@ public class DropperModule extends DirectionalItemRouterModule {
             ItemStack stack = getItemRouter().extractItems(BlockFace.SELF, null, toDrop, null);
 
             if (stack != null) {
-                Location targetLoc = getTargetLocation(loc).add(0.5, 0.5, 0.5);
-                Item item = targetLoc.getWorld().dropItem(targetLoc, stack);
-                item.setVelocity(new Vector(0, 0, 0));
+                SensibleToolbox.getPluginInstance().getDropAggregator().drop(getTargetLocation(loc), stack);
                 Debugger.getInstance().debug(2, "dropper dropped " + stack + " from " + getItemRouter());
             }
 
@@ -1,11 +1,15 @@
 package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
 import org.bukkit.Color;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Particle;
 import org.bukkit.Particle.DustOptions;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
@@ -13,14 +17,22 @@ import org.bukkit.inventory.ShapelessRecipe;
 
 import io.github.thebusybiscuit.sensibletoolbox.api.STBInventoryHolder;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
-import io.github.thebusybiscuit.sensibletoolbox.api.items.BaseSTBBlock;
 import io.github.thebusybiscuit.sensibletoolbox.blocks.router.ItemRouter;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.RouterLinkRegistry;
 import me.desht.dhutils.Debugger;
 
 public class SenderModule extends DirectionalItemRouterModule {
 
     private static final int MAX_SENDER_DISTANCE = 10;
 
+    // the result of the last line-of-sight search, and what it depended on; see findReceiver()
+    private ItemRouter linkedRouter;
+    private Block linkStart;
+    private Block linkEnd;
+    private BlockFace linkFace;
+    private long linkStartStamp;
+    private long linkEndStamp;
+
     public SenderModule() {}
 
     public SenderModule(ConfigurationSection conf) {
@@ -62,8 +74,9 @@ public class SenderModule extends DirectionalItemRouterModule {
             Block b = loc.getBlock();
             Block target = b.getRelative(getFacing());
             int nToInsert = getItemRouter().getStackSize();
+            STBInventoryHolder holder = getItemRouter().getNeighbourHolder(getFacing());
 
-            if (!(SensibleToolbox.getBlockAt(target.getLocation(), true) instanceof STBInventoryHolder) && allowsItemsThrough(target.getType())) {
+            if (holder == null && allowsItemsThrough(target.getType())) {
                 // search for a visible Item Router with an installed Receiver Module
                 ReceiverModule receiver = findReceiver(b);
 
@@ -71,7 +84,7 @@ public class SenderModule extends DirectionalItemRouterModule {
                     Debugger.getInstance().debug(2, "sender found receiver module in " + receiver.getItemRouter());
                     ItemStack toSend = getItemRouter().getBufferItem().clone();
                     toSend.setAmount(Math.min(nToInsert, toSend.getAmount()));
-                    int nReceived = receiver.receiveItem(toSend, getItemRouter().getOwner());
+                    int nReceived = sendToReceiver(receiver, toSend);
                     getItemRouter().reduceBuffer(nReceived);
 
                     if (nReceived > 0 && SensibleToolbox.getPluginInstance().getConfigCache().getParticleLevel() >= 2) {
@@ -82,12 +95,9 @@ public class SenderModule extends DirectionalItemRouterModule {
                     return nReceived > 0;
                 }
             } else {
-                BaseSTBBlock stb = SensibleToolbox.getBlockAt(target.getLocation(), true);
-
-                if (stb instanceof STBInventoryHolder) {
-                    ItemStack toInsert = getItemRouter().getBufferItem().clone();
-                    toInsert.setAmount(Math.min(nToInsert, toInsert.getAmount()));
-                    int nInserted = ((STBInventoryHolder) stb).insertItems(toInsert, getFacing().getOppositeFace(), false, getItemRouter().getOwner());
+                if (holder != null) {
+                    int amount = Math.min(nToInsert, getItemRouter().getBufferAmount());
+                    int nInserted = holder.commitInsert(getItemRouter().getBufferKey(), amount, getFacing().getOppositeFace(), false, getItemRouter().getOwner());
                     getItemRouter().reduceBuffer(nInserted);
                     return nInserted > 0;
                 } else {
@@ -108,7 +118,47 @@ public class SenderModule extends DirectionalItemRouterModule {
         s.getWorld().spawnParticle(Particle.REDSTONE, mid.getX(), mid.getY(), mid.getZ(), 15, (float) xOff / 4, 0, (float) zOff / 4, 0, new DustOptions(Color.GREEN, 1.5F));
     }
 
-    private ReceiverModule findReceiver(Block b) {
+    /**
+     * Get the receiver this module would send the given items to, if it would send
+     * them to a receiver at all.
+     *
+     * @param loc
+     *            the location of this module's router
+     * @param items
+     *            the items to check
+     * @return the receiver, or null if the items would not be sent to one
+     */
+    @Nullable
+    public ReceiverModule getRelayTarget(@Nonnull Location loc, @Nonnull ItemStack items) {
+        if (getFilter() != null && !getFilter().shouldPass(items)) {
+            return null;
+        }
+
+        Block b = loc.getBlock();
+
+        if (getItemRouter().getNeighbourHolder(getFacing()) != null || !allowsItemsThrough(b.getRelative(getFacing()).getType())) {
+            return null;
+        }
+
+        return findReceiver(b);
+    }
+
+    @Nullable
+    private ReceiverModule findReceiver(@Nonnull Block b) {
+        RouterLinkRegistry links = SensibleToolbox.getPluginInstance().getRouterLinkRegistry();
+
+        if (b.equals(linkStart) && getFacing() == linkFace && links.getChangeStamp(b) == linkStartStamp && links.getChangeStamp(linkEnd) == linkEndStamp) {
+            // nothing has changed along the line of sight since the last search
+            if (linkedRouter == null) {
+                return null;
+            } else if (linkedRouter.getLocation() != null) {
+                return linkedRouter.getReceiver();
+            }
+            // the router has been unregistered; search again
+        }
+
+        Block start = b;
+
         for (int i = 0; i < MAX_SENDER_DISTANCE; i++) {
             b = b.getRelative(getFacing());
             if (!allowsItemsThrough(b.getType())) {
@@ -116,8 +166,15 @@ public class SenderModule extends DirectionalItemRouterModule {
             }
         }
 
-        ItemRouter rtr = SensibleToolbox.getBlockAt(b.getLocation(), ItemRouter.class, false);
-        return rtr == null ? null : rtr.getReceiver();
+        // the line of sight is straight and shorter than a chunk, so it spans at most two chunks
+        linkedRouter = SensibleToolbox.getBlockAt(b.getLocation(), ItemRouter.class, false);
+        linkStart = start;
+        linkEnd = b;
+        linkFace = getFacing();
+        linkStartStamp = links.getChangeStamp(start);
+        linkEndStamp = links.getChangeStamp(b);
+
+        return linkedRouter == null ? null : linkedRouter.getReceiver();
     }
 
     private boolean allowsItemsThrough(Material mat) {
@@ -50,8 +50,8 @@ public class SorterModule extends DirectionalItemRouterModule {
 
     @Override
     public boolean execute(Location loc) {
-        if (getItemRouter() != null && getItemRouter().getBufferItem() != null) {
-            if (getFilter() != null && !getFilter().shouldPass(getItemRouter().getBufferItem())) {
+        if (getItemRouter() != null && getItemRouter().getBufferKey() != null) {
+            if (getFilter() != null && !getFilter().shouldPass(getItemRouter().getBufferKey().getPrototype())) {
                 return false;
             }
 
@@ -62,9 +62,8 @@ public class SorterModule extends DirectionalItemRouterModule {
             int nInserted;
 
             if (stb instanceof STBInventoryHolder) {
-                ItemStack toInsert = getItemRouter().getBufferItem().clone();
-                toInsert.setAmount(Math.min(nToInsert, toInsert.getAmount()));
-                nInserted = ((STBInventoryHolder) stb).insertItems(toInsert, getFacing().getOppositeFace(), true, getItemRouter().getOwner());
+                int amount = Math.min(nToInsert, getItemRouter().getBufferAmount());
+                nInserted = ((STBInventoryHolder) stb).commitInsert(getItemRouter().getBufferKey(), amount, getFacing().getOppositeFace(), true, getItemRouter().getOwner());
             } else {
                 // vanilla inventory holder?
                 nInserted = vanillaSortInsertion(targetLoc.getBlock(), nToInsert, getFacing().getOppositeFace());
@@ -77,13 +76,13 @@ public class SorterModule extends DirectionalItemRouterModule {
     }
 
     private int vanillaSortInsertion(Block target, int amount, BlockFace side) {
-        ItemStack buffer = getItemRouter().getBufferItem();
-        int nInserted = VanillaInventoryUtils.vanillaInsertion(target, buffer, amount, side, true, getItemRouter().getOwner());
-
-        if (nInserted > 0) {
-            getItemRouter().setBufferItem(buffer.getAmount() == 0 ? null : buffer);
+        if (!VanillaInventoryUtils.sortingOK(target, getItemRouter().getBufferKey())) {
+            // cheap check first, without copying the buffer
+            return 0;
         }
 
-        return nInserted;
+        // the caller takes the inserted items out of the buffer
+        ItemStack buffer = getItemRouter().getBufferItem();
+        return VanillaInventoryUtils.vanillaInsertion(target, buffer, amount, side, true, getItemRouter().getOwner());
     }
 }
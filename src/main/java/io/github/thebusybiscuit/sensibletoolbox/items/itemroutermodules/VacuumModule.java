@@ -1,36 +1,31 @@
 package io.github.thebusybiscuit.sensibletoolbox.items.itemroutermodules;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.function.Consumer;
 
 import javax.annotation.Nonnull;
 
-import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.World;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.Recipe;
 import org.bukkit.inventory.ShapelessRecipe;
-import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.util.Vector;
 
-import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.ItemRouter;
 
 public class VacuumModule extends DirectionalItemRouterModule {
 
     private static final int RADIUS = 6;
-    private static final Map<UUID, List<Item>> recentItemCache = new HashMap<>();
-    private static final Map<UUID, Long> cacheTime = new HashMap<>();
-    public static final int CACHE_TIME = 1000;
-    private static final String STB_VACUUMED = "STB_Vacuumed";
+
+    // one per buffer slot, so that items are absorbed into the slot the vacuum found them for
+    private final List<Consumer<Item>> absorbers = new ArrayList<>();
 
     public VacuumModule() {}
 
@@ -63,81 +58,81 @@ public class VacuumModule extends DirectionalItemRouterModule {
         return recipe;
     }
 
-    @Nonnull
-    private static List<Item> getItemEntities(@Nonnull World w) {
-        // Caching the list of item entities per-world can avoid the overhead of
-        // repeated getEntities() calls if there are many vacuum modules in operation.
-        List<Item> list = recentItemCache.get(w.getUID());
-        if (list == null) {
-            list = new ArrayList<>();
-            recentItemCache.put(w.getUID(), list);
-            cacheTime.put(w.getUID(), 0L);
-        }
-
-        if (System.currentTimeMillis() - cacheTime.get(w.getUID()) > CACHE_TIME) {
-            list.clear();
-            list.addAll(w.getEntitiesByClass(Item.class));
-            cacheTime.put(w.getUID(), System.currentTimeMillis());
-        }
-
-        return list;
-    }
-
     @Override
     public boolean execute(Location loc) {
         loc.add(0.5, 0.5, 0.5);
 
-        for (Entity entity : loc.getWorld().getNearbyEntities(loc, RADIUS, RADIUS, RADIUS, n -> n instanceof Item && n.isValid())) {
-            Item item = (Item) entity;
+        List<Item> nearby = new ArrayList<>();
+        SensibleToolbox.getPluginInstance().getDroppedItemIndex().findNearby(loc, RADIUS, nearby);
+
+        if (nearby.isEmpty()) {
+            return false;
+        }
+
+        ItemRouter router = getItemRouter();
+        ItemStack buffer = router.getBufferItem();
+        Consumer<Item> absorber = getAbsorber(router.getActiveBufferSlot());
 
+        for (Item item : nearby) {
             ItemStack onGround = item.getItemStack();
-            ItemStack buffer = getItemRouter().getBufferItem();
             Location itemLoc = item.getLocation();
 
-            if (item.getPickupDelay() <= 0 && getFilter().shouldPass(onGround) && rightDirection(itemLoc, loc) && (buffer == null || buffer.isSimilar(onGround)) && STBUtil.getMetadataValue(item, STB_VACUUMED) == null) {
+            if (item.getPickupDelay() <= 0 && getFilter().shouldPass(onGround) && rightDirection(itemLoc, loc) && (buffer == null ? !router.isHeldInOtherSlot(onGround) : buffer.isSimilar(onGround))) {
                 double rtrY = loc.getY();
-                double dist = loc.distanceSquared(item.getLocation());
-                Vector vel = loc.subtract(itemLoc).toVector().normalize().multiply(Math.min(dist * 0.06, 0.7));
+                double dist = loc.distanceSquared(itemLoc);
+                Vector vel = loc.clone().subtract(itemLoc).toVector().normalize().multiply(Math.min(dist * 0.06, 0.7));
 
                 if (itemLoc.getY() < rtrY) {
                     vel.setY(vel.getY() + (rtrY - itemLoc.getY()) / 10);
                 }
 
-                item.setMetadata(STB_VACUUMED, new FixedMetadataValue(getProviderPlugin(), getItemRouter()));
                 item.setVelocity(vel);
-
-                Bukkit.getScheduler().runTaskLater(getProviderPlugin(), () -> {
-                    if (item.isValid()) {
-                        ItemStack newBuffer = getItemRouter().getBufferItem();
-                        int toSlurp = 0;
-
-                        if (newBuffer == null) {
-                            toSlurp = onGround.getAmount();
-                            getItemRouter().setBufferItem(onGround);
-                            item.remove();
-                        } else if (newBuffer.isSimilar(onGround)) {
-                            toSlurp = Math.min(onGround.getAmount(), newBuffer.getType().getMaxStackSize() - newBuffer.getAmount());
-                            getItemRouter().setBufferAmount(newBuffer.getAmount() + toSlurp);
-                            onGround.setAmount(onGround.getAmount() - toSlurp);
-
-                            if (onGround.getAmount() == 0) {
-                                item.remove();
-                            } else {
-                                item.setItemStack(onGround);
-                            }
-                        }
-
-                        if (toSlurp > 0) {
-                            getItemRouter().playParticles(new java.awt.Color(0, 0, 255));
-                            getItemRouter().update(false);
-                        }
-                    }
-                }, (long) (dist / 3));
+                SensibleToolbox.getPluginInstance().getDroppedItemIndex().scheduleAbsorb(item, (long) (dist / 3), absorber);
             }
         }
+
         return false; // any work done is deferred
     }
 
+    @Nonnull
+    private Consumer<Item> getAbsorber(int slot) {
+        while (absorbers.size() <= slot) {
+            int absorberSlot = absorbers.size();
+            absorbers.add(item -> absorb(item, absorberSlot));
+        }
+
+        return absorbers.get(slot);
+    }
+
+    /**
+     * Absorb an item which has arrived at the router. This runs outside the router's own
+     * tick, when the router's active buffer slot is always the main one, so the items
+     * are put straight into the slot the vacuum was running on when it found them.
+     */
+    private void absorb(@Nonnull Item item, int slot) {
+        ItemRouter router = getItemRouter();
+
+        if (router == null) {
+            return;
+        }
+
+        ItemStack onGround = item.getItemStack();
+        int toSlurp = router.commitInsert(slot, ItemKey.of(onGround), onGround.getAmount());
+
+        if (toSlurp > 0) {
+            onGround.setAmount(onGround.getAmount() - toSlurp);
+
+            if (onGround.getAmount() == 0) {
+                item.remove();
+            } else {
+                item.setItemStack(onGround);
+            }
+
+            router.playParticles(new java.awt.Color(0, 0, 255));
+            router.update(false);
+        }
+    }
+
     private boolean rightDirection(Location itemLoc, Location rtrLoc) {
         if (getFacing() == null || getFacing() == BlockFace.SELF) {
             return true;
@@ -319,7 +319,7 @@ public class MultiBuilder extends BaseSTBItem implements Chargeable {
             b.setType(source.getType(), true);
         }
 
-        updateHeldItemStack(player, hand);
+        updateHeldItemCharge(player, hand);
         player.playSound(player.getLocation(), Sound.BLOCK_STONE_BREAK, 1.0F, 1.0F);
     }
 
@@ -15,6 +15,7 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
 
 class QueueSwapper extends BukkitRunnable {
@@ -50,6 +51,13 @@ class QueueSwapper extends BukkitRunnable {
                 continue;
             }
 
+            ItemStack builderItem = rec.getPlayer().getInventory().getItemInMainHand();
+
+            if (!rec.getMultiBuilder().getItemTypeID().equals(SensibleToolbox.getItemRegistry().getItemTypeId(builderItem))) {
+                // the player has put the multibuilder away, so its charge can't be taken
+                continue;
+            }
+
             // (hopefully) take materials from the player...
             int slot = rec.getSlot();
             PlayerInventory inventory = rec.getPlayer().getInventory();
@@ -79,8 +87,12 @@ class QueueSwapper extends BukkitRunnable {
 
             // take SCU from the multibuilder...
             rec.getMultiBuilder().setCharge(rec.getMultiBuilder().getCharge() - rec.getRequiredCharge());
-            ItemStack builderItem = rec.getMultiBuilder().toItemStack();
-            rec.getPlayer().setItemInHand(builderItem);
+
+            if (!rec.getMultiBuilder().updateCharge(builderItem)) {
+                builderItem = rec.getMultiBuilder().toItemStack();
+            }
+
+            rec.getPlayer().getInventory().setItemInMainHand(builderItem);
 
             // give materials to the player...
             if (builderItem.getEnchantmentLevel(Enchantment.SILK_TOUCH) == 1) {
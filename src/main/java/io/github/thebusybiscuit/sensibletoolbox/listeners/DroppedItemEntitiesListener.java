@@ -0,0 +1,46 @@
+package io.github.thebusybiscuit.sensibletoolbox.listeners;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.DroppedItemIndex;
+
+/**
+ * This listener adds dropped items to the {@link DroppedItemIndex} as their entities
+ * are loaded, and removes them as they are unloaded. Since Minecraft 1.17, entities
+ * are loaded separately from their chunk, so the chunk events can't be used for this.
+ * The events used here don't exist before 1.17, so this listener must only be
+ * registered on 1.17 or newer.
+ *
+ * @see LegacyDroppedItemListener
+ */
+public class DroppedItemEntitiesListener extends STBBaseListener {
+
+    public DroppedItemEntitiesListener(@Nonnull SensibleToolboxPlugin plugin) {
+        super(plugin);
+    }
+
+    @EventHandler
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof Item) {
+                plugin.getDroppedItemIndex().add((Item) entity);
+            }
+        }
+    }
+
+    @EventHandler
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity instanceof Item) {
+                plugin.getDroppedItemIndex().remove((Item) entity);
+            }
+        }
+    }
+}
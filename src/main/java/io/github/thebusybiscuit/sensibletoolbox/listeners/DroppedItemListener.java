@@ -0,0 +1,63 @@
+package io.github.thebusybiscuit.sensibletoolbox.listeners;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.entity.Item;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.ItemDespawnEvent;
+import org.bukkit.event.entity.ItemMergeEvent;
+import org.bukkit.event.entity.ItemSpawnEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.DroppedItemIndex;
+import io.github.thebusybiscuit.sensibletoolbox.core.DropAggregator;
+
+/**
+ * This listener keeps the {@link DroppedItemIndex} up to date as dropped items
+ * appear and disappear. Items which vanish any other way (hoppers, fire, the void)
+ * are pruned by the index itself. It also tells the {@link DropAggregator} when a
+ * world goes away. Items loaded and unloaded with their chunks are handled by
+ * {@link DroppedItemEntitiesListener} or {@link LegacyDroppedItemListener}, depending
+ * on the server version.
+ *
+ * @see DroppedItemIndex
+ * @see DropAggregator
+ */
+public class DroppedItemListener extends STBBaseListener {
+
+    public DroppedItemListener(@Nonnull SensibleToolboxPlugin plugin) {
+        super(plugin);
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onItemSpawn(ItemSpawnEvent event) {
+        plugin.getDroppedItemIndex().add(event.getEntity());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onItemMerge(ItemMergeEvent event) {
+        // the merging item is removed; the target just gets bigger
+        plugin.getDroppedItemIndex().remove(event.getEntity());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onItemDespawn(ItemDespawnEvent event) {
+        plugin.getDroppedItemIndex().remove(event.getEntity());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onEntityPickup(EntityPickupItemEvent event) {
+        if (event.getRemaining() == 0) {
+            plugin.getDroppedItemIndex().remove(event.getItem());
+        }
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        plugin.getDropAggregator().onWorldUnloaded(event.getWorld());
+        plugin.getDroppedItemIndex().onWorldUnloaded(event.getWorld());
+    }
+}
@@ -0,0 +1,85 @@
+package io.github.thebusybiscuit.sensibletoolbox.listeners;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.inventory.BrewEvent;
+import org.bukkit.event.inventory.FurnaceSmeltEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.event.inventory.InventoryMoveItemEvent;
+import org.bukkit.event.inventory.InventoryPickupItemEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.core.InventoryChangeTracker;
+
+/**
+ * This listener passes vanilla inventory changes on to the {@link InventoryChangeTracker}.
+ *
+ * @see InventoryChangeTracker
+ */
+public class InventoryChangeListener extends STBBaseListener {
+
+    public InventoryChangeListener(@Nonnull SensibleToolboxPlugin plugin) {
+        super(plugin);
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onInventoryMove(InventoryMoveItemEvent event) {
+        // hoppers and droppers
+        plugin.getInventoryChangeTracker().notifyChanged(event.getSource());
+        plugin.getInventoryChangeTracker().notifyChanged(event.getDestination());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onInventoryPickup(InventoryPickupItemEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getInventory());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onInventoryClick(InventoryClickEvent event) {
+        // shift-clicks from the player's inventory change the top inventory too
+        plugin.getInventoryChangeTracker().notifyChanged(event.getView().getTopInventory());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getView().getTopInventory());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onFurnaceSmelt(FurnaceSmeltEvent event) {
+        // a new result for pullers to take; the event fires just before the result is added
+        plugin.getInventoryChangeTracker().notifyChanged(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBrew(BrewEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockDispense(BlockDispenseEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockBreak(BlockBreakEvent event) {
+        plugin.getInventoryChangeTracker().notifyChanged(event.getBlock());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        plugin.getInventoryChangeTracker().onWorldUnloaded(event.getWorld());
+    }
+}
@@ -0,0 +1,45 @@
+package io.github.thebusybiscuit.sensibletoolbox.listeners;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.blocks.router.DroppedItemIndex;
+
+/**
+ * This listener keeps the {@link DroppedItemIndex} up to date with the dropped items
+ * in chunks as they are loaded and unloaded, on Minecraft versions before 1.17. On
+ * those versions, a chunk's entities are loaded along with the chunk itself.
+ *
+ * @see DroppedItemEntitiesListener
+ */
+public class LegacyDroppedItemListener extends STBBaseListener {
+
+    public LegacyDroppedItemListener(@Nonnull SensibleToolboxPlugin plugin) {
+        super(plugin);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        for (Entity entity : event.getChunk().getEntities()) {
+            if (entity instanceof Item) {
+                plugin.getDroppedItemIndex().add((Item) entity);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        for (Entity entity : event.getChunk().getEntities()) {
+            if (entity instanceof Item) {
+                plugin.getDroppedItemIndex().remove((Item) entity);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package io.github.thebusybiscuit.sensibletoolbox.listeners;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.SignChangeEvent;
+
+import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
+import io.github.thebusybiscuit.sensibletoolbox.core.ProtectionCache;
+
+/**
+ * This listener makes the {@link ProtectionCache} forget its answers around blocks
+ * which might have gained or lost a protection. Neighbouring blocks are included,
+ * since protection signs and locks often protect the block they're attached to, and
+ * a chest placed next to a locked chest joins it.
+ *
+ * @see ProtectionCache
+ */
+public class ProtectionCacheListener extends STBBaseListener {
+
+    private static final BlockFace[] NEIGHBOURS = { BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST, BlockFace.UP, BlockFace.DOWN };
+
+    public ProtectionCacheListener(@Nonnull SensibleToolboxPlugin plugin) {
+        super(plugin);
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        invalidateAround(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onBlockBreak(BlockBreakEvent event) {
+        invalidateAround(event.getBlock());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onSignChange(SignChangeEvent event) {
+        invalidateAround(event.getBlock());
+    }
+
+    private void invalidateAround(@Nonnull Block b) {
+        ProtectionCache cache = plugin.getProtectionCache();
+
+        if (cache.size() == 0) {
+            return;
+        }
+
+        cache.invalidate(b);
+
+        for (BlockFace face : NEIGHBOURS) {
+            cache.invalidate(b.getRelative(face));
+        }
+    }
+}
@@ -5,12 +5,14 @@ import javax.annotation.Nonnull;
 import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.event.world.WorldEvent;
 import org.bukkit.event.world.WorldLoadEvent;
 import org.bukkit.event.world.WorldUnloadEvent;
 
 import io.github.thebusybiscuit.sensibletoolbox.SensibleToolboxPlugin;
 import io.github.thebusybiscuit.sensibletoolbox.core.storage.LocationManager;
+import io.github.thebusybiscuit.sensibletoolbox.utils.VanillaInventoryUtils;
 
 /**
  * This {@link Listener} is responsible for any {@link WorldEvent} and loading or unloading
@@ -35,5 +37,13 @@ public class WorldListener extends STBBaseListener {
     @EventHandler
     public void onWorldUnLoad(WorldUnloadEvent event) {
         LocationManager.getManager().unloadWorld(event.getWorld());
+        VanillaInventoryUtils.invalidateContainers(event.getWorld());
+        plugin.getProtectionCache().invalidate(event.getWorld());
+    }
+
+    @EventHandler
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        VanillaInventoryUtils.invalidateContainers(event.getChunk());
+        plugin.getProtectionCache().invalidate(event.getChunk());
     }
 }
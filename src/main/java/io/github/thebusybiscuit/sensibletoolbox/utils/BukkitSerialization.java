@@ -2,29 +2,72 @@ package io.github.thebusybiscuit.sensibletoolbox.utils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import io.github.thebusybiscuit.sensibletoolbox.helpers.Validate;
 import org.bukkit.Bukkit;
+import org.bukkit.Material;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.util.io.BukkitObjectInputStream;
 import org.bukkit.util.io.BukkitObjectOutputStream;
 import org.yaml.snakeyaml.external.biz.base64Coder.Base64Coder;
 
+import me.desht.dhutils.text.LogUtils;
+
 /**
- * Serialize a Bukkit {@link Inventory} to or from a {@link String}.
+ * Serialize a Bukkit {@link Inventory}, or an array of item stacks, to or from a
+ * {@link String}.
+ * <p/>
+ * Items are written in a compact form: empty slots are skipped, items without any
+ * item meta are written as just their material and amount, and other items go through
+ * a Bukkit object stream as before. The server's data version is saved alongside, so
+ * that materials which have since been renamed are converted when read back, just as
+ * Bukkit does for its own serialized items. The output can be read on any Bukkit
+ * server; the original format (a base64-encoded object stream of every slot) can
+ * still be read too.
  * <p/>
- * Credit for this goes to Comphenix: https://gist.github.com/aadnk/8138186
- * 
+ * Credit for the original format goes to Comphenix: https://gist.github.com/aadnk/8138186
+ *
  * @author Comphenix
  * @author desht
  * @author TheBusyBiscuit
  */
 public final class BukkitSerialization {
 
+    // marks the compact format; the original format never contains a ':'
+    private static final String PREFIX = "STB1:";
+    private static final byte CODEC_VERSIONED_OBJECT_STREAM = 3;
+    private static final byte ITEM_PLAIN = 0;
+    private static final byte ITEM_FULL = 1;
+    // don't hang on to a buffer which has grown larger than this
+    private static final int MAX_RETAINED_BUFFER = 65536;
+
+    private static final ThreadLocal<ReusableBuffer> buffers = ThreadLocal.withInitial(ReusableBuffer::new);
+
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+
+        private ReusableBuffer() {
+            super(256);
+        }
+
+        @Nonnull
+        private String toBase64() {
+            ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(buf, 0, count));
+            return new String(encoded.array(), 0, encoded.limit(), StandardCharsets.ISO_8859_1);
+        }
+    }
+
     private BukkitSerialization() {}
 
     public static String toBase64(@Nonnull Inventory inventory) {
@@ -37,45 +80,244 @@ public final class BukkitSerialization {
             maxItems = inventory.getSize();
         }
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream(); BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream)) {
+        ItemStack[] items = new ItemStack[maxItems];
 
-            // Write the size of the inventory
-            dataOutput.writeInt(maxItems);
+        for (int i = 0; i < maxItems; i++) {
+            items[i] = inventory.getItem(i);
+        }
 
-            // Save every element in the list
-            for (int i = 0; i < maxItems; i++) {
-                ItemStack stack = inventory.getItem(i);
-                dataOutput.writeObject(stack);
+        return encodeItems(items);
+    }
+
+    /**
+     * Serialize the given item stacks, which may include nulls for empty slots.
+     *
+     * @param items
+     *            the item stacks
+     * @return the serialized item stacks
+     */
+    @Nonnull
+    public static String encodeItems(@Nonnull ItemStack... items) {
+        Validate.notNull(items, "Cannot serialize a 'null' array of items!");
+        ReusableBuffer buffer = buffers.get();
+        buffer.reset();
+
+        try {
+            buffer.write(CODEC_VERSIONED_OBJECT_STREAM);
+
+            try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(buffer)) {
+                writeVarInt(out, getDataVersion());
+                writeItems(out, items);
             }
 
-            // Serialize that array
-            return Base64Coder.encodeLines(outputStream.toByteArray());
+            return PREFIX + buffer.toBase64();
         } catch (IOException e) {
             throw new IllegalStateException("Unable to save item stacks.", e);
+        } finally {
+            if (buffer.size() > MAX_RETAINED_BUFFER) {
+                buffers.remove();
+            }
+        }
+    }
+
+    private static void writeItems(@Nonnull ObjectOutput out, @Nonnull ItemStack[] items) throws IOException {
+        int nItems = 0;
+
+        for (ItemStack stack : items) {
+            if (!isEmpty(stack)) {
+                nItems++;
+            }
+        }
+
+        writeVarInt(out, items.length);
+        writeVarInt(out, nItems);
+
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack stack = items[slot];
+
+            if (isEmpty(stack)) {
+                continue;
+            }
+
+            writeVarInt(out, slot);
+
+            if (!stack.hasItemMeta()) {
+                out.writeByte(ITEM_PLAIN);
+                out.writeUTF(stack.getType().name());
+                writeVarInt(out, stack.getAmount());
+            } else {
+                out.writeByte(ITEM_FULL);
+                out.writeObject(stack);
+            }
         }
     }
 
     public static Inventory fromBase64(@Nonnull String data) throws IOException {
+        ItemStack[] items = decodeItems(data);
+
+        // Bukkit inventory size must be multiple of 9
+        int invSize = STBUtil.roundUp(items.length, 9);
+        Inventory inventory = Bukkit.getServer().createInventory(null, invSize);
+
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] != null) {
+                inventory.setItem(i, items[i]);
+            }
+        }
+
+        return inventory;
+    }
+
+    /**
+     * Deserialize item stacks written by {@link #encodeItems(ItemStack...)} or
+     * {@link #toBase64(Inventory, int)}, in either the compact or the original format.
+     *
+     * @param data
+     *            the serialized item stacks
+     * @return the item stacks, with nulls for empty slots
+     * @throws IOException
+     *             if the data can't be read
+     */
+    @Nonnull
+    public static ItemStack[] decodeItems(@Nonnull String data) throws IOException {
+        if (!data.startsWith(PREFIX)) {
+            return decodeLegacy(data);
+        }
+
+        byte[] bytes;
+
+        try {
+            bytes = Base64.getDecoder().decode(data.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unable to decode item data.", e);
+        }
+
+        if (bytes.length == 0) {
+            throw new IOException("No item data.");
+        }
+
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes, 1, bytes.length - 1);
+
+        if (bytes[0] == CODEC_VERSIONED_OBJECT_STREAM) {
+            try (BukkitObjectInputStream in = new BukkitObjectInputStream(inputStream)) {
+                return readItems(in, readVarInt(in));
+            }
+        } else {
+            throw new IOException("Unknown item data format: " + bytes[0]);
+        }
+    }
+
+    @Nonnull
+    private static ItemStack[] readItems(@Nonnull ObjectInput in, int dataVersion) throws IOException {
+        int size = readVarInt(in);
+        int nItems = readVarInt(in);
+
+        if (size < 0 || nItems < 0 || nItems > size) {
+            throw new IOException("Malformed item data.");
+        }
+
+        ItemStack[] items = new ItemStack[size];
+
+        for (int i = 0; i < nItems; i++) {
+            int slot = readVarInt(in);
+            byte kind = in.readByte();
+            ItemStack stack;
+
+            if (kind == ITEM_PLAIN) {
+                String name = in.readUTF();
+                int amount = readVarInt(in);
+                Material material = getMaterial(name, dataVersion);
+
+                if (material == null) {
+                    LogUtils.warning("Dropping unknown material " + name + " from saved item data");
+                    stack = null;
+                } else {
+                    stack = new ItemStack(material, amount);
+                }
+            } else if (kind == ITEM_FULL) {
+                stack = readObject(in);
+            } else {
+                throw new IOException("Unknown item kind: " + kind);
+            }
+
+            if (slot < 0 || slot >= items.length) {
+                throw new IOException("Item slot out of range: " + slot);
+            }
+
+            items[slot] = stack;
+        }
+
+        return items;
+    }
+
+    @Nonnull
+    private static ItemStack[] decodeLegacy(@Nonnull String data) throws IOException {
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64Coder.decodeLines(data)); BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream)) {
 
             int maxItems = dataInput.readInt();
-
-            // Bukkit inventory size must be multiple of 9
-            int invSize = STBUtil.roundUp(maxItems, 9);
-            Inventory inventory = Bukkit.getServer().createInventory(null, invSize);
+            ItemStack[] items = new ItemStack[maxItems];
 
             // Read the serialized inventory
             for (int i = 0; i < maxItems; i++) {
-                ItemStack stack = (ItemStack) dataInput.readObject();
-
-                if (stack != null) {
-                    inventory.setItem(i, stack);
-                }
+                items[i] = (ItemStack) dataInput.readObject();
             }
 
-            return inventory;
+            return items;
         } catch (ClassNotFoundException e) {
             throw new IOException("Unable to decode class type.", e);
         }
     }
-}
\ No newline at end of file
+
+    @Nullable
+    private static ItemStack readObject(@Nonnull ObjectInput in) throws IOException {
+        try {
+            return (ItemStack) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unable to decode class type.", e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static int getDataVersion() {
+        return Bukkit.getUnsafe().getDataVersion();
+    }
+
+    /**
+     * Look up a material saved under the given data version, converting it if it has
+     * been renamed since, the same way {@link ItemStack#deserialize(java.util.Map)} does.
+     */
+    @Nullable
+    @SuppressWarnings("deprecation")
+    private static Material getMaterial(@Nonnull String name, int dataVersion) {
+        Material material = Bukkit.getUnsafe().getMaterial(name, dataVersion);
+        return material == null ? Material.getMaterial(name) : material;
+    }
+
+    private static boolean isEmpty(@Nullable ItemStack stack) {
+        return stack == null || stack.getType() == Material.AIR || stack.getAmount() <= 0;
+    }
+
+    private static void writeVarInt(@Nonnull DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(@Nonnull DataInput in) throws IOException {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Malformed item data.");
+    }
+}
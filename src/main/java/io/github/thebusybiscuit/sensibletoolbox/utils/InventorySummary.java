@@ -0,0 +1,142 @@
+package io.github.thebusybiscuit.sensibletoolbox.utils;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
+
+/**
+ * A summary of what a vanilla container holds: for each kind of item, the slots
+ * holding it, and which slots are empty. This answers "would a sorter put this item
+ * here?" without walking every slot, and lets items be inserted straight into the
+ * right slots.
+ * <p>
+ * A summary is tied to the container's change stamp from the
+ * {@link io.github.thebusybiscuit.sensibletoolbox.core.InventoryChangeTracker}; once
+ * the stamp moves on, or the summary gets too old, it is dropped. STB's own
+ * insertions through {@link #insert(Inventory, ItemKey, int)} keep it up to date; a new
+ * one is only built once STB is inserting into the container repeatedly again.
+ *
+ * @see VanillaInventoryUtils
+ */
+final class InventorySummary {
+
+    // drop the summary every so often anyway, in case the container changed without firing an event
+    private static final long MAX_AGE_MILLIS = 5000L;
+
+    private final Map<ItemKey, BitSet> slotsByKey = new HashMap<>();
+    private final BitSet emptySlots = new BitSet();
+    private final long builtAt;
+    private long stamp;
+
+    InventorySummary(@Nonnull Inventory inv, long stamp) {
+        this.stamp = stamp;
+        this.builtAt = System.currentTimeMillis();
+
+        ItemKey lastKey = null;
+
+        for (int slot = 0; slot < inv.getSize(); slot++) {
+            ItemStack stack = inv.getItem(slot);
+
+            if (stack == null || stack.getAmount() <= 0) {
+                emptySlots.set(slot);
+            } else {
+                // containers tend to hold runs of the same item; skip the key lookup for those
+                ItemKey key = lastKey != null && lastKey.matches(stack) ? lastKey : ItemKey.of(stack);
+                slotsByKey.computeIfAbsent(key, k -> new BitSet()).set(slot);
+                lastKey = key;
+            }
+        }
+    }
+
+    /**
+     * Check if this summary still describes the container.
+     *
+     * @param currentStamp
+     *            the container's current change stamp
+     * @return true if the summary can be used, false if it must be rebuilt
+     */
+    boolean isCurrent(long currentStamp) {
+        return stamp == currentStamp && System.currentTimeMillis() - builtAt < MAX_AGE_MILLIS;
+    }
+
+    /**
+     * Record the container's change stamp after an insertion which has already been
+     * applied to this summary. Does nothing if the summary was found to be out of date.
+     *
+     * @param newStamp
+     *            the container's new change stamp
+     */
+    void restamp(long newStamp) {
+        if (stamp >= 0) {
+            stamp = newStamp;
+        }
+    }
+
+    /**
+     * Check if a sorter may put the given items into the container: it must already
+     * hold some of them, or be completely empty.
+     *
+     * @param key
+     *            the items to check
+     * @return true if sorting into the container is OK
+     */
+    boolean sortingOK(@Nonnull ItemKey key) {
+        return slotsByKey.isEmpty() || slotsByKey.containsKey(key);
+    }
+
+    /**
+     * Insert items into the container, topping up existing stacks of the same items
+     * first and then filling empty slots, as {@link Inventory#addItem(ItemStack...)}
+     * does. If a slot turns out not to hold what this summary says, it is skipped and
+     * the summary is marked as out of date.
+     *
+     * @param inv
+     *            the container's inventory
+     * @param key
+     *            the items to insert
+     * @param amount
+     *            the number of items to insert
+     * @return the number of items inserted
+     */
+    int insert(@Nonnull Inventory inv, @Nonnull ItemKey key, int amount) {
+        int maxStack = Math.min(key.getMaxStackSize(), inv.getMaxStackSize());
+        int remaining = amount;
+        BitSet slots = slotsByKey.get(key);
+
+        if (slots != null) {
+            for (int slot = slots.nextSetBit(0); slot >= 0 && remaining > 0; slot = slots.nextSetBit(slot + 1)) {
+                ItemStack stack = inv.getItem(slot);
+
+                if (!key.matches(stack)) {
+                    stamp = -1;
+                } else if (stack.getAmount() < maxStack) {
+                    int toAdd = Math.min(remaining, maxStack - stack.getAmount());
+                    stack.setAmount(stack.getAmount() + toAdd);
+                    inv.setItem(slot, stack);
+                    remaining -= toAdd;
+                }
+            }
+        }
+
+        for (int slot = emptySlots.nextSetBit(0); slot >= 0 && remaining > 0; slot = emptySlots.nextSetBit(slot + 1)) {
+            if (inv.getItem(slot) != null) {
+                stamp = -1;
+            } else {
+                int toAdd = Math.min(remaining, maxStack);
+                inv.setItem(slot, key.toItemStack(toAdd));
+                emptySlots.clear(slot);
+                slotsByKey.computeIfAbsent(key, k -> new BitSet()).set(slot);
+                remaining -= toAdd;
+            }
+        }
+
+        return amount - remaining;
+    }
+}
@@ -4,16 +4,21 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Predicate;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import io.github.thebusybiscuit.sensibletoolbox.helpers.IntRange;
-import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.block.data.type.Chest;
+import org.bukkit.event.inventory.InventoryType;
 import org.bukkit.inventory.BrewerInventory;
 import org.bukkit.inventory.FurnaceInventory;
 import org.bukkit.inventory.Inventory;
@@ -21,8 +26,12 @@ import org.bukkit.inventory.InventoryHolder;
 import org.bukkit.inventory.ItemStack;
 
 import io.github.bakedlibs.dough.protection.Interaction;
+import io.github.thebusybiscuit.sensibletoolbox.api.ItemKey;
 import io.github.thebusybiscuit.sensibletoolbox.api.SensibleToolbox;
 import io.github.thebusybiscuit.sensibletoolbox.api.filters.Filter;
+import io.github.thebusybiscuit.sensibletoolbox.core.InventoryChangeTracker;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+import io.papermc.lib.PaperLib;
 
 import me.desht.dhutils.Debugger;
 
@@ -34,6 +43,14 @@ import me.desht.dhutils.Debugger;
  */
 public final class VanillaInventoryUtils {
 
+    // how often a cached chest's connection is checked, in case it changed without an event
+    private static final long CHEST_CHECK_MILLIS = 1000L;
+
+    // resolved container inventories, by world, chunk and block position; see getVanillaInventory()
+    private static final Map<UUID, Map<Long, Map<BlockPosition, CachedContainer>>> containers = new HashMap<>();
+    // the key of the items last inserted by vanillaInsertion()
+    private static ItemKey lastInsertKey;
+
     private VanillaInventoryUtils() {}
 
     public static boolean isVanillaInventory(Block b) {
@@ -42,21 +59,138 @@ public final class VanillaInventoryUtils {
 
     /**
      * Get the vanilla inventory for the given block.
+     * <p>
+     * The inventory is resolved without taking a block state snapshot where the server
+     * supports it, and is cached by block position; the cached inventory is live, and is
+     * reused for as long as the block's type (and chest connection) stays the same.
+     * Cached entries are also dropped when a block is placed, broken or blown up at the
+     * position or next to it, and when the chunk unloads.
      *
      * @param target
      *            the block containing the target inventory
      * @return the block's inventory, or null if the block does not have one
      */
     public static Optional<Inventory> getVanillaInventory(@Nonnull Block target) {
-        BlockState state = target.getState();
+        return getContainer(target).inventory;
+    }
+
+    @Nonnull
+    private static CachedContainer getContainer(@Nonnull Block target) {
+        Material type = target.getType();
+        Map<Long, Map<BlockPosition, CachedContainer>> worldMap = containers.computeIfAbsent(target.getWorld().getUID(), k -> new HashMap<>());
+        Map<BlockPosition, CachedContainer> chunkMap = worldMap.computeIfAbsent(getChunkKey(target.getX() >> 4, target.getZ() >> 4), k -> new HashMap<>());
+        BlockPosition pos = new BlockPosition(target.getX(), target.getY(), target.getZ());
+        CachedContainer cached = chunkMap.get(pos);
+
+        if (cached != null && cached.type == type && isChestTypeCurrent(target, cached)) {
+            return cached;
+        }
+
+        Chest.Type chestType = getChestType(target, type);
+
+        BlockState state = PaperLib.getBlockState(target, false).getState();
+        Optional<Inventory> inventory;
 
         if (state instanceof InventoryHolder) {
-            return Optional.of(((InventoryHolder) state).getInventory());
+            inventory = Optional.of(((InventoryHolder) state).getInventory());
         } else {
-            return Optional.empty();
+            inventory = Optional.empty();
+        }
+
+        cached = new CachedContainer(type, chestType, inventory);
+        chunkMap.put(pos, cached);
+        return cached;
+    }
+
+    /**
+     * Check if a cached chest is still connected as it was. Placing or breaking a chest
+     * drops the cached entries next to it, so the block data only needs to be looked at
+     * again every so often, rather than on every access.
+     */
+    private static boolean isChestTypeCurrent(@Nonnull Block target, @Nonnull CachedContainer cached) {
+        if (cached.chestType == null) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+
+        if (now - cached.chestCheckedAt < CHEST_CHECK_MILLIS) {
+            return true;
+        } else if (getChestType(target, cached.type) == cached.chestType) {
+            cached.chestCheckedAt = now;
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+    @Nullable
+    private static Chest.Type getChestType(@Nonnull Block b, @Nonnull Material type) {
+        // single chests become double chests without changing type, and vice versa
+        if (type == Material.CHEST || type == Material.TRAPPED_CHEST) {
+            BlockData data = b.getBlockData();
+            return data instanceof Chest ? ((Chest) data).getType() : null;
+        }
+
+        return null;
+    }
+
+    /**
+     * Forget any cached inventory for the given block, and for the blocks beside it,
+     * whose chests may have connected to or disconnected from it. This should be called
+     * whenever a block is placed, broken or blown up.
+     *
+     * @param b
+     *            the block which has changed
+     */
+    public static void invalidateContainer(@Nonnull Block b) {
+        Map<Long, Map<BlockPosition, CachedContainer>> worldMap = containers.get(b.getWorld().getUID());
+
+        if (worldMap != null) {
+            invalidateContainer(worldMap, b.getX(), b.getY(), b.getZ());
+
+            for (BlockFace face : STBUtil.getMainHorizontalFaces()) {
+                invalidateContainer(worldMap, b.getX() + face.getModX(), b.getY(), b.getZ() + face.getModZ());
+            }
+        }
+    }
+
+    private static void invalidateContainer(@Nonnull Map<Long, Map<BlockPosition, CachedContainer>> worldMap, int x, int y, int z) {
+        Map<BlockPosition, CachedContainer> chunkMap = worldMap.get(getChunkKey(x >> 4, z >> 4));
+
+        if (chunkMap != null) {
+            chunkMap.remove(new BlockPosition(x, y, z));
         }
     }
 
+    /**
+     * Forget all cached inventories in the given chunk.
+     *
+     * @param chunk
+     *            the chunk which is being unloaded
+     */
+    public static void invalidateContainers(@Nonnull Chunk chunk) {
+        Map<Long, Map<BlockPosition, CachedContainer>> worldMap = containers.get(chunk.getWorld().getUID());
+
+        if (worldMap != null) {
+            worldMap.remove(getChunkKey(chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    private static long getChunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Forget all cached inventories in the given world.
+     *
+     * @param world
+     *            the world which is being unloaded
+     */
+    public static void invalidateContainers(@Nonnull World world) {
+        containers.remove(world.getUID());
+    }
+
     /**
      * Attempt to insert items from the given buffer into the given block,
      * which should be a vanilla inventory holder. Items successfully
@@ -81,17 +215,128 @@ public final class VanillaInventoryUtils {
             return 0;
         }
 
-        if (inserterId == null || !SensibleToolbox.getProtectionManager().hasPermission(Bukkit.getOfflinePlayer(inserterId), target, Interaction.INTERACT_BLOCK)) {
+        CachedContainer container = getContainer(target);
+
+        if (!container.inventory.isPresent()) {
             return 0;
         }
 
-        Optional<Inventory> targetInv = getVanillaInventory(target);
+        Inventory targetInv = container.inventory.get();
+        InventorySummary summary = getSummary(target, container, isPlainStorage(targetInv));
+        ItemKey key = null;
+
+        if (summary != null) {
+            // a router inserts from its buffer a few items at a time; skip the key lookup for those
+            if (lastInsertKey == null || !lastInsertKey.matches(source)) {
+                lastInsertKey = ItemKey.of(source);
+            }
+
+            key = lastInsertKey;
+        }
 
-        if (!targetInv.isPresent()) {
+        if (sorting && !(summary == null ? sortingOK(source, targetInv) : summary.sortingOK(key))) {
             return 0;
+        }
+
+        if (!SensibleToolbox.getPluginInstance().getProtectionCache().hasPermission(inserterId, target, Interaction.INTERACT_BLOCK)) {
+            return 0;
+        }
+
+        int nInserted;
+
+        if (summary != null) {
+            nInserted = summary.insert(targetInv, key, Math.min(amount, source.getAmount()));
+            source.setAmount(source.getAmount() - nInserted);
+            Debugger.getInstance().debug(2, "inserted " + nInserted + " " + key.getType() + " into " + targetInv.getType() + " at " + target);
         } else {
-            return vanillaInsertion(targetInv.get(), source, amount, side, sorting);
+            // the sorting check (if any) has already been done
+            nInserted = vanillaInsertion(targetInv, source, amount, side, false);
+        }
+
+        if (nInserted > 0) {
+            InventoryChangeTracker tracker = SensibleToolbox.getPluginInstance().getInventoryChangeTracker();
+            tracker.notifyChanged(targetInv);
+            container.insertStamp = tracker.watch(target);
+
+            if (summary != null) {
+                // the summary was updated along with the inventory, so it's still good
+                summary.restamp(container.insertStamp);
+            }
+        }
+
+        return nInserted;
+    }
+
+    /**
+     * Check if a sorter may insert the given items into the given block: its inventory
+     * must already contain some of the items, or be empty. This uses the container's
+     * content summary if it has a current one, so it's cheap to call repeatedly for a
+     * container which is only being filled by STB; otherwise the inventory is checked
+     * directly.
+     *
+     * @param target
+     *            the block containing the target inventory
+     * @param key
+     *            the items to sort
+     * @return true if the block has an inventory which the items may be sorted into
+     */
+    public static boolean sortingOK(@Nonnull Block target, @Nonnull ItemKey key) {
+        CachedContainer container = getContainer(target);
+
+        if (!container.inventory.isPresent()) {
+            return false;
+        }
+
+        InventorySummary summary = getSummary(target, container, false);
+
+        if (summary != null) {
+            return summary.sortingOK(key);
         }
+
+        boolean isEmpty = true;
+
+        for (ItemStack stack : container.inventory.get()) {
+            if (key.matches(stack)) {
+                return true;
+            } else if (stack != null) {
+                isEmpty = false;
+            }
+        }
+
+        return isEmpty;
+    }
+
+    /**
+     * Get the container's content summary, if it has a current one. Building a summary
+     * means making a key for every stack in the container, which only pays off if the
+     * summary is used more than once; so a new one is only built for an insertion when
+     * nothing but STB's last insertion has changed the container since. A container which
+     * something else keeps changing never gets a summary, and is always checked directly.
+     */
+    @Nullable
+    private static InventorySummary getSummary(@Nonnull Block target, @Nonnull CachedContainer container, boolean inserting) {
+        long stamp = SensibleToolbox.getPluginInstance().getInventoryChangeTracker().watch(target);
+
+        if (container.summary != null && container.summary.isCurrent(stamp)) {
+            return container.summary;
+        }
+
+        container.summary = null;
+
+        if (inserting && stamp == container.insertStamp) {
+            container.summary = new InventorySummary(container.inventory.get(), stamp);
+        }
+
+        return container.summary;
+    }
+
+    /**
+     * Check if items can be put into any slot of the inventory; these inventories can be
+     * filled straight from their content summary, rather than with
+     * {@link Inventory#addItem(ItemStack...)}.
+     */
+    private static boolean isPlainStorage(@Nonnull Inventory inv) {
+        return inv.getType() == InventoryType.CHEST || inv.getType() == InventoryType.BARREL;
     }
 
     /**
@@ -159,6 +404,8 @@ public final class VanillaInventoryUtils {
 
     /**
      * Attempt to pull items from an inventory into a receiving buffer.
+     * Items are gathered from as many slots as needed in a single pass,
+     * starting from where the previous pull from this block left off.
      *
      * @param target
      *            the block containing the target inventory
@@ -177,21 +424,54 @@ public final class VanillaInventoryUtils {
      */
     @Nullable
     public static ItemStack pullFromInventory(Block target, int amount, ItemStack buffer, Filter filter, @Nullable UUID pullerId) {
-        if (pullerId == null || !SensibleToolbox.getProtectionManager().hasPermission(Bukkit.getOfflinePlayer(pullerId), target, Interaction.INTERACT_BLOCK)) {
+        return pullFromInventory(target, amount, buffer, filter, null, pullerId);
+    }
+
+    /**
+     * Attempt to pull items from an inventory into a receiving buffer, skipping any items
+     * which the given predicate excludes.
+     *
+     * @param target
+     *            the block containing the target inventory
+     * @param amount
+     *            the desired number of items
+     * @param buffer
+     *            an item stack into which to insert
+     *            the transferred items
+     * @param filter
+     *            a filter to whitelist/blacklist items
+     * @param exclude
+     *            items which must not be pulled, or null to pull anything the filter passes
+     * @param pullerId
+     *            UUID of the player doing the pulling
+     *            (may be null or the UUID of an offline player)
+     * 
+     * @return the items pulled, or null if nothing was pulled
+     */
+    @Nullable
+    public static ItemStack pullFromInventory(Block target, int amount, ItemStack buffer, Filter filter, @Nullable Predicate<ItemStack> exclude, @Nullable UUID pullerId) {
+        if (!SensibleToolbox.getPluginInstance().getProtectionCache().hasPermission(pullerId, target, Interaction.INTERACT_BLOCK)) {
             return null;
         }
 
-        Optional<Inventory> targetInv = getVanillaInventory(target);
+        CachedContainer container = getContainer(target);
 
-        if (!targetInv.isPresent()) {
+        if (!container.inventory.isPresent()) {
             return null;
         } else {
-            return pullFromInventory(targetInv.get(), amount, buffer, filter);
+            ItemStack pulled = pullFromInventory(container.inventory.get(), amount, buffer, filter, exclude, container);
+
+            if (pulled != null) {
+                SensibleToolbox.getPluginInstance().getInventoryChangeTracker().notifyChanged(container.inventory.get());
+            }
+
+            return pulled;
         }
     }
 
     /**
      * Attempt to pull items from an inventory into a receiving buffer.
+     * Items are gathered from as many slots as needed in a single pass.
      *
      * @param targetInv
      *            the target inventory
@@ -205,39 +485,64 @@ public final class VanillaInventoryUtils {
      * @return the items pulled, or null if nothing was pulled
      */
     public static ItemStack pullFromInventory(Inventory targetInv, int amount, ItemStack buffer, Filter filter) {
+        return pullFromInventory(targetInv, amount, buffer, filter, null, null);
+    }
+
+    /**
+     * Pull up to the given number of matching items from the inventory, across as many
+     * slots as needed. If a cached container is given, the scan starts at the slot where
+     * the previous pull from it left off (wrapping round), rather than at the first slot,
+     * so that repeated pulls don't keep rescanning slots which have already been emptied.
+     */
+    @Nullable
+    private static ItemStack pullFromInventory(@Nullable Inventory targetInv, int amount, @Nullable ItemStack buffer, @Nullable Filter filter, @Nullable Predicate<ItemStack> exclude, @Nullable CachedContainer cursor) {
         if (targetInv == null) {
             return null;
         }
+
         IntRange range = getExtractionSlots(targetInv);
-        for (int slot = range.getMinimumInteger(); slot <= range.getMaximumInteger(); slot++) {
+        int min = range.getMinimumInteger();
+        int nSlots = range.getMaximumInteger() - min + 1;
+        int start = cursor == null ? 0 : Math.floorMod(cursor.nextSlot - min, nSlots);
+        int pulled = 0;
+
+        for (int i = 0; i < nSlots && pulled < amount; i++) {
+            int slot = min + (start + i) % nSlots;
             ItemStack stack = targetInv.getItem(slot);
 
-            if (stack != null) {
-                if ((filter == null || filter.shouldPass(stack)) && (buffer == null || stack.isSimilar(buffer))) {
-                    Debugger.getInstance().debug(2, "pulling " + stack + " from " + targetInv.getHolder());
-                    int toTake = Math.min(amount, stack.getAmount());
+            if (stack != null && (filter == null || filter.shouldPass(stack)) && (buffer == null ? exclude == null || !exclude.test(stack) : stack.isSimilar(buffer))) {
+                int toTake = Math.min(amount - pulled, stack.getAmount());
 
-                    if (buffer != null) {
-                        toTake = Math.min(toTake, buffer.getType().getMaxStackSize() - buffer.getAmount());
-                    }
+                if (buffer != null) {
+                    toTake = Math.min(toTake, buffer.getType().getMaxStackSize() - buffer.getAmount());
+                }
 
-                    if (toTake > 0) {
-                        if (buffer == null) {
-                            buffer = stack.clone();
-                            buffer.setAmount(toTake);
-                        } else {
-                            buffer.setAmount(buffer.getAmount() + toTake);
-                        }
-
-                        stack.setAmount(stack.getAmount() - toTake);
-                        targetInv.setItem(slot, stack.getAmount() > 0 ? stack : null);
-                        return buffer;
-                    }
+                if (toTake <= 0) {
+                    // buffer is full
+                    break;
+                }
+
+                Debugger.getInstance().debug(2, "pulling " + toTake + " of " + stack + " from " + targetInv.getType() + " slot " + slot);
+
+                if (buffer == null) {
+                    buffer = stack.clone();
+                    buffer.setAmount(toTake);
+                } else {
+                    buffer.setAmount(buffer.getAmount() + toTake);
+                }
+
+                stack.setAmount(stack.getAmount() - toTake);
+                targetInv.setItem(slot, stack.getAmount() > 0 ? stack : null);
+                pulled += toTake;
+
+                if (cursor != null) {
+                    // resume here next time; this slot may still have items left
+                    cursor.nextSlot = stack.getAmount() > 0 ? slot : slot + 1;
                 }
             }
         }
 
-        return null;
+        return pulled > 0 ? buffer : null;
     }
 
     private static IntRange getExtractionSlots(Inventory inv) {
@@ -337,6 +642,27 @@ public final class VanillaInventoryUtils {
         }
     }
 
+    private static final class CachedContainer {
+
+        private final Material type;
+        private final Chest.Type chestType;
+        private final Optional<Inventory> inventory;
+        // when the chest's connection was last seen to match chestType
+        private long chestCheckedAt = System.currentTimeMillis();
+        // the slot at which to start the next pull from this container
+        private int nextSlot;
+        // what the container holds, built for repeated insertions; see getSummary()
+        private InventorySummary summary;
+        // the container's change stamp just after STB last inserted into it
+        private long insertStamp = -1;
+
+        private CachedContainer(@Nonnull Material type, @Nullable Chest.Type chestType, @Nonnull Optional<Inventory> inventory) {
+            this.type = type;
+            this.chestType = chestType;
+            this.inventory = inventory;
+        }
+    }
+
     private static boolean sortingOK(ItemStack candidate, Inventory inv) {
         boolean isEmpty = true;
 
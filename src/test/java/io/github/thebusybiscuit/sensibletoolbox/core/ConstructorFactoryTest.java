@@ -0,0 +1,121 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ConstructorFactoryTest {
+
+    @BeforeEach
+    void reset() {
+        TestGadget.constructed = 0;
+    }
+
+    @Test
+    @DisplayName("Test that generated factories call both constructors")
+    void testGenerated() throws Throwable {
+        ConstructorFactory<TestGadget> factory = ConstructorFactory.generated(TestGadget.class);
+        ConfigurationSection conf = new MemoryConfiguration();
+
+        assertNull(factory.create(null).getConf());
+        assertSame(conf, factory.create(conf).getConf());
+        assertEquals(2, TestGadget.constructed);
+    }
+
+    @Test
+    @DisplayName("Test that classes from another class loader get working factories")
+    void testOtherClassLoader() throws Throwable {
+        Class<?> isolated = loadIsolated();
+        assertNotSame(TestGadget.class, isolated);
+
+        ConstructorFactory<?> factory = ConstructorFactory.of(isolated);
+        ConfigurationSection conf = new MemoryConfiguration();
+        Object created = factory.create(conf);
+
+        assertSame(isolated, created.getClass());
+        assertSame(isolated, factory.create(null).getClass());
+        assertSame(conf, isolated.getMethod("getConf").invoke(created));
+        assertEquals(2, isolated.getField("constructed").getInt(null));
+    }
+
+    @Test
+    @DisplayName("Test that a failing constructor is run once, and its exception passed on")
+    void testConstructorFailure() throws Throwable {
+        Class<?> isolated = loadIsolated();
+        ConstructorFactory<?> factory = ConstructorFactory.of(isolated);
+        ConfigurationSection conf = new MemoryConfiguration();
+        conf.set("fail", true);
+
+        assertThrows(IllegalArgumentException.class, () -> factory.create(conf));
+        assertEquals(1, isolated.getField("constructed").getInt(null));
+
+        ConstructorFactory<TestGadget> generated = ConstructorFactory.generated(TestGadget.class);
+        assertThrows(IllegalArgumentException.class, () -> generated.create(conf));
+        assertEquals(1, TestGadget.constructed);
+    }
+
+    /**
+     * Load a fresh copy of {@link TestGadget} in its own class loader, as an add-on
+     * plugin's item class would be.
+     */
+    private static Class<?> loadIsolated() throws ClassNotFoundException {
+        return new IsolatingClassLoader(ConstructorFactoryTest.class.getClassLoader()).loadClass(TestGadget.class.getName());
+    }
+
+    private static final class IsolatingClassLoader extends ClassLoader {
+
+        private IsolatingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.equals(TestGadget.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+
+                if (c == null) {
+                    byte[] bytes = readClass(name);
+                    c = defineClass(name, bytes, 0, bytes.length);
+                }
+
+                return c;
+            }
+        }
+
+        private byte[] readClass(String name) throws ClassNotFoundException {
+            try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(name);
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int n;
+
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
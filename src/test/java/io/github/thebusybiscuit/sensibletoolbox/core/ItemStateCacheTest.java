@@ -0,0 +1,75 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.configuration.Configuration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ItemStateCacheTest {
+
+    private static final String FROZEN = "'*TYPE': testitem\ndirection: NORTH\nfilter:\n  whitelist: true\n  items:\n  - STONE\n  - DIRT\n";
+
+    @Test
+    @DisplayName("Test that changing a decoded state doesn't change the cached one")
+    void testCopies() {
+        ItemStateCache cache = new ItemStateCache();
+        cache.setMaxSize(4);
+
+        Configuration first = cache.decode(FROZEN);
+        first.set("direction", "SOUTH");
+        first.getConfigurationSection("filter").set("whitelist", false);
+        @SuppressWarnings("unchecked")
+        List<Object> items = (List<Object>) first.getList("filter.items");
+        items.add("SAND");
+
+        Configuration second = cache.decode(FROZEN);
+
+        assertNotSame(first, second);
+        assertEquals("testitem", second.getString("*TYPE"));
+        assertEquals("NORTH", second.getString("direction"));
+        assertTrue(second.getBoolean("filter.whitelist"));
+        assertEquals(Arrays.asList("STONE", "DIRT"), second.getList("filter.items"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Test that the least recently used state is evicted when the cache is full")
+    void testEviction() {
+        ItemStateCache cache = new ItemStateCache();
+        cache.setMaxSize(2);
+
+        cache.decode("a: 1\n");
+        cache.decode("b: 2\n");
+        cache.decode("a: 1\n");
+        cache.decode("c: 3\n");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        // "b" was the least recently used, so it has to be parsed again
+        assertEquals(2, cache.decode("b: 2\n").getInt("b"));
+        assertEquals(4, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    @DisplayName("Test that a size of 0 disables the cache")
+    void testDisabled() {
+        ItemStateCache cache = new ItemStateCache();
+        cache.setMaxSize(0);
+
+        assertEquals("NORTH", cache.decode(FROZEN).getString("direction"));
+        assertEquals("NORTH", cache.decode(FROZEN).getString("direction"));
+
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+    }
+}
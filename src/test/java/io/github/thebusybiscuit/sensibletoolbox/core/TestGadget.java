@@ -0,0 +1,32 @@
+package io.github.thebusybiscuit.sensibletoolbox.core;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+/**
+ * A class with the constructors an STB item has, for {@link ConstructorFactoryTest}.
+ */
+public class TestGadget {
+
+    public static int constructed;
+
+    private final ConfigurationSection conf;
+
+    public TestGadget() {
+        constructed++;
+        conf = null;
+    }
+
+    public TestGadget(ConfigurationSection conf) {
+        constructed++;
+
+        if (conf.getBoolean("fail")) {
+            throw new IllegalArgumentException("told to fail");
+        }
+
+        this.conf = conf;
+    }
+
+    public ConfigurationSection getConf() {
+        return conf;
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.bukkit.block.BlockFace;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+import io.github.thebusybiscuit.sensibletoolbox.utils.STBUtil;
+
+class EnergyNetBuildTest {
+
+    private static final int SEEDS = 8;
+    private static final int STEPS = 500;
+
+    @Test
+    @DisplayName("Test that a cable placed next to a machine starts a net")
+    void testNewNet() {
+        FakeNetWorld world = new FakeNetWorld();
+        FakeNetMachine machine = world.placeMachine(0, 0, 0, false);
+        world.placeCable(1, 0, 0);
+
+        STBEnergyNet net = getNet(world, 1, 0, 0);
+
+        assertNotNull(net);
+        assertEquals(1, net.getCableCount());
+        assertEquals(1, net.getSinkCount());
+        assertEquals(Collections.singletonList(BlockFace.EAST), machine.getFacesForNet(net));
+    }
+
+    @Test
+    @DisplayName("Test that breaking a cable splits its net, and replacing it joins them again")
+    void testSplitAndJoin() {
+        FakeNetWorld world = new FakeNetWorld();
+        FakeNetMachine sink = world.placeMachine(0, 0, 0, false);
+
+        for (int x = 1; x <= 5; x++) {
+            world.placeCable(x, 0, 0);
+        }
+
+        FakeNetMachine source = world.placeMachine(6, 0, 0, true);
+        assertEquals(1, world.getManager().getNetCount());
+
+        world.breakCable(3, 0, 0);
+
+        STBEnergyNet left = getNet(world, 1, 0, 0);
+        STBEnergyNet right = getNet(world, 5, 0, 0);
+
+        assertNotNull(left);
+        assertNotNull(right);
+        assertNotEquals(left, right);
+        assertEquals(2, left.getCableCount());
+        assertEquals(2, right.getCableCount());
+        assertEquals(Collections.singleton(sink), left.getMachines());
+        assertEquals(Collections.singleton(source), right.getMachines());
+        assertEquals(2, world.getManager().getNetCount());
+
+        world.placeCable(3, 0, 0);
+
+        STBEnergyNet joined = getNet(world, 3, 0, 0);
+
+        assertNotNull(joined);
+        assertEquals(5, joined.getCableCount());
+        assertEquals(1, joined.getSourceCount());
+        assertEquals(1, joined.getSinkCount());
+        assertEquals(1, world.getManager().getNetCount());
+    }
+
+    @Test
+    @DisplayName("Test that cables touching no machine don't start a net")
+    void testNoMachines() {
+        FakeNetWorld world = new FakeNetWorld();
+        world.placeCable(0, 0, 0);
+        world.placeCable(1, 0, 0);
+
+        assertNull(getNet(world, 0, 0, 0));
+
+        world.placeMachine(2, 0, 0, true);
+
+        STBEnergyNet net = getNet(world, 0, 0, 0);
+
+        assertNotNull(net);
+        assertEquals(2, net.getCableCount());
+        assertEquals(1, net.getSourceCount());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 3, 5, 7 })
+    @DisplayName("Test that nets always match the cables and machines around them")
+    void testRandomChanges(int size) {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed * 31L + size);
+            FakeNetWorld world = new FakeNetWorld();
+
+            for (int step = 0; step < STEPS; step++) {
+                int x = random.nextInt(size);
+                int y = random.nextInt(size);
+                int z = random.nextInt(size);
+                BlockPosition pos = new BlockPosition(x, y, z);
+                String action;
+
+                if (world.getCables().contains(pos)) {
+                    action = "broke cable";
+                    world.breakCable(x, y, z);
+                } else if (world.getMachines().containsKey(pos)) {
+                    action = "removed machine";
+                    world.removeMachine(x, y, z);
+                } else if (random.nextInt(8) == 0) {
+                    action = "placed machine";
+                    world.placeMachine(x, y, z, random.nextBoolean());
+                } else {
+                    action = "placed cable";
+                    world.placeCable(x, y, z);
+                }
+
+                checkNets(world, "seed " + seed + ", step " + step + ", " + action + " @ " + pos);
+            }
+        }
+    }
+
+    private static STBEnergyNet getNet(FakeNetWorld world, int x, int y, int z) {
+        return world.getManager().getEnergyNet(world.getBlockAt(x, y, z));
+    }
+
+    /**
+     * Check that each group of connected cables is exactly one net, which holds just
+     * those cables and the machines touching them, and that any group touching a
+     * machine has a net.
+     */
+    private static void checkNets(FakeNetWorld world, String context) {
+        Set<BlockPosition> unvisited = new HashSet<>(world.getCables());
+        Set<STBEnergyNet> nets = new HashSet<>();
+
+        assertTrue(world.getCables().containsAll(world.getTaggedCables()), context + ": net ID left behind on a broken cable");
+
+        while (!unvisited.isEmpty()) {
+            BlockPosition start = unvisited.iterator().next();
+            Set<BlockPosition> group = new HashSet<>();
+            Set<FakeNetMachine> machines = new HashSet<>();
+            Deque<BlockPosition> queue = new ArrayDeque<>();
+            queue.add(start);
+            unvisited.remove(start);
+
+            while (!queue.isEmpty()) {
+                BlockPosition pos = queue.poll();
+                group.add(pos);
+
+                for (BlockFace face : STBUtil.getDirectBlockFaces()) {
+                    BlockPosition next = new BlockPosition(pos.getX() + face.getModX(), pos.getY() + face.getModY(), pos.getZ() + face.getModZ());
+
+                    if (unvisited.remove(next)) {
+                        queue.add(next);
+                    } else if (world.getMachines().containsKey(next)) {
+                        machines.add(world.getMachines().get(next));
+                    }
+                }
+            }
+
+            STBEnergyNet net = getNet(world, start.getX(), start.getY(), start.getZ());
+
+            for (BlockPosition pos : group) {
+                assertSame(net, getNet(world, pos.getX(), pos.getY(), pos.getZ()), context + ": connected cables @ " + start + " and " + pos + " are in different nets");
+            }
+
+            if (net == null) {
+                assertTrue(machines.isEmpty(), context + ": cables @ " + start + " touch a machine but have no net");
+                assertTrue(Collections.disjoint(group, world.getTaggedCables()), context + ": cables @ " + start + " are tagged with a deleted net");
+            } else {
+                assertTrue(nets.add(net), context + ": net #" + net.getNetID() + " holds cables which aren't connected");
+                assertEquals(group.size(), net.getCableCount(), context + ": net #" + net.getNetID() + " cable count");
+                assertEquals(group, new HashSet<>(net.getCables()), context + ": net #" + net.getNetID() + " cables");
+                assertEquals(machines, net.getMachines(), context + ": net #" + net.getNetID() + " machines");
+            }
+        }
+
+        assertEquals(nets.size(), world.getManager().getNetCount(), context + ": nets left behind");
+
+        for (Map.Entry<BlockPosition, FakeNetMachine> entry : world.getMachines().entrySet()) {
+            BlockPosition pos = entry.getKey();
+            Map<BlockFace, EnergyNet> expected = new EnumMap<>(BlockFace.class);
+
+            for (BlockFace face : STBUtil.getDirectBlockFaces()) {
+                STBEnergyNet net = getNet(world, pos.getX() + face.getModX(), pos.getY() + face.getModY(), pos.getZ() + face.getModZ());
+
+                if (net != null) {
+                    expected.put(face, net);
+                }
+            }
+
+            assertEquals(expected, entry.getValue().getEnergyNets(), context + ": attachments of " + entry.getValue());
+        }
+    }
+}
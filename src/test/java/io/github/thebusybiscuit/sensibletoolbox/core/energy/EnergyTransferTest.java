@@ -0,0 +1,158 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class EnergyTransferTest {
+
+    private static final int SEEDS = 8;
+    private static final int TICKS = 20;
+    private static final long TICK_RATE = 10;
+
+    @Test
+    @DisplayName("Test that a surplus of supply fully charges every sink")
+    void testSurplus() {
+        FakeMachine source = new FakeMachine(1000, 100, 1000);
+        FakeMachine sink = new FakeMachine(1000, 50, 0);
+
+        double delivered = tick(Collections.singletonList(source), Collections.singletonList(sink));
+
+        assertEquals(500, delivered, 1.0E-9);
+        assertEquals(500, sink.getCharge(), 1.0E-9);
+        assertEquals(500, source.getCharge(), 1.0E-9);
+    }
+
+    @Test
+    @DisplayName("Test that a shortfall is shared between sinks by their demand")
+    void testShortfall() {
+        FakeMachine source = new FakeMachine(1000, 30, 1000);
+        FakeMachine sink1 = new FakeMachine(1000, 40, 0);
+        FakeMachine sink2 = new FakeMachine(1000, 20, 0);
+
+        double delivered = tick(Collections.singletonList(source), Arrays.asList(sink1, sink2));
+
+        assertEquals(300, delivered, 1.0E-9);
+        assertEquals(700, source.getCharge(), 1.0E-9);
+        assertEquals(200, sink1.getCharge(), 1.0E-9);
+        assertEquals(100, sink2.getCharge(), 1.0E-9);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1000, 10000, 50000 })
+    @DisplayName("Test that random nets conserve energy and respect machine limits")
+    void testRandomNets(int machineCount) {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            Random random = new Random(seed * 31L + machineCount);
+            List<FakeMachine> machines = FakeMachine.randomMachines(random, machineCount);
+            List<FakeMachine> sources = new ArrayList<>();
+            List<FakeMachine> sinks = new ArrayList<>();
+            double sourceShare = random.nextDouble();
+
+            for (FakeMachine machine : machines) {
+                (random.nextDouble() < sourceShare ? sources : sinks).add(machine);
+            }
+
+            for (int t = 0; t < TICKS; t++) {
+                checkTick(sources, sinks, "seed " + seed + ", tick " + t);
+                churn(random, sources, sinks);
+            }
+        }
+    }
+
+    private static double tick(List<FakeMachine> sources, List<FakeMachine> sinks) {
+        double supply = EnergyTransfer.getSupply(sources, TICK_RATE);
+        double demand = EnergyTransfer.getDemand(sinks, TICK_RATE);
+        return EnergyTransfer.transfer(sources, sinks, supply, demand, TICK_RATE, null);
+    }
+
+    private static void checkTick(List<FakeMachine> sources, List<FakeMachine> sinks, String context) {
+        double supply = EnergyTransfer.getSupply(sources, TICK_RATE);
+        double demand = EnergyTransfer.getDemand(sinks, TICK_RATE);
+
+        if (supply <= 0 || demand <= 0) {
+            // the net doesn't transfer anything on such a tick
+            return;
+        }
+
+        double[] before = charges(sources, sinks);
+        double sourceTotal = FakeMachine.totalCharge(sources);
+        double sinkTotal = FakeMachine.totalCharge(sinks);
+        double[] ledger = new double[2];
+
+        double delivered = EnergyTransfer.transfer(sources, sinks, supply, demand, TICK_RATE, ledger);
+
+        assertTrue(EnergyNetStats.isConserved(ledger[0], ledger[1]), context + ": took " + ledger[0] + ", gave " + ledger[1]);
+        assertTrue(EnergyNetStats.isConserved(sourceTotal - FakeMachine.totalCharge(sources), FakeMachine.totalCharge(sinks) - sinkTotal), context + ": totals don't balance");
+        assertTrue(EnergyNetStats.isConserved(Math.min(supply, demand), delivered), context + ": delivered " + delivered + " of " + supply + "/" + demand);
+        assertTrue(EnergyNetStats.isConserved(delivered, ledger[1]), context + ": reported " + delivered + ", gave " + ledger[1]);
+
+        int i = 0;
+
+        for (FakeMachine source : sources) {
+            double taken = before[i++] - source.getCharge();
+            assertTrue(source.getCharge() >= 0, context + ": source charge went negative");
+            assertTrue(taken >= 0 && taken <= source.getChargeRate() * TICK_RATE + 1.0E-9, context + ": source gave " + taken);
+        }
+
+        for (FakeMachine sink : sinks) {
+            double given = sink.getCharge() - before[i++];
+            assertTrue(sink.getCharge() <= sink.getMaxCharge() + 1.0E-9, context + ": sink overcharged");
+            assertTrue(given >= 0 && given <= sink.getChargeRate() * TICK_RATE + 1.0E-9, context + ": sink took " + given);
+        }
+    }
+
+    private static double[] charges(List<FakeMachine> sources, List<FakeMachine> sinks) {
+        double[] charges = new double[sources.size() + sinks.size()];
+        int i = 0;
+
+        for (FakeMachine machine : sources) {
+            charges[i++] = machine.getCharge();
+        }
+
+        for (FakeMachine machine : sinks) {
+            charges[i++] = machine.getCharge();
+        }
+
+        return charges;
+    }
+
+    /**
+     * Change the net between ticks, as a running server would: machines use up or
+     * generate energy, and machines are added and removed as cables are placed and broken.
+     */
+    private static void churn(Random random, List<FakeMachine> sources, List<FakeMachine> sinks) {
+        for (FakeMachine source : sources) {
+            source.setCharge(Math.min(source.getMaxCharge(), source.getCharge() + random.nextDouble() * source.getChargeRate() * TICK_RATE));
+        }
+
+        for (FakeMachine sink : sinks) {
+            sink.setCharge(Math.max(0, sink.getCharge() - random.nextDouble() * sink.getChargeRate() * TICK_RATE));
+        }
+
+        int changes = random.nextInt(1 + (sources.size() + sinks.size()) / 100);
+
+        for (int i = 0; i < changes; i++) {
+            List<FakeMachine> list = random.nextBoolean() ? sources : sinks;
+
+            if (random.nextBoolean() && !list.isEmpty()) {
+                // order doesn't matter to a net, so swap the last machine into the gap
+                int index = random.nextInt(list.size());
+                list.set(index, list.get(list.size() - 1));
+                list.remove(list.size() - 1);
+            } else {
+                list.addAll(FakeMachine.randomMachines(random, 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.Chargeable;
+
+/**
+ * A stand-in for a machine on an energy net, holding nothing but its charge.
+ */
+final class FakeMachine implements Chargeable {
+
+    private final int maxCharge;
+    private final int chargeRate;
+    private double charge;
+
+    FakeMachine(int maxCharge, int chargeRate, double charge) {
+        this.maxCharge = maxCharge;
+        this.chargeRate = chargeRate;
+        this.charge = charge;
+    }
+
+    /**
+     * Make the given number of machines, with random capacities, rates and charges.
+     */
+    static List<FakeMachine> randomMachines(Random random, int count) {
+        List<FakeMachine> machines = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            int maxCharge = 1000 + random.nextInt(100000);
+            int chargeRate = 1 + random.nextInt(250);
+            machines.add(new FakeMachine(maxCharge, chargeRate, random.nextDouble() * maxCharge));
+        }
+
+        return machines;
+    }
+
+    static double totalCharge(List<FakeMachine> machines) {
+        double total = 0;
+
+        for (FakeMachine machine : machines) {
+            total += machine.getCharge();
+        }
+
+        return total;
+    }
+
+    @Override
+    public double getCharge() {
+        return charge;
+    }
+
+    @Override
+    public void setCharge(double charge) {
+        this.charge = charge;
+    }
+
+    @Override
+    public int getMaxCharge() {
+        return maxCharge;
+    }
+
+    @Override
+    public int getChargeRate() {
+        return chargeRate;
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.block.BlockFace;
+
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.ChargeableBlock;
+import io.github.thebusybiscuit.sensibletoolbox.api.energy.EnergyNet;
+
+/**
+ * A stand-in for a machine placed in a {@link FakeNetWorld}, which either supplies or
+ * accepts energy on every face, and keeps track of the nets attached to it.
+ */
+final class FakeNetMachine implements ChargeableBlock {
+
+    private final Location location;
+    private final boolean source;
+    private final Map<BlockFace, EnergyNet> energyNets = new EnumMap<>(BlockFace.class);
+    private double charge;
+
+    FakeNetMachine(Location location, boolean source) {
+        this.location = location;
+        this.source = source;
+    }
+
+    Map<BlockFace, EnergyNet> getEnergyNets() {
+        return new EnumMap<>(energyNets);
+    }
+
+    @Override
+    public Location getLocation() {
+        return location;
+    }
+
+    @Override
+    public boolean acceptsEnergy(BlockFace face) {
+        return !source;
+    }
+
+    @Override
+    public boolean suppliesEnergy(BlockFace face) {
+        return source;
+    }
+
+    @Override
+    public void attachToEnergyNet(EnergyNet energyNet, BlockFace face) {
+        energyNets.put(face, energyNet);
+    }
+
+    @Override
+    public void detachFromEnergyNet(EnergyNet energyNet) {
+        energyNets.values().removeIf(net -> net.getNetID() == energyNet.getNetID());
+    }
+
+    @Override
+    public List<BlockFace> getFacesForNet(EnergyNet energyNet) {
+        List<BlockFace> res = new ArrayList<>();
+
+        for (Map.Entry<BlockFace, EnergyNet> entry : energyNets.entrySet()) {
+            if (entry.getValue().getNetID() == energyNet.getNetID()) {
+                res.add(entry.getKey());
+            }
+        }
+
+        return res;
+    }
+
+    @Override
+    public EnergyNet[] getAttachedEnergyNets() {
+        return new HashSet<>(energyNets.values()).toArray(new EnergyNet[0]);
+    }
+
+    @Override
+    public int getChargeMeterSlot() {
+        return -1;
+    }
+
+    @Override
+    public double getCharge() {
+        return charge;
+    }
+
+    @Override
+    public void setCharge(double charge) {
+        this.charge = charge;
+    }
+
+    @Override
+    public int getMaxCharge() {
+        return 1000;
+    }
+
+    @Override
+    public int getChargeRate() {
+        return 20;
+    }
+
+    @Override
+    public String toString() {
+        return (source ? "source" : "sink") + " @ " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ();
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.thebusybiscuit.sensibletoolbox.core.energy;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+
+import io.github.thebusybiscuit.sensibletoolbox.core.storage.BlockPosition;
+
+/**
+ * An in-memory world for energy nets, holding nothing but cables and machines. Every
+ * chunk is loaded, and tasks which would run on the next server tick run when a cable
+ * has finished being broken. Blocks and the world itself are stand-ins which only
+ * answer what the energy net code asks of them.
+ */
+final class FakeNetWorld implements EnergyNetWorld {
+
+    static final String NAME = "fake";
+
+    private final World world;
+    private final Map<BlockPosition, Block> blocks = new HashMap<>();
+    private final Set<BlockPosition> cables = new HashSet<>();
+    private final Map<BlockPosition, FakeNetMachine> machines = new HashMap<>();
+    private final Map<BlockPosition, Integer> netIDs = new HashMap<>();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final EnergyNetManager manager;
+
+    FakeNetWorld() {
+        world = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                case "toString":
+                    return NAME;
+                case "isChunkLoaded":
+                    return true;
+                case "getBlockAt":
+                    if (args.length == 1) {
+                        Location loc = (Location) args[0];
+                        return getBlockAt(loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+                    } else {
+                        return getBlockAt((int) args[0], (int) args[1], (int) args[2]);
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+
+        manager = new EnergyNetManager(this, new File(NAME + "_energy_nets.dat"), Logger.getLogger(FakeNetWorld.class.getName()));
+    }
+
+    EnergyNetManager getManager() {
+        return manager;
+    }
+
+    Block getBlockAt(int x, int y, int z) {
+        return blocks.computeIfAbsent(new BlockPosition(x, y, z), this::createBlock);
+    }
+
+    Set<BlockPosition> getCables() {
+        return Collections.unmodifiableSet(cables);
+    }
+
+    Map<BlockPosition, FakeNetMachine> getMachines() {
+        return Collections.unmodifiableMap(machines);
+    }
+
+    Set<BlockPosition> getTaggedCables() {
+        return Collections.unmodifiableSet(netIDs.keySet());
+    }
+
+    void placeCable(int x, int y, int z) {
+        cables.add(new BlockPosition(x, y, z));
+        manager.onCablePlaced(getBlockAt(x, y, z));
+    }
+
+    /**
+     * Break a cable the way the server does: the energy net manager hears about it
+     * while the cable is still there, and the cable is gone by the next tick.
+     */
+    void breakCable(int x, int y, int z) {
+        manager.onCableRemoved(getBlockAt(x, y, z));
+        cables.remove(new BlockPosition(x, y, z));
+
+        while (!tasks.isEmpty()) {
+            List<Runnable> toRun = new ArrayList<>(tasks);
+            tasks.clear();
+            toRun.forEach(Runnable::run);
+        }
+    }
+
+    FakeNetMachine placeMachine(int x, int y, int z, boolean source) {
+        FakeNetMachine machine = new FakeNetMachine(new Location(world, x, y, z), source);
+        machines.put(new BlockPosition(x, y, z), machine);
+        manager.onMachinePlaced(machine);
+        return machine;
+    }
+
+    void removeMachine(int x, int y, int z) {
+        FakeNetMachine machine = machines.remove(new BlockPosition(x, y, z));
+
+        if (machine != null) {
+            manager.onMachineRemoved(machine);
+        }
+    }
+
+    @Override
+    public World getWorld(String name) {
+        return NAME.equals(name) ? world : null;
+    }
+
+    @Override
+    public boolean isCable(Block b) {
+        return cables.contains(toPosition(b));
+    }
+
+    @Override
+    public FakeNetMachine getMachine(Block b) {
+        return machines.get(toPosition(b));
+    }
+
+    @Override
+    public Integer getNetID(Block b) {
+        return netIDs.get(toPosition(b));
+    }
+
+    @Override
+    public void setNetID(Block b, int netID) {
+        netIDs.put(toPosition(b), netID);
+    }
+
+    @Override
+    public void removeNetID(Block b) {
+        netIDs.remove(toPosition(b));
+    }
+
+    @Override
+    public void runTask(Runnable task) {
+        tasks.add(task);
+    }
+
+    private static BlockPosition toPosition(Block b) {
+        return new BlockPosition(b.getX(), b.getY(), b.getZ());
+    }
+
+    private Block createBlock(BlockPosition pos) {
+        return (Block) Proxy.newProxyInstance(Block.class.getClassLoader(), new Class<?>[] { Block.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getX":
+                    return pos.getX();
+                case "getY":
+                    return pos.getY();
+                case "getZ":
+                    return pos.getZ();
+                case "getWorld":
+                    return world;
+                case "getLocation":
+                    if (args == null) {
+                        return new Location(world, pos.getX(), pos.getY(), pos.getZ());
+                    }
+
+                    throw new UnsupportedOperationException("getLocation(Location)");
+                case "getRelative":
+                    if (args.length == 1 && args[0] instanceof BlockFace) {
+                        BlockFace face = (BlockFace) args[0];
+                        return getBlockAt(pos.getX() + face.getModX(), pos.getY() + face.getModY(), pos.getZ() + face.getModZ());
+                    }
+
+                    throw new UnsupportedOperationException("getRelative");
+                case "toString":
+                    return "FakeBlock{" + pos + "}";
+                case "equals":
+                    // there's only ever one block for each position
+                    return proxy == args[0];
+                case "hashCode":
+                    return pos.hashCode();
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+}